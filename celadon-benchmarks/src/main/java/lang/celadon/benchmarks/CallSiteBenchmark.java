@@ -0,0 +1,89 @@
+package lang.celadon.benchmarks;
+
+import lang.celadon.CallSite;
+import lang.celadon.Cel;
+import lang.celadon.Core;
+import lang.celadon.Manager;
+import lang.celadon.Program;
+import lang.celadon.Slotted;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calls a method on a {@link Slotted} receiver. {@code byName} calls {@link Slotted#run(Cel, String)}, which looks
+ * the name up on every call; {@code cached} goes through a {@link CallSite}, which looks the name up once and then
+ * only checks the receiver's class. {@code script} runs {@code v.add 1} as a compiled Program.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class CallSiteBenchmark {
+
+    public static class Vector implements Slotted {
+        public static final String[] METHODS = {"x", "y", "z", "w", "length", "scale", "add", "reset"};
+        public long x, y, z, w;
+
+        @Override
+        public int slot(String name) {
+            for (int i = 0; i < METHODS.length; i++) {
+                if (METHODS[i].equals(name))
+                    return i;
+            }
+            return -1;
+        }
+
+        @Override
+        public Cel run(Cel right, int slot) {
+            switch (slot) {
+                case 0: return Cel.value(x);
+                case 1: return Cel.value(y);
+                case 2: return Cel.value(z);
+                case 3: return Cel.value(w);
+                case 4: return Cel.value(Math.sqrt(x * x + y * y + z * z + w * w));
+                case 5: return Cel.value(x *= Core.asLong(right.ref));
+                case 6: return Cel.value(x += Core.asLong(right.ref));
+                default: return Cel.value(x = y = z = w = 0);
+            }
+        }
+
+        @Override
+        public Cel run(Cel right, String name) {
+            int slot = slot(name);
+            return slot < 0 ? Cel.nothing : run(right, slot);
+        }
+    }
+
+    public Vector vector = new Vector();
+    public CallSite site = new CallSite("add");
+    public Cel one = Cel.value(1L);
+    public Manager manager;
+    public Program program;
+
+    @Setup
+    public void setup() {
+        manager = new Manager();
+        manager.learn("v", vector);
+        program = manager.compile("v.add 1");
+    }
+
+    @Benchmark
+    public Cel byName() {
+        return vector.run(one, "add");
+    }
+
+    @Benchmark
+    public Cel cached() {
+        return site.call(vector, one);
+    }
+
+    @Benchmark
+    public Object script() {
+        manager.exchange.clear();
+        program.run(manager);
+        return manager.exchange.peekLast();
+    }
+}
@@ -0,0 +1,65 @@
+package lang.celadon.benchmarks;
+
+import lang.celadon.Manager;
+import lang.celadon.Program;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a sum of 8 symbols, {@code a + b + c + d + e + f + g + h}, compiled with {@link Manager#flattenChains} on
+ * ({@code flat}), so it runs as one call, and off ({@code nested}), so it runs as 7 calls. The {@code boxed} versions
+ * turn {@link Manager#primitiveArithmetic} off, so the nested sum boxes every intermediate result into a Cel and the
+ * flat one boxes only the last.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class ChainBenchmark {
+
+    public Manager manager;
+    public Program flat, nested;
+
+    @Setup
+    public void setup() {
+        manager = new Manager();
+        String source = "a + b + c + d + e + f + g + h";
+        for (int i = 0; i < 8; i++) {
+            manager.learn(String.valueOf((char) ('a' + i)), (i & 1) == 0 ? (Object) (i * 3L) : (Object) (i * 0.5));
+        }
+        flat = manager.compile(source);
+        manager.flattenChains = false;
+        nested = manager.compile(source);
+        manager.flattenChains = true;
+    }
+
+    private Object run(Program program, boolean primitive) {
+        manager.primitiveArithmetic = primitive;
+        manager.exchange.clear();
+        program.run(manager);
+        return manager.exchange.peekLast();
+    }
+
+    @Benchmark
+    public Object flat() {
+        return run(flat, true);
+    }
+
+    @Benchmark
+    public Object nested() {
+        return run(nested, true);
+    }
+
+    @Benchmark
+    public Object flatBoxed() {
+        return run(flat, false);
+    }
+
+    @Benchmark
+    public Object nestedBoxed() {
+        return run(nested, false);
+    }
+}
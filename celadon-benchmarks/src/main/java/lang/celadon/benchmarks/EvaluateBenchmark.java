@@ -0,0 +1,91 @@
+package lang.celadon.benchmarks;
+
+import lang.celadon.Cel;
+import lang.celadon.Manager;
+import lang.celadon.Procedural;
+import lang.celadon.Syntax;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluates an already-shunted arithmetic expression of about 10, 1000, and 100000 tokens. {@code stack} uses
+ * {@link Manager#evaluate()}, which should scale linearly; {@code inPlace} is the older evaluator that removed items
+ * from the middle of an ArrayList, which scales quadratically, kept here for comparison. {@code boxed} is the same as
+ * {@code stack} with {@link Manager#primitiveArithmetic} off, so every intermediate number is boxed into a new Cel.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class EvaluateBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int tokens;
+
+    public Manager manager;
+    public ArrayList<Cel> rpn;
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder(tokens * 4);
+        sb.append('1');
+        for (int i = 2; i < tokens; i += 2) {
+            sb.append(i % 6 == 0 ? " - " : (i % 6 == 2) ? " + " : " * ").append(i % 10);
+        }
+        manager = new Manager();
+        manager.tokenize(sb);
+        manager.items.clear();
+        manager.shunt();
+        rpn = new ArrayList<>(manager.items);
+    }
+
+    @Benchmark
+    public Object stack() {
+        manager.items.clear();
+        manager.items.addAll(rpn);
+        manager.exchange.clear();
+        manager.evaluate();
+        return manager.exchange.peekLast();
+    }
+
+    @Benchmark
+    public Object boxed() {
+        manager.primitiveArithmetic = false;
+        manager.items.clear();
+        manager.items.addAll(rpn);
+        manager.exchange.clear();
+        manager.evaluate();
+        manager.primitiveArithmetic = true;
+        return manager.exchange.peekLast();
+    }
+
+    @Benchmark
+    public Object inPlace() {
+        ArrayList<Cel> items = manager.items;
+        items.clear();
+        items.addAll(rpn);
+        int len = items.size();
+        Cel item, left;
+        for (int i = 0; i < len; i++) {
+            item = manager.resolve(items.get(i));
+            if (item.ref instanceof Procedural) {
+                if (i < 2 || (left = manager.resolve(items.get(i - 2))).ref instanceof Procedural
+                        || Syntax.CLOSE_PARENTHESIS.equals(left.ref)) {
+                    item = ((Procedural) item.ref).run(Cel.empty, manager.resolve(items.remove(--i)));
+                    items.set(i, item);
+                    --len;
+                } else {
+                    item = ((Procedural) item.ref).run(left, manager.resolve(items.remove(--i)));
+                    items.remove(--i);
+                    items.set(i, item);
+                    len -= 2;
+                }
+            }
+        }
+        return items.get(items.size() - 1);
+    }
+}
@@ -0,0 +1,58 @@
+package lang.celadon.benchmarks;
+
+import lang.celadon.CallSite;
+import lang.celadon.CeladonExport;
+import lang.celadon.Cel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calls {@code add} through a {@link CallSite} on two receivers that do the same work: {@code handWritten} uses the
+ * Slotted {@link CallSiteBenchmark.Vector}, and {@code generated} uses the wrapper celadon-processor writes for
+ * {@link Vector}, which is marked with {@link CeladonExport}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class ExportBenchmark {
+
+    @CeladonExport
+    public static class Vector {
+        public long x, y, z, w;
+
+        public double length() {
+            return Math.sqrt(x * x + y * y + z * z + w * w);
+        }
+
+        public long scale(long by) {
+            return x *= by;
+        }
+
+        public long add(long amount) {
+            return x += amount;
+        }
+
+        public void reset() {
+            x = y = z = w = 0;
+        }
+    }
+
+    public CallSiteBenchmark.Vector handWritten = new CallSiteBenchmark.Vector();
+    public ExportBenchmarkVectorMethods generated = new ExportBenchmarkVectorMethods(new Vector());
+    public CallSite site = new CallSite("add"), generatedSite = new CallSite("add");
+    public Cel one = Cel.value(1L);
+
+    @Benchmark
+    public Cel handWritten() {
+        return site.call(handWritten, one);
+    }
+
+    @Benchmark
+    public Cel generated() {
+        return generatedSite.call(generated, one);
+    }
+}
@@ -0,0 +1,73 @@
+package lang.celadon.benchmarks;
+
+import lang.celadon.CallSite;
+import lang.celadon.Cel;
+import lang.celadon.JavaInterop;
+import lang.celadon.Manager;
+import lang.celadon.Program;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calls {@code add(long)} on a plain Java object. {@code direct} calls it from Java and wraps the result in a Cel, as
+ * a hand-written {@link lang.celadon.Methodical} would; {@code reflection} looks it up once and calls it with
+ * {@link Method#invoke(Object, Object...)}; {@code cached} goes through a {@link CallSite} using
+ * {@link JavaInterop#LINKER}, which calls a MethodHandle found once for the class; {@code script} runs
+ * {@code c.add 1} as a compiled Program.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class InteropBenchmark {
+
+    public static class Counter {
+        public long total;
+
+        public long add(long amount) {
+            return total += amount;
+        }
+    }
+
+    public Counter counter = new Counter();
+    public CallSite site = new CallSite("add");
+    public Cel one = Cel.value(1L);
+    public Method method;
+    public Manager manager;
+    public Program program;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        method = Counter.class.getMethod("add", long.class);
+        manager = new Manager();
+        manager.linker = JavaInterop.LINKER;
+        manager.learn("c", counter);
+        program = manager.compile("c.add 1");
+    }
+
+    @Benchmark
+    public Cel direct() {
+        return Cel.value(counter.add((Long) one.ref));
+    }
+
+    @Benchmark
+    public Cel reflection() throws Exception {
+        return Cel.value(method.invoke(counter, one.ref));
+    }
+
+    @Benchmark
+    public Cel cached() {
+        return site.call(counter, one, JavaInterop.LINKER);
+    }
+
+    @Benchmark
+    public Object script() {
+        manager.exchange.clear();
+        program.run(manager);
+        return manager.exchange.peekLast();
+    }
+}
@@ -0,0 +1,49 @@
+package lang.celadon.benchmarks;
+
+import lang.celadon.Library;
+import lang.celadon.Manager;
+import lang.celadon.ManagerPool;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Makes a new Manager and runs a small expression with it, as code that uses one Manager per request would.
+ * {@code shared} uses {@link Library#standard} without copying it; {@code copied} starts from {@link Library#empty}
+ * and binds the standard library into the Manager itself, which is how every Manager used to start. {@code pooled}
+ * borrows a Manager from a {@link ManagerPool} and gives it back, so it makes no new Manager at all.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class ManagerBenchmark {
+
+    public ManagerPool pool = new ManagerPool(4);
+
+    @Benchmark
+    public Object shared() {
+        Manager manager = new Manager();
+        manager.compile("1 + 2 * 3").run(manager);
+        return manager.exchange.peekLast();
+    }
+
+    @Benchmark
+    public Object copied() {
+        Manager manager = new Manager(Library.empty);
+        manager.standardLib();
+        manager.compile("1 + 2 * 3").run(manager);
+        return manager.exchange.peekLast();
+    }
+
+    @Benchmark
+    public Object pooled() {
+        Manager manager = pool.borrow();
+        manager.compile("1 + 2 * 3").run(manager);
+        Object result = manager.exchange.peekLast();
+        pool.release(manager);
+        return result;
+    }
+}
@@ -0,0 +1,69 @@
+package lang.celadon.benchmarks;
+
+import lang.celadon.Manager;
+import lang.celadon.ParallelTokenizer;
+import lang.celadon.TokenBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokenizes a few megabytes of data-heavy source with a ParallelTokenizer, with 1, 2, 4, and 8 threads, to show how
+ * it scales with core count; {@code serial} is plain {@link Manager#tokenize(CharSequence)} for comparison. Results
+ * above the machine's core count are not meaningful.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class ParallelTokenizeBenchmark {
+
+    public static String HUGE;
+
+    static {
+        StringBuilder sb = new StringBuilder(1 << 22);
+        for (int i = 0; i < 40; i++) {
+            sb.append(TokenizeBenchmark.LONG);
+        }
+        HUGE = sb.toString();
+    }
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    public Manager manager;
+    public ParallelTokenizer tokenizer;
+    public TokenBuffer buffer;
+
+    @Setup
+    public void setup() {
+        manager = new Manager();
+        tokenizer = new ParallelTokenizer(new ForkJoinPool(threads));
+        buffer = manager.newBuffer();
+    }
+
+    @TearDown
+    public void tearDown() {
+        tokenizer.pool.shutdown();
+    }
+
+    @Benchmark
+    public Object serial() {
+        manager.tokenize(HUGE);
+        return manager.tokens;
+    }
+
+    @Benchmark
+    public Object parallel() {
+        return tokenizer.tokenize(HUGE, 0, HUGE.length());
+    }
+
+    @Benchmark
+    public Object parallelBuffer() {
+        tokenizer.tokenize(HUGE, 0, HUGE.length(), buffer);
+        return buffer;
+    }
+}
@@ -0,0 +1,94 @@
+package lang.celadon.benchmarks;
+
+import lang.celadon.Manager;
+import lang.celadon.TokenBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the regex-based reference tokenizer with the hand-written Lexer, on a short expression and on a longer
+ * chunk of data-heavy source. The Uncached variants turn off the Lexer's {@link lang.celadon.Interner}, so every
+ * symbol and number gets a new Cel; run with {@code -prof gc} to compare the bytes allocated per operation. The Buffer
+ * variants tokenize into a reused {@link TokenBuffer}, which makes no Cels at all.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class TokenizeBenchmark {
+
+    public static final String SHORT = "(-3 + 7) * 999 / 3 + 5";
+    public static String LONG;
+
+    static {
+        StringBuilder sb = new StringBuilder(1 << 16);
+        for (int i = 0; i < 500; i++) {
+            sb.append("[").append(i).append(", 0x").append(Integer.toHexString(i * 31)).append(", ")
+                    .append(i * 0.125).append(", name").append(i & 15).append(", 'text ").append(i)
+                    .append("', `!`, ").append(i * 1000L).append("L] ; row ").append(i).append('\n');
+        }
+        LONG = sb.toString();
+    }
+
+    public Manager manager, uncached;
+    public TokenBuffer buffer;
+
+    @Setup
+    public void setup() {
+        manager = new Manager();
+        uncached = new Manager();
+        uncached.lexer.interner = null;
+        buffer = manager.newBuffer();
+    }
+
+    @Benchmark
+    public Object shortRegex() {
+        manager.tokenizeRegex(SHORT);
+        return manager.tokens;
+    }
+
+    @Benchmark
+    public Object shortLexer() {
+        manager.tokenize(SHORT);
+        return manager.tokens;
+    }
+
+    @Benchmark
+    public Object shortLexerUncached() {
+        uncached.tokenize(SHORT);
+        return uncached.tokens;
+    }
+
+    @Benchmark
+    public Object shortBuffer() {
+        manager.tokenize(SHORT, 0, SHORT.length(), buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public Object longRegex() {
+        manager.tokenizeRegex(LONG);
+        return manager.tokens;
+    }
+
+    @Benchmark
+    public Object longLexer() {
+        manager.tokenize(LONG);
+        return manager.tokens;
+    }
+
+    @Benchmark
+    public Object longLexerUncached() {
+        uncached.tokenize(LONG);
+        return uncached.tokens;
+    }
+
+    @Benchmark
+    public Object longBuffer() {
+        manager.tokenize(LONG, 0, LONG.length(), buffer);
+        return buffer;
+    }
+}
@@ -0,0 +1,83 @@
+package lang.celadon.benchmarks;
+
+import lang.celadon.BytecodeCompiler;
+import lang.celadon.Cel;
+import lang.celadon.CompiledExpression;
+import lang.celadon.Manager;
+import lang.celadon.Program;
+import lang.celadon.Tree;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the same arithmetic on two variables three ways: {@code evaluate} refills {@link Manager#items} with
+ * already-shunted code and calls {@link Manager#evaluate()}, {@code program} runs a compiled {@link Program}, and
+ * {@code tree} runs a {@link Tree} built from that Program, and {@code bytecode} runs a class generated from that
+ * Tree by {@link BytecodeCompiler}. Symbols are never folded, so the Program and Tree look
+ * up both variables and do all of the arithmetic on every call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class TreeBenchmark {
+
+    public static final String SOURCE = "(x * 3 + y) * (x - y / 2.0) - x % 7 + (y - 1) * (y + 1) / (x * x + 1)";
+
+    public Manager manager;
+    public ArrayList<Cel> rpn;
+    public Program program;
+    public Tree tree;
+    public CompiledExpression bytecode;
+    public int x, y;
+
+    @Setup
+    public void setup() {
+        manager = new Manager();
+        x = manager.symbols.id("x");
+        y = manager.symbols.id("y");
+        manager.learn(x, 1);
+        manager.learn(y, 2);
+        program = manager.compile(SOURCE);
+        tree = new Tree(program, manager);
+        bytecode = BytecodeCompiler.compile(tree, manager);
+        manager.tokenize(SOURCE);
+        manager.items.clear();
+        manager.shunt();
+        rpn = new ArrayList<>(manager.items);
+    }
+
+    @Benchmark
+    public Object evaluate() {
+        manager.items.clear();
+        manager.items.addAll(rpn);
+        manager.exchange.clear();
+        manager.evaluate();
+        return manager.exchange.peekLast();
+    }
+
+    @Benchmark
+    public Object program() {
+        manager.exchange.clear();
+        program.run(manager);
+        return manager.exchange.peekLast();
+    }
+
+    @Benchmark
+    public Object tree() {
+        manager.exchange.clear();
+        tree.run(manager);
+        return manager.exchange.peekLast();
+    }
+
+    @Benchmark
+    public Object bytecode() {
+        manager.exchange.clear();
+        bytecode.run(manager);
+        return manager.exchange.peekLast();
+    }
+}
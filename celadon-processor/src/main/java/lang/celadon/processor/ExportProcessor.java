@@ -0,0 +1,311 @@
+package lang.celadon.processor;
+
+import lang.celadon.CeladonExport;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes a {@link lang.celadon.Slotted} wrapper for each class marked with {@link CeladonExport}, or with any methods
+ * or fields marked with it. For a class {@code Foo} in package {@code p}, this writes {@code p.FooMethods}; a nested
+ * class {@code Outer.Inner} gets {@code OuterInnerMethods}. Each exported name gets one slot, and every method and
+ * field with that name is called from the same case, choosing an overload the way {@link lang.celadon.JavaInterop}
+ * does: no parameters if the argument is {@code ()}, otherwise the first parameter that takes the argument as it is,
+ * with primitive parameters before reference types and each reference type before its supertypes, or failing that,
+ * the first primitive parameter a number can be converted to.
+ * <br>
+ * Add the celadon-processor jar to the annotation processor path (with Maven, as a dependency with provided scope is
+ * enough) and this runs whenever the classes using it are compiled.
+ */
+@SupportedAnnotationTypes("lang.celadon.CeladonExport")
+public class ExportProcessor extends AbstractProcessor {
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        final LinkedHashSet<TypeElement> types = new LinkedHashSet<>();
+        for (Element e : roundEnv.getElementsAnnotatedWith(CeladonExport.class)) {
+            if (e.getKind().isClass() || e.getKind().isInterface())
+                types.add((TypeElement) e);
+            else
+                types.add((TypeElement) e.getEnclosingElement());
+        }
+        for (TypeElement type : types) {
+            if (check(type))
+                write(type, members(type));
+        }
+        return true;
+    }
+
+    private void error(String message, Element e) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, e);
+    }
+
+    private boolean check(TypeElement type) {
+        if (type.getKind() == ElementKind.ANNOTATION_TYPE) {
+            error("@CeladonExport can't be used on an annotation type", type);
+            return false;
+        }
+        if (type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS) {
+            error("@CeladonExport can't be used on a local or anonymous class", type);
+            return false;
+        }
+        for (Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+            if (e.getModifiers().contains(Modifier.PRIVATE)) {
+                error("@CeladonExport can't be used on a private class", type);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean exportable(Element e) {
+        final Set<Modifier> modifiers = e.getModifiers();
+        if (!modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.STATIC))
+            return false;
+        if (e.getKind() == ElementKind.FIELD)
+            return true;
+        return e.getKind() == ElementKind.METHOD && ((ExecutableElement) e).getParameters().size() <= 1
+                && !((ExecutableElement) e).isVarArgs();
+    }
+
+    /**
+     * Gets the methods and fields to export from type, grouped by name; if any were marked, only those are used.
+     */
+    private Map<String, ArrayList<Element>> members(TypeElement type) {
+        final Types typeUtils = processingEnv.getTypeUtils();
+        boolean marked = false;
+        for (Element e : type.getEnclosedElements()) {
+            if (e.getAnnotation(CeladonExport.class) != null) {
+                marked = true;
+                if (!exportable(e))
+                    error("Only public instance fields, and public instance methods with at most one parameter, "
+                            + "can be exported", e);
+            }
+        }
+        final LinkedHashMap<String, ArrayList<Element>> members = new LinkedHashMap<>();
+        final HashSet<String> signatures = new HashSet<>();
+        for (Element e : processingEnv.getElementUtils().getAllMembers(type)) {
+            if (!exportable(e) || marked && e.getAnnotation(CeladonExport.class) == null
+                    || ((TypeElement) e.getEnclosingElement()).getQualifiedName().contentEquals("java.lang.Object"))
+                continue;
+            final String name = e.getSimpleName().toString();
+            final String signature;
+            if (e.getKind() == ElementKind.FIELD)
+                signature = name;
+            else if (((ExecutableElement) e).getParameters().isEmpty())
+                signature = name + "()";
+            else
+                signature = name + "(" + typeUtils.erasure(((ExecutableElement) e).getParameters().get(0).asType()) + ")";
+            // a field can't be told apart from a method with no parameters, so the method wins
+            if (!signatures.add(signature) || e.getKind() == ElementKind.FIELD && signatures.contains(name + "()"))
+                continue;
+            if (e.getKind() == ElementKind.METHOD && ((ExecutableElement) e).getParameters().isEmpty()) {
+                final ArrayList<Element> same = members.get(name);
+                if (same != null) {
+                    for (int i = same.size() - 1; i >= 0; i--) {
+                        if (same.get(i).getKind() == ElementKind.FIELD)
+                            same.remove(i);
+                    }
+                }
+            }
+            ArrayList<Element> same = members.get(name);
+            if (same == null)
+                members.put(name, same = new ArrayList<>(2));
+            add(same, e);
+        }
+        return members;
+    }
+
+    private TypeMirror parameter(Element e) {
+        if (e.getKind() != ElementKind.METHOD || ((ExecutableElement) e).getParameters().isEmpty())
+            return null;
+        return processingEnv.getTypeUtils().erasure(((ExecutableElement) e).getParameters().get(0).asType());
+    }
+
+    // adds e to same so members with no parameter come first, then primitive parameters, and then each reference type
+    // before its supertypes, as JavaInterop orders overloads
+    private void add(ArrayList<Element> same, Element e) {
+        final TypeMirror p = parameter(e);
+        for (int i = 0; i < same.size(); i++) {
+            final TypeMirror other = parameter(same.get(i));
+            if (p == null && other != null || other != null && !other.getKind().isPrimitive()
+                    && (p.getKind().isPrimitive() || processingEnv.getTypeUtils().isAssignable(p, other)
+                    && !processingEnv.getTypeUtils().isSameType(p, other))) {
+                same.add(i, e);
+                return;
+            }
+        }
+        same.add(e);
+    }
+
+    private static String wrapperName(TypeElement type) {
+        final StringBuilder sb = new StringBuilder("Methods");
+        for (Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+            sb.insert(0, e.getSimpleName());
+        }
+        return sb.toString();
+    }
+
+    private void write(TypeElement type, Map<String, ArrayList<Element>> members) {
+        final String pkg = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        final String name = wrapperName(type);
+        final String target = processingEnv.getTypeUtils().erasure(type.asType()).toString();
+        final StringBuilder sb = new StringBuilder(1024);
+        if (!pkg.isEmpty())
+            sb.append("package ").append(pkg).append(";\n\n");
+        sb.append("import lang.celadon.Cel;\n")
+                .append("import lang.celadon.Core;\n")
+                .append("import lang.celadon.Slotted;\n")
+                .append("import lang.celadon.Syntax;\n\n")
+                .append("/**\n")
+                .append(" * Lets scripts call methods on a {@link ").append(target).append("}. Generated by ")
+                .append(ExportProcessor.class.getName()).append("; edits here will be lost.\n")
+                .append(" */\n")
+                .append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n")
+                .append("public final class ").append(name).append(" implements Slotted {\n")
+                .append("    public final ").append(target).append(" target;\n\n")
+                .append("    public ").append(name).append("(").append(target).append(" target) {\n")
+                .append("        this.target = target;\n")
+                .append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public int slot(String name) {\n")
+                .append("        switch (name) {\n");
+        int slot = 0;
+        for (String method : members.keySet()) {
+            sb.append("            case \"").append(method).append("\": return ").append(slot++).append(";\n");
+        }
+        sb.append("            default: return -1;\n")
+                .append("        }\n")
+                .append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public Cel run(Cel right, int slot) {\n")
+                .append("        final Object arg = right.ref;\n")
+                .append("        switch (slot) {\n");
+        slot = 0;
+        for (ArrayList<Element> same : members.values()) {
+            sb.append("            case ").append(slot++).append(":\n");
+            writeCase(sb, same);
+        }
+        sb.append("            default:\n")
+                .append("                return Cel.nothing;\n")
+                .append("        }\n")
+                .append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public Cel run(Cel right, String name) {\n")
+                .append("        final int slot = slot(name);\n")
+                .append("        return slot < 0 ? Cel.nothing : run(right, slot);\n")
+                .append("    }\n\n")
+                .append("    private static Cel wrap(Object result) {\n")
+                .append("        if (result == null)\n")
+                .append("            return Cel.nothing;\n")
+                .append("        return result instanceof Cel ? (Cel) result : Cel.value(result);\n")
+                .append("    }\n")
+                .append("}\n");
+        try {
+            final Writer writer = processingEnv.getFiler()
+                    .createSourceFile(pkg.isEmpty() ? name : pkg + "." + name, type).openWriter();
+            try {
+                writer.write(sb.toString());
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            error("Couldn't write " + name + ": " + e, type);
+        }
+    }
+
+    private void writeCase(StringBuilder sb, ArrayList<Element> same) {
+        final Element first = same.get(0);
+        sb.append("                if (Syntax.EMPTY.equals(arg))");
+        if (parameter(first) == null && first.getKind() == ElementKind.METHOD
+                && ((ExecutableElement) first).getReturnType().getKind() == TypeKind.VOID)
+            sb.append(" {\n                    target.").append(first.getSimpleName()).append("();\n")
+                    .append("                    return Cel.nothing;\n                }\n");
+        else if (parameter(first) == null)
+            sb.append("\n                    return wrap(target.").append(first.getSimpleName())
+                    .append(first.getKind() == ElementKind.METHOD ? "()" : "").append(");\n");
+        else
+            sb.append("\n                    return Cel.nothing;\n");
+        // first every parameter that takes arg as it is, then every primitive one that takes it converted
+        for (Element e : same) {
+            final TypeMirror p = parameter(e);
+            if (p == null)
+                continue;
+            if (p.getKind().isPrimitive()) {
+                final String boxed = processingEnv.getTypeUtils().boxedClass((PrimitiveType) p).getSimpleName()
+                        .toString();
+                // unboxed here, or javac could pick an overload taking Object over this one
+                writeCall(sb, "arg instanceof " + boxed, e, "(" + p + ") (" + boxed + ") arg");
+            } else if (p.toString().equals("java.lang.Object")) {
+                writeCall(sb, null, e, "arg");
+                return;
+            } else {
+                writeCall(sb, "arg == null || arg instanceof " + p, e, "(" + p + ") arg");
+            }
+        }
+        for (Element e : same) {
+            final TypeMirror p = parameter(e);
+            if (p == null || !p.getKind().isPrimitive() || p.getKind() == TypeKind.CHAR)
+                continue;
+            writeCall(sb, "Core.isNumeric(arg)", e, convert(p.getKind()));
+        }
+        sb.append("                return Cel.nothing;\n");
+    }
+
+    private static String convert(TypeKind kind) {
+        switch (kind) {
+            case BOOLEAN: return "Core.asLong(arg) != 0L";
+            case BYTE: return "(byte) Core.asLong(arg)";
+            case SHORT: return "(short) Core.asLong(arg)";
+            case INT: return "(int) Core.asLong(arg)";
+            case LONG: return "Core.asLong(arg)";
+            case FLOAT: return "(float) Core.asDouble(arg)";
+            default: return "Core.asDouble(arg)";
+        }
+    }
+
+    // writes a call to e with argument, made only if condition is true, or always if condition is null
+    private static void writeCall(StringBuilder sb, String condition, Element e, String argument) {
+        final String call = "target." + e.getSimpleName() + "(" + argument + ")";
+        final String indent = condition == null ? "                " : "                    ";
+        if (condition != null)
+            sb.append("                if (").append(condition).append(")");
+        if (((ExecutableElement) e).getReturnType().getKind() == TypeKind.VOID) {
+            if (condition != null)
+                sb.append(" {\n");
+            sb.append(indent).append(call).append(";\n").append(indent).append("return Cel.nothing;\n");
+            if (condition != null)
+                sb.append("                }\n");
+        } else {
+            if (condition != null)
+                sb.append("\n");
+            sb.append(indent).append("return wrap(").append(call).append(");\n");
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package lang.celadon.processor;
+
+import lang.celadon.Cel;
+import lang.celadon.Manager;
+import lang.celadon.Slotted;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compiles small classes with {@link ExportProcessor} and checks that the wrappers it writes call the right methods.
+ */
+public class ExportProcessorTest {
+
+    private static final String POINT = "package sample;\n" +
+            "import lang.celadon.CeladonExport;\n" +
+            "@CeladonExport\n" +
+            "public class Point {\n" +
+            "    public long x, y;\n" +
+            "    public String label = \"origin\";\n" +
+            "    public long add(long amount) { return x += amount; }\n" +
+            "    public double scale(double by) { x *= by; y *= by; return Math.hypot(x, y); }\n" +
+            "    public void reset() { x = y = 0; }\n" +
+            "    public String label() { return \"point \" + label; }\n" +
+            "    public String describe(Object o) { return \"object\"; }\n" +
+            "    public String describe(CharSequence s) { return \"text\"; }\n" +
+            "    public String describe(String s) { return \"string\"; }\n" +
+            "    public String describe(int i) { return \"int\"; }\n" +
+            "    public String describe() { return \"nothing\"; }\n" +
+            "    public long sum(long a, long b) { return a + b; }\n" +
+            "    public static long zero() { return 0L; }\n" +
+            "    long hidden() { return -1L; }\n" +
+            "}\n";
+
+    private static final String OUTER = "package sample;\n" +
+            "import lang.celadon.CeladonExport;\n" +
+            "public class Outer {\n" +
+            "    public static class Inner {\n" +
+            "        public int count;\n" +
+            "        @CeladonExport public int bump(int by) { return count += by; }\n" +
+            "        public void clear() { count = 0; }\n" +
+            "    }\n" +
+            "}\n";
+
+    private static final String BROKEN = "package sample;\n" +
+            "import lang.celadon.CeladonExport;\n" +
+            "public class Broken {\n" +
+            "    @CeladonExport public long sum(long a, long b) { return a + b; }\n" +
+            "}\n";
+
+    private static final class Source extends SimpleJavaFileObject {
+        final String code;
+
+        Source(String name, String code) {
+            super(URI.create("string:///sample/" + name + ".java"), Kind.SOURCE);
+            this.code = code;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return code;
+        }
+    }
+
+    private static File output;
+
+    private static ClassLoader compile(DiagnosticCollector<JavaFileObject> diagnostics, Source... sources)
+            throws Exception {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        output = Files.createTempDirectory("celadon-processor").toFile();
+        final List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"),
+                "-processor", ExportProcessor.class.getName(), "-d", output.getPath(), "-s", output.getPath());
+        final boolean ok = compiler.getTask(null, null, diagnostics, options, null, Arrays.asList(sources)).call();
+        return ok ? new URLClassLoader(new URL[]{output.toURI().toURL()}, ExportProcessorTest.class.getClassLoader())
+                : null;
+    }
+
+    private static Object call(Slotted wrapper, String name, Object argument) {
+        return wrapper.run(argument == null ? Cel.empty : Cel.value(argument), name).ref;
+    }
+
+    @Test
+    public void testGenerated() throws Exception {
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        final ClassLoader loader = compile(diagnostics, new Source("Point", POINT), new Source("Outer", OUTER));
+        assertTrue(diagnostics.getDiagnostics().toString(), loader != null);
+        final Class<?> pointClass = loader.loadClass("sample.Point");
+        final Object point = pointClass.newInstance();
+        final Slotted wrapper = (Slotted) loader.loadClass("sample.PointMethods").getConstructor(pointClass)
+                .newInstance(point);
+
+        assertEquals(3L, call(wrapper, "add", 3L));
+        assertEquals(5L, call(wrapper, "add", 2));
+        assertEquals(7L, call(wrapper, "add", 2.5));
+        assertEquals(7L, call(wrapper, "x", null));
+        assertEquals(14.0, call(wrapper, "scale", 2));
+        assertSame(Cel.nothing.ref, call(wrapper, "reset", null));
+        assertEquals(0L, call(wrapper, "x", null));
+        assertEquals("point origin", call(wrapper, "label", null));
+        assertEquals("nothing", call(wrapper, "describe", null));
+        assertEquals("string", call(wrapper, "describe", "a"));
+        assertEquals("text", call(wrapper, "describe", new StringBuilder("a")));
+        assertEquals("int", call(wrapper, "describe", 1));
+        assertEquals("object", call(wrapper, "describe", 1L));
+        assertSame(Cel.nothing.ref, call(wrapper, "add", "a"));
+        assertSame(Cel.nothing.ref, call(wrapper, "add", null));
+        assertEquals(-1, wrapper.slot("sum"));
+        assertEquals(-1, wrapper.slot("zero"));
+        assertEquals(-1, wrapper.slot("hidden"));
+        assertEquals(-1, wrapper.slot("getClass"));
+        assertEquals(-1, wrapper.slot("hashCode"));
+        assertTrue(wrapper.slot("add") >= 0);
+
+        final Manager m = new Manager();
+        m.learn("p", wrapper);
+        m.exchange.clear();
+        m.compile("p.add 4 + p.add 1").run(m);
+        assertEquals(9L, ((Cel) m.exchange.peekLast()).ref);
+
+        final Class<?> innerClass = loader.loadClass("sample.Outer$Inner");
+        final Slotted inner = (Slotted) loader.loadClass("sample.OuterInnerMethods").getConstructor(innerClass)
+                .newInstance(innerClass.newInstance());
+        assertEquals(2, call(inner, "bump", 2L));
+        assertEquals(-1, inner.slot("clear"));
+        assertEquals(-1, inner.slot("count"));
+    }
+
+    @Test
+    public void testRejected() throws Exception {
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        assertSame(null, compile(diagnostics, new Source("Broken", BROKEN)));
+        final List<String> errors = new ArrayList<>();
+        for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+            if (d.getKind() == Diagnostic.Kind.ERROR)
+                errors.add(d.getMessage(null));
+        }
+        assertFalse(errors.isEmpty());
+        assertTrue(errors.get(0), errors.get(0).contains("at most one parameter"));
+    }
+}
@@ -0,0 +1,127 @@
+package lang.celadon;
+
+/**
+ * An Operator on numbers that can also be applied to primitive longs and doubles, so {@link Manager#evaluate()} can
+ * work out arithmetic without boxing each intermediate result. Subclasses give {@link #applyLong(long, long)} and
+ * {@link #applyDouble(double, double)}; {@link #run(Cel, Cel)} is written in terms of them, so both ways of running
+ * an Arithmetic give the same results. If either operand is a Float or Double, both are treated as doubles; otherwise
+ * both are treated as longs, with Booleans as 1 or 0. Anything non-numeric gives {@link Cel#zeroInt}.
+ * <br>
+ * An Arithmetic can have a unary form, used when there is no left operand, by overriding {@link #hasUnary()},
+ * {@link #applyLong(long)}, and {@link #applyDouble(double)}; {@code -} does this for negation. Every Arithmetic is
+ * {@link Pure}, so subclasses must not have side effects. Every Arithmetic is also {@link Variadic}, so a chain of the
+ * same operator is worked out in primitives and only its final result is boxed.
+ */
+public abstract class Arithmetic extends Operator implements Pure, Variadic {
+    /**
+     * Values for {@link #operation}; every one but OTHER promises that {@link #applyLong(long, long)} and
+     * {@link #applyDouble(double, double)} do exactly what the matching Java operator does, and SUBTRACT also promises
+     * that its unary form negates, so code generators such as {@link BytecodeCompiler} can use the operator directly.
+     */
+    public static final int OTHER = 0, ADD = 1, SUBTRACT = 2, MULTIPLY = 3, DIVIDE = 4, REMAINDER = 5;
+
+    /**
+     * One of {@link #ADD}, {@link #SUBTRACT}, {@link #MULTIPLY}, {@link #DIVIDE}, or {@link #REMAINDER} if this is
+     * one of those basic operations, or {@link #OTHER} if not.
+     */
+    public final int operation;
+
+    public Arithmetic(int precedence)
+    {
+        this(precedence, OTHER);
+    }
+
+    public Arithmetic(int precedence, boolean rightAssociative)
+    {
+        super(precedence, rightAssociative);
+        operation = OTHER;
+    }
+
+    /**
+     * @param precedence the precedence, as for {@link Operator#Operator(int)}
+     * @param operation one of the constants for {@link #operation}
+     */
+    public Arithmetic(int precedence, int operation)
+    {
+        super(precedence);
+        this.operation = operation;
+    }
+
+    public abstract long applyLong(long left, long right);
+
+    public abstract double applyDouble(double left, double right);
+
+    /**
+     * @return true if this has a unary form, given by {@link #applyLong(long)} and {@link #applyDouble(double)}
+     */
+    public boolean hasUnary()
+    {
+        return false;
+    }
+
+    /**
+     * The unary form for longs; only called if {@link #hasUnary()} returns true.
+     * @param right the only operand
+     * @return the result; by default, 0
+     */
+    public long applyLong(long right)
+    {
+        return 0L;
+    }
+
+    /**
+     * The unary form for doubles; only called if {@link #hasUnary()} returns true.
+     * @param right the only operand
+     * @return the result; by default, 0.0
+     */
+    public double applyDouble(double right)
+    {
+        return 0.0;
+    }
+
+    @Override
+    public Cel run(Cel left, Cel right) {
+        if(Cel.isNumeric(left) && Cel.isNumeric(right)) {
+            if (Cel.isFloating(left) || Cel.isFloating(right)) {
+                return Cel.value(applyDouble(Core.asDouble(left.ref), Core.asDouble(right.ref)));
+            }
+            else
+            {
+                return Cel.value(applyLong(Core.asLong(left.ref), Core.asLong(right.ref)));
+            }
+        }
+        else if(hasUnary() && Syntax.EMPTY.equals(left.ref) && Cel.isNumeric(right))
+        {
+            if(Cel.isFloating(right))
+                return Cel.value(applyDouble(Core.asDouble(right.ref)));
+            else
+                return Cel.value(applyLong(Core.asLong(right.ref)));
+        }
+        return Cel.zeroInt;
+    }
+
+    @Override
+    public Cel run(Cel[] args, int from, int count) {
+        Cel result = args[from + count - 1];
+        for (int i = from + count - 2; i >= from; ) {
+            if (Cel.isNumeric(result) && Cel.isNumeric(args[i])) {
+                // runs as far as the operands are numbers without boxing, switching to doubles at the first one
+                boolean floating = Cel.isFloating(result);
+                long l = floating ? 0L : Core.asLong(result.ref);
+                double d = floating ? Core.asDouble(result.ref) : 0.0;
+                Cel left;
+                do {
+                    left = args[i--];
+                    if (floating || Cel.isFloating(left)) {
+                        d = applyDouble(Core.asDouble(left.ref), floating ? d : l);
+                        floating = true;
+                    } else
+                        l = applyLong(Core.asLong(left.ref), l);
+                } while (i >= from && Cel.isNumeric(args[i]));
+                result = floating ? Cel.value(d) : Cel.value(l);
+            } else
+                result = run(args[i--], result);
+        }
+        return result;
+    }
+}
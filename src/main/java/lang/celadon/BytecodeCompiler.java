@@ -0,0 +1,514 @@
+package lang.celadon;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Turns a {@link Tree} made only of numbers, symbols bound to numbers, and {@link Arithmetic} operators into a new JVM
+ * class, a subclass of {@link GeneratedExpression}, so the JIT compiler can optimize it like any other Java code. The
+ * basic operators ({@link Arithmetic#operation} other than OTHER) become single instructions such as {@code ladd} or
+ * {@code ddiv}, and unary SUBTRACT becomes {@code lneg} or {@code dneg}; other Arithmetics, and other unary forms, are
+ * called through {@link Arithmetic#applyLong(long, long)} and {@link Arithmetic#applyDouble(double, double)} or
+ * their unary versions. Each symbol is loaded once per run into a local variable.
+ * <br>
+ * Whether each symbol holds a long or a double is decided when compiling, from the value it has then; if that
+ * changes, the generated code notices before doing anything and the Tree runs instead. Trees that use anything else,
+ * such as strings or Procedurals that aren't Arithmetic, aren't compiled at all, and {@link #compile(Tree, Manager)}
+ * returns the Tree itself. Classes are written by a small built-in emitter, using class file version 49 so no stack
+ * map frames are needed, and each is loaded by its own ClassLoader, so it can be unloaded once nothing uses it.
+ * <br>
+ * This uses ClassLoader.defineClass(), so it isn't available on GWT.
+ */
+public final class BytecodeCompiler {
+    private static final AtomicInteger counter = new AtomicInteger();
+
+    /**
+     * Compiles Trees with {@link #compile(Tree, Manager)}; set {@link Tiering#compiler} to this to have
+     * {@link TieredExpression}s promote hot code to bytecode.
+     */
+    public static final Tiering.Compiler TIER = new Tiering.Compiler() {
+        @Override
+        public CompiledExpression compile(Tree tree, Manager manager) {
+            return BytecodeCompiler.compile(tree, manager);
+        }
+    };
+
+    private static final String BASE = "lang/celadon/GeneratedExpression", ARITHMETIC = "lang/celadon/Arithmetic",
+            MANAGER = "Llang/celadon/Manager;", CEL = "Llang/celadon/Cel;";
+
+    private static final int
+            ICONST_0 = 0x03, LCONST_0 = 0x09, DCONST_0 = 0x0e, BIPUSH = 0x10, SIPUSH = 0x11, LDC_W = 0x13,
+            LDC2_W = 0x14, LLOAD = 0x16, DLOAD = 0x18, ALOAD = 0x19, ALOAD_0 = 0x2a, ALOAD_1 = 0x2b, LSTORE = 0x37,
+            DSTORE = 0x39, ASTORE = 0x3a, LADD = 0x61, LNEG = 0x75, DNEG = 0x77, L2D = 0x8a, IFEQ = 0x99,
+            IRETURN = 0xac, RETURN = 0xb1, INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8,
+            WIDE = 0xc4;
+
+    private static final int LONG = Tree.LONG, DOUBLE = Tree.DOUBLE;
+
+    private final Manager manager;
+    private final Tree tree;
+    private final IdentityHashMap<Tree.Node, Integer> kinds = new IdentityHashMap<>();
+    private final ArrayList<Cel> constants = new ArrayList<>();
+    private final ArrayList<Arithmetic> arithmetics = new ArrayList<>();
+    private final ArrayList<Integer> symbolIds = new ArrayList<>();
+    private final ArrayList<String> symbolNames = new ArrayList<>();
+    // for each symbol, the local variable holding its number, or 0 if it isn't used in arithmetic
+    private final ArrayList<Integer> symbolLocals = new ArrayList<>();
+    private final ArrayList<Integer> symbolKinds = new ArrayList<>();
+    private int nextLocal = 3;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream(256);
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final HashMap<String, Integer> poolEntries = new HashMap<>();
+    private int poolSize = 1;
+
+    private byte[] code = new byte[256];
+    private int length, stack, maxStack;
+
+    private BytecodeCompiler(Tree tree, Manager manager) {
+        this.tree = tree;
+        this.manager = manager;
+    }
+
+    /**
+     * Generates and loads a class for tree, if it can be compiled, or returns tree if not.
+     * @param tree a Tree, which will run instead of the generated code when that can't
+     * @param manager the Manager whose current bindings decide if each symbol is a long or a double
+     * @return a new {@link GeneratedExpression}, or tree itself
+     */
+    public static CompiledExpression compile(Tree tree, Manager manager) {
+        if (!tree.isTree())
+            return tree;
+        BytecodeCompiler compiler = new BytecodeCompiler(tree, manager);
+        try {
+            return compiler.generate();
+        } catch (IOException | ReflectiveOperationException | LinkageError | IllegalStateException e) {
+            return tree;
+        }
+    }
+
+    /**
+     * Compiles source with {@link Manager#compileTree(CharSequence)}, then compiles the Tree to bytecode if possible.
+     * @param manager the Manager to compile with
+     * @param text the source code to compile
+     * @return a new {@link GeneratedExpression}, or a Tree if the code can't be compiled to bytecode
+     */
+    public static CompiledExpression compile(Manager manager, CharSequence text) {
+        return compile(manager.compileTree(text), manager);
+    }
+
+    private CompiledExpression generate() throws IOException, ReflectiveOperationException {
+        final Tree.Node[] roots = tree.roots();
+        for (Tree.Node root : roots) {
+            if (root instanceof Tree.Literal)
+                constants.add(((Tree.Literal) root).cel);
+            else if (root instanceof Tree.Symbol)
+                symbol((Tree.Symbol) root, false);
+            else if (kind(root) < 0)
+                return tree;
+        }
+        // nothing to do that the Tree wouldn't do just as fast
+        if (kinds.isEmpty())
+            return tree;
+
+        final String name = "lang/celadon/generated/Expression" + counter.incrementAndGet();
+        final int thisClass = classEntry(name), baseClass = classEntry(BASE);
+        final int codeName = utf8("Code");
+        final byte[] init = initCode(), run = runCode(roots);
+        final int maxLocals = nextLocal;
+        final int runName = utf8("tryRun"), runType = utf8("(" + MANAGER + ")Z"),
+                initName = utf8("<init>"), initType = utf8("()V");
+        if (poolSize > 0xFFFF || run.length > 0xFFFF || maxLocals > 0xFFFF)
+            return tree;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(poolBytes.size() + run.length + 128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(49);
+        out.writeShort(poolSize);
+        pool.flush();
+        poolBytes.writeTo(out);
+        out.writeShort(0x0031); // public final super
+        out.writeShort(thisClass);
+        out.writeShort(baseClass);
+        out.writeShort(0); // interfaces
+        out.writeShort(0); // fields
+        out.writeShort(2); // methods
+        method(out, 0x0001, initName, initType, codeName, 1, 1, init);
+        method(out, 0x0004, runName, runType, codeName, maxStack, maxLocals, run);
+        out.writeShort(0); // attributes
+        out.flush();
+
+        byte[] classFile = bytes.toByteArray();
+        Class<?> c = new Loader(GeneratedExpression.class.getClassLoader()).define(name.replace('/', '.'), classFile);
+        GeneratedExpression expression = (GeneratedExpression) c.getConstructor().newInstance();
+        int[] ids = new int[symbolIds.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = symbolIds.get(i);
+        }
+        expression.init(tree, constants.toArray(new Cel[0]), arithmetics.toArray(new Arithmetic[0]), ids,
+                symbolNames.toArray(new String[0]));
+        return expression;
+    }
+
+    private static void method(DataOutputStream out, int access, int name, int type, int codeName,
+                               int maxStack, int maxLocals, byte[] code) throws IOException {
+        out.writeShort(access);
+        out.writeShort(name);
+        out.writeShort(type);
+        out.writeShort(1);
+        out.writeShort(codeName);
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0); // exception table
+        out.writeShort(0); // attributes
+    }
+
+    /**
+     * Finds the kind of number a node gives, or -1 if it can't be compiled.
+     */
+    private int kind(Tree.Node node) {
+        Integer known = kinds.get(node);
+        if (known != null)
+            return known;
+        int kind;
+        if (node instanceof Tree.Literal) {
+            Cel cel = ((Tree.Literal) node).cel;
+            kind = !Cel.isNumeric(cel) ? -1 : Cel.isFloating(cel) ? DOUBLE : LONG;
+        } else if (node instanceof Tree.Symbol) {
+            int index = symbol((Tree.Symbol) node, true);
+            kind = index < 0 ? -1 : symbolKinds.get(index);
+        } else if (node instanceof Tree.Arith) {
+            Tree.Arith arith = (Tree.Arith) node;
+            int right = kind(arith.right), left = arith.left == null ? LONG : kind(arith.left);
+            kind = (left < 0 || right < 0) ? -1 : (left == DOUBLE || right == DOUBLE) ? DOUBLE : LONG;
+            if (kind >= 0 && !direct(arith) && !arithmetics.contains(arith.arithmetic))
+                arithmetics.add(arith.arithmetic);
+        } else
+            kind = -1;
+        kinds.put(node, kind);
+        return kind;
+    }
+
+    /**
+     * Finds or adds the index for a symbol; if numeric is true, also gives it a local variable, or returns -1 if it
+     * doesn't hold a number now.
+     */
+    private int symbol(Tree.Symbol node, boolean numeric) {
+        int index = symbolIds.indexOf(node.id);
+        if (index < 0) {
+            index = symbolIds.size();
+            symbolIds.add(node.id);
+            symbolNames.add(node.name);
+            symbolLocals.add(0);
+            symbolKinds.add(-1);
+        }
+        if (numeric && symbolLocals.get(index) == 0) {
+            Cel value = (manager.symbols == node.symbols) ? manager.resolve(node.id) : manager.resolve(node.name);
+            if (!Cel.isNumeric(value))
+                return -1;
+            symbolKinds.set(index, Cel.isFloating(value) ? DOUBLE : LONG);
+            symbolLocals.set(index, nextLocal);
+            nextLocal += 2;
+        }
+        return index;
+    }
+
+    private byte[] initCode() {
+        length = 0;
+        op(ALOAD_0, 1);
+        invoke(INVOKESPECIAL, BASE, "<init>", "()V", -1);
+        op(RETURN, 0);
+        return Arrays.copyOf(code, length);
+    }
+
+    private byte[] runCode(Tree.Node[] roots) {
+        length = 0;
+        stack = 0;
+        maxStack = 0;
+        ArrayList<Integer> failures = new ArrayList<>();
+        for (int i = 0; i < symbolIds.size(); i++) {
+            int local = symbolLocals.get(i);
+            if (local == 0)
+                continue;
+            boolean isDouble = symbolKinds.get(i) == DOUBLE;
+            op(ALOAD_0, 1);
+            op(ALOAD_1, 1);
+            pushInt(i);
+            invoke(INVOKEVIRTUAL, BASE, "symbol", "(" + MANAGER + "I)" + CEL, -2);
+            local(ASTORE, 2, -1);
+            local(ALOAD, 2, 1);
+            invoke(INVOKESTATIC, BASE, isDouble ? "isDouble" : "isLong", "(" + CEL + ")Z", 0);
+            op(IFEQ, -1);
+            failures.add(length);
+            u2(0);
+            local(ALOAD, 2, 1);
+            invoke(INVOKESTATIC, BASE, isDouble ? "doubleValue" : "longValue",
+                    "(" + CEL + ")" + (isDouble ? "D" : "J"), 1);
+            local(isDouble ? DSTORE : LSTORE, local, -2);
+        }
+        op(ALOAD_0, 1);
+        op(ALOAD_1, 1);
+        invoke(INVOKEVIRTUAL, BASE, "begin", "(" + MANAGER + ")V", -2);
+        int constant = 0;
+        for (Tree.Node root : roots) {
+            op(ALOAD_0, 1);
+            op(ALOAD_1, 1);
+            if (root instanceof Tree.Literal) {
+                pushInt(constant++);
+                invoke(INVOKEVIRTUAL, BASE, "pushConstant", "(" + MANAGER + "I)V", -3);
+            } else if (root instanceof Tree.Symbol) {
+                pushInt(symbolIds.indexOf(((Tree.Symbol) root).id));
+                invoke(INVOKEVIRTUAL, BASE, "pushSymbol", "(" + MANAGER + "I)V", -3);
+            } else {
+                int kind = kinds.get(root);
+                emit(root, kind);
+                invoke(INVOKEVIRTUAL, BASE, "push", "(" + MANAGER + (kind == DOUBLE ? "D" : "J") + ")V", -4);
+            }
+        }
+        op(ALOAD_0, 1);
+        op(ALOAD_1, 1);
+        invoke(INVOKEVIRTUAL, BASE, "end", "(" + MANAGER + ")V", -2);
+        op(ICONST_0 + 1, 1);
+        op(IRETURN, -1);
+        for (int at : failures) {
+            // branch offsets are relative to the IFEQ, one byte before the offset itself
+            int offset = length - (at - 1);
+            if (offset > Short.MAX_VALUE)
+                throw new IllegalStateException("Branch is too long");
+            code[at] = (byte) (offset >>> 8);
+            code[at + 1] = (byte) offset;
+        }
+        stack = 0;
+        op(ICONST_0, 1);
+        op(IRETURN, -1);
+        return Arrays.copyOf(code, length);
+    }
+
+    /**
+     * Emits code that pushes the value of node as the given kind, which may be wider than the node's own kind.
+     */
+    private void emit(Tree.Node node, int want) {
+        final int kind = kinds.get(node);
+        if (node instanceof Tree.Literal) {
+            Cel cel = ((Tree.Literal) node).cel;
+            if (want == DOUBLE)
+                pushDouble(kind == DOUBLE ? Core.asDouble(cel.ref) : (double) Core.asLong(cel.ref));
+            else
+                pushLong(Core.asLong(cel.ref));
+            return;
+        }
+        if (node instanceof Tree.Symbol) {
+            int index = symbolIds.indexOf(((Tree.Symbol) node).id);
+            local(kind == DOUBLE ? DLOAD : LLOAD, symbolLocals.get(index), 2);
+        } else {
+            Tree.Arith arith = (Tree.Arith) node;
+            int operation = arith.arithmetic.operation;
+            boolean direct = direct(arith);
+            if (!direct) {
+                op(ALOAD_0, 1);
+                pushInt(arithmetics.indexOf(arith.arithmetic));
+                invoke(INVOKEVIRTUAL, BASE, "arithmetic", "(I)L" + ARITHMETIC + ";", -1);
+            }
+            String t = kind == DOUBLE ? "D" : "J";
+            if (arith.left != null) {
+                emit(arith.left, kind);
+                emit(arith.right, kind);
+                if (!direct)
+                    invoke(INVOKEVIRTUAL, ARITHMETIC, kind == DOUBLE ? "applyDouble" : "applyLong",
+                            "(" + t + t + ")" + t, -3);
+                else
+                    // ladd, lsub, lmul, ldiv, lrem are 4 apart, and each double version is 2 after its long one
+                    op(LADD + (operation - 1) * 4 + (kind == DOUBLE ? 2 : 0), -2);
+            } else {
+                emit(arith.right, kind);
+                if (!direct)
+                    invoke(INVOKEVIRTUAL, ARITHMETIC, kind == DOUBLE ? "applyDouble" : "applyLong",
+                            "(" + t + ")" + t, -1);
+                else
+                    op(kind == DOUBLE ? DNEG : LNEG, 0);
+            }
+        }
+        if (want == DOUBLE && kind == LONG)
+            op(L2D, 0);
+    }
+
+    /**
+     * True if arith can be a single instruction: any basic operation with two operands, but only SUBTRACT without a
+     * left operand, since it is the only one that promises its unary form negates.
+     */
+    private static boolean direct(Tree.Arith arith) {
+        int operation = arith.arithmetic.operation;
+        return arith.left != null ? operation != Arithmetic.OTHER : operation == Arithmetic.SUBTRACT;
+    }
+
+    private void op(int opcode, int stackChange) {
+        u1(opcode);
+        stack += stackChange;
+        if (stack > maxStack)
+            maxStack = stack;
+    }
+
+    private void local(int opcode, int index, int stackChange) {
+        if (index > 0xFF) {
+            u1(WIDE);
+            op(opcode, stackChange);
+            u2(index);
+        } else {
+            op(opcode, stackChange);
+            u1(index);
+        }
+    }
+
+    private void invoke(int opcode, String owner, String name, String type, int stackChange) {
+        op(opcode, stackChange);
+        u2(memberEntry(10, owner, name, type));
+    }
+
+    private void pushInt(int value) {
+        if (value >= -1 && value <= 5)
+            op(ICONST_0 + value, 1);
+        else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            op(BIPUSH, 1);
+            u1(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            op(SIPUSH, 1);
+            u2(value);
+        } else {
+            op(LDC_W, 1);
+            u2(entry("I" + value, 3, value));
+        }
+    }
+
+    private void pushLong(long value) {
+        if (value == 0L || value == 1L)
+            op(LCONST_0 + (int) value, 2);
+        else {
+            op(LDC2_W, 2);
+            u2(entry("J" + value, 5, value));
+        }
+    }
+
+    private void pushDouble(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        if (bits == 0L || value == 1.0)
+            op(DCONST_0 + (int) value, 2);
+        else {
+            op(LDC2_W, 2);
+            u2(entry("D" + bits, 6, bits));
+        }
+    }
+
+    private void u1(int b) {
+        if (length == code.length)
+            code = Arrays.copyOf(code, length << 1);
+        code[length++] = (byte) b;
+    }
+
+    private void u2(int s) {
+        u1(s >>> 8);
+        u1(s);
+    }
+
+    private int utf8(String s) {
+        Integer index = poolEntries.get("U" + s);
+        if (index != null)
+            return index;
+        try {
+            pool.writeByte(1);
+            pool.writeUTF(s);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        poolEntries.put("U" + s, poolSize);
+        return poolSize++;
+    }
+
+    private int classEntry(String internalName) {
+        Integer index = poolEntries.get("C" + internalName);
+        if (index != null)
+            return index;
+        int name = utf8(internalName);
+        try {
+            pool.writeByte(7);
+            pool.writeShort(name);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        poolEntries.put("C" + internalName, poolSize);
+        return poolSize++;
+    }
+
+    private int memberEntry(int tag, String owner, String name, String type) {
+        String key = "M" + owner + '.' + name + type;
+        Integer index = poolEntries.get(key);
+        if (index != null)
+            return index;
+        int ownerIndex = classEntry(owner);
+        String natKey = "N" + name + type;
+        Integer nat = poolEntries.get(natKey);
+        if (nat == null) {
+            int n = utf8(name), t = utf8(type);
+            try {
+                pool.writeByte(12);
+                pool.writeShort(n);
+                pool.writeShort(t);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            nat = poolSize++;
+            poolEntries.put(natKey, nat);
+        }
+        try {
+            pool.writeByte(tag);
+            pool.writeShort(ownerIndex);
+            pool.writeShort(nat);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        poolEntries.put(key, poolSize);
+        return poolSize++;
+    }
+
+    /**
+     * Adds an Integer (tag 3), Long (tag 5), or Double (tag 6, given as raw bits) constant; the last two take two
+     * places in the constant pool.
+     */
+    private int entry(String key, int tag, long value) {
+        Integer index = poolEntries.get(key);
+        if (index != null)
+            return index;
+        try {
+            pool.writeByte(tag);
+            if (tag == 3)
+                pool.writeInt((int) value);
+            else
+                pool.writeLong(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        poolEntries.put(key, poolSize);
+        poolSize += (tag == 3) ? 1 : 2;
+        return poolSize - ((tag == 3) ? 1 : 2);
+    }
+
+    private static final class Loader extends ClassLoader {
+        Loader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
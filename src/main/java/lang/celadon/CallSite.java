@@ -0,0 +1,221 @@
+package lang.celadon;
+
+/**
+ * One {@code receiver.method argument} call in a script, made when code is shunted; the method name comes after
+ * {@link Syntax#ACCESS}, and the receiver and argument are its left and right operands. Use {@code ()} as the argument
+ * to call a method with none, as in {@code rng.nextLong()}. The receiver should be a {@link Methodical}; any other
+ * object can only be called through a {@link Linker}, such as the one a Manager has in {@link Manager#linker}, and
+ * without one the result is {@link Cel#nothing}.
+ * <br>
+ * Each CallSite keeps an inline cache of the receiver classes it has seen. For a {@link Slotted} receiver, the first
+ * call with each class asks it for the slot of this method's name, and later calls with that class only compare the
+ * class and load the slot it had. Up to {@link #POLYMORPHIC_LIMIT} classes are kept; after that, the site is
+ * megamorphic, and looks the slot up on every call. Receivers that are only Methodical are called by name. Other
+ * receivers are cached the same way, by class and by whether there is an argument, with whatever the Linker gave for
+ * them. The cache only ever holds objects that don't change, so a CallSite in a shared {@link Program} can be used by
+ * many threads.
+ */
+public final class CallSite implements Procedural {
+    /**
+     * The precedence of a method call when shunting; it is higher than any operator's, and calls in a chain like
+     * {@code a.b().c()} run from left to right.
+     */
+    public static final int PRECEDENCE = Integer.MAX_VALUE;
+
+    /**
+     * The most receiver classes a CallSite caches before it becomes megamorphic.
+     */
+    public static final int POLYMORPHIC_LIMIT = 4;
+
+    /**
+     * Values for {@link #state()}.
+     */
+    public static final int UNINITIALIZED = 0, MONOMORPHIC = 1, POLYMORPHIC = 2, MEGAMORPHIC = 3;
+
+    /**
+     * Finds methods on objects that aren't {@link Methodical}, such as plain Java objects, and calls them.
+     */
+    public interface Linker {
+        /**
+         * Finds a method; called once per receiver class, name, and arity at each CallSite, so this may be slow.
+         * @param type the class of the receiver
+         * @param name the method name
+         * @param arity 0 if the call has no argument (it was given {@code ()}), or 1 if it has one
+         * @return an object {@link #invoke(Object, Object, Cel)} can use to call the method on any instance of type,
+         * or null if there is no such method
+         */
+        Object link(Class<?> type, String name, int arity);
+
+        /**
+         * Calls a method found by {@link #link(Class, String, int)}.
+         * @param link a non-null result of link
+         * @param receiver an instance of the class link was given
+         * @param argument the argument, or {@link Cel#empty} if the arity was 0
+         * @return the result as a Cel
+         */
+        Cel invoke(Object link, Object receiver, Cel argument);
+    }
+
+    private static final Entry[] NO_ENTRIES = new Entry[0];
+
+    /**
+     * The name of the method this calls.
+     */
+    public final String name;
+
+    // the first class seen, checked before the rest; then every class seen, including the first. These are only
+    // written while holding this CallSite's lock, but are read without it, so each is volatile, and an array is only
+    // assigned once it is filled, never changed after.
+    private volatile Entry first;
+    private volatile Entry[] entries = NO_ENTRIES;
+    private volatile boolean megamorphic;
+
+    public CallSite(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Calls this site's method on left with right as its argument, without a {@link Linker}.
+     * @param left the receiver, which should be a {@link Methodical}
+     * @param right the argument
+     * @return the result of the method, or {@link Cel#nothing} if left isn't a Methodical
+     */
+    @Override
+    public Cel run(Cel left, Cel right) {
+        return run(left, right, null);
+    }
+
+    /**
+     * Calls this site's method on left with right as its argument, using linker if left isn't a {@link Methodical};
+     * {@link Manager#evaluate()} calls this with its Manager's {@link Manager#linker}.
+     * @param left the receiver
+     * @param right the argument
+     * @param linker finds methods on receivers that aren't Methodical; may be null
+     * @return the result of the method, or {@link Cel#nothing} if it can't be called
+     */
+    public Cel run(Cel left, Cel right, Linker linker) {
+        if (left == null || left.ref == null)
+            return Cel.nothing;
+        return call(left.ref, right, linker);
+    }
+
+    /**
+     * Calls this site's method on receiver, using the inline cache if receiver is {@link Slotted} or is called
+     * through linker.
+     * @param receiver the object to call the method on
+     * @param argument the argument
+     * @return the result of the method
+     */
+    public Cel call(Methodical receiver, Cel argument) {
+        return call(receiver, argument, null);
+    }
+
+    /**
+     * Calls this site's method on receiver, using the inline cache if receiver is {@link Slotted} or is called
+     * through linker.
+     * @param receiver the object to call the method on
+     * @param argument the argument
+     * @param linker finds methods on receivers that aren't Methodical; may be null
+     * @return the result of the method, or {@link Cel#nothing} if it can't be called
+     */
+    public Cel call(Object receiver, Cel argument, Linker linker) {
+        final int arity;
+        if (receiver instanceof Slotted) {
+            linker = null;
+            arity = -1;
+        } else if (receiver instanceof Methodical)
+            return ((Methodical) receiver).run(argument, name);
+        else if (linker == null)
+            return Cel.nothing;
+        else
+            arity = Syntax.EMPTY.equals(argument.ref) ? 0 : 1;
+        final Class<?> type = receiver.getClass();
+        Entry e = first;
+        if (e == null || e.type != type || e.linker != linker || e.arity != arity) {
+            e = null;
+            final Entry[] es = entries;
+            for (int i = 1; i < es.length; i++) {
+                if (es[i].type == type && es[i].linker == linker && es[i].arity == arity) {
+                    e = es[i];
+                    break;
+                }
+            }
+            if (e == null)
+                e = miss(receiver, type, linker, arity);
+        }
+        if (linker == null)
+            return e.slot < 0 ? ((Slotted) receiver).run(argument, name) : ((Slotted) receiver).run(argument, e.slot);
+        return e.link == null ? Cel.nothing : linker.invoke(e.link, receiver, argument);
+    }
+
+    // looks up the slot or link for a receiver that isn't cached, caching it if there's room
+    private Entry miss(Object receiver, Class<?> type, Linker linker, int arity) {
+        if (megamorphic)
+            return lookUp(receiver, type, linker, arity);
+        synchronized (this) {
+            final Entry[] old = entries;
+            for (int i = 0; i < old.length; i++) {
+                final Entry e = old[i];
+                if (e.type == type && e.linker == linker && e.arity == arity)
+                    return e;
+            }
+            final Entry e = lookUp(receiver, type, linker, arity);
+            if (megamorphic)
+                return e;
+            if (old.length == POLYMORPHIC_LIMIT) {
+                megamorphic = true;
+                return e;
+            }
+            final Entry[] es = new Entry[old.length + 1];
+            System.arraycopy(old, 0, es, 0, old.length);
+            es[old.length] = e;
+            if (first == null)
+                first = e;
+            entries = es;
+            return e;
+        }
+    }
+
+    private Entry lookUp(Object receiver, Class<?> type, Linker linker, int arity) {
+        return linker == null
+                ? new Entry(type, ((Slotted) receiver).slot(name), null, -1, null)
+                : new Entry(type, -1, linker, arity, linker.link(type, name, arity));
+    }
+
+    /**
+     * @return {@link #UNINITIALIZED} if no Slotted receiver has been seen, {@link #MONOMORPHIC} or
+     * {@link #POLYMORPHIC} if one or several classes are cached, or {@link #MEGAMORPHIC} if too many classes were seen
+     */
+    public synchronized int state() {
+        if (megamorphic)
+            return MEGAMORPHIC;
+        switch (entries.length) {
+            case 0: return UNINITIALIZED;
+            case 1: return MONOMORPHIC;
+            default: return POLYMORPHIC;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "." + name;
+    }
+
+    // one receiver class seen here, with its slot if it is Slotted, or with the Linker and arity used for it and what
+    // that Linker found
+    private static final class Entry {
+        final Class<?> type;
+        final int slot;
+        final Linker linker;
+        final int arity;
+        final Object link;
+
+        Entry(Class<?> type, int slot, Linker linker, int arity, Object link) {
+            this.type = type;
+            this.slot = slot;
+            this.linker = linker;
+            this.arity = arity;
+            this.link = link;
+        }
+    }
+}
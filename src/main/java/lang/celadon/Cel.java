@@ -9,6 +9,10 @@ import java.util.Objects;
  * Created by Tommy Ettinger on 8/20/2017.
  */
 public class Cel {
+    /**
+     * The name of this Cel, or its source text if it came from a literal. Cels made by {@link #value(Object)} leave
+     * this null until {@link #getTitle()} is called, so prefer that method when the Cel may be a computed value.
+     */
     public String title;
     public Object ref;
 
@@ -27,6 +31,29 @@ public class Cel {
         this.ref = ref;
     }
 
+    /**
+     * Makes a Cel for a computed value, such as the result of an arithmetic operator, without formatting a title for
+     * it; the title is only made from ref if something calls {@link #getTitle()}. This avoids turning every
+     * intermediate number into a String that nothing reads. The result is equal to {@code new Cel(ref)}.
+     * @param ref the value to hold
+     * @return a Cel with ref as its value and no title yet
+     */
+    public static Cel value(Object ref)
+    {
+        return new Cel(null, ref);
+    }
+
+    /**
+     * Gets the title, making it from ref the first time this is called if this Cel was made by {@link #value(Object)}.
+     * @return the title, as {@link #Cel(Object)} would have set it if none was given
+     */
+    public String getTitle()
+    {
+        if(title == null)
+            title = (ref == null) ? "null" : ref.toString();
+        return title;
+    }
+
     public static boolean isNumeric(Cel o)
     {
         return o != null && o.ref != null && ((o.ref instanceof Number) || (o.ref instanceof Boolean));
@@ -63,7 +90,7 @@ public class Cel {
         if(ref instanceof Character)
             return "`" + ref + "`";
         if(ref instanceof Procedural)
-            return title;
+            return getTitle();
         return ref.toString();
     }
 
@@ -92,7 +119,7 @@ public class Cel {
         @Override
         public int hash(Object data)
         {
-            return data == null || !(data instanceof Cel) ? 0 : CrossHash.hash(((Cel)data).title);
+            return data == null || !(data instanceof Cel) ? 0 : CrossHash.hash(((Cel)data).getTitle());
         }
 
         @Override
@@ -132,6 +159,18 @@ public class Cel {
     public static final Cel zeroInt = new Cel("0", 0);
     public static final Cel zeroLong = new Cel("0L", 0L);
 
+    /**
+     * Shared Cels for the int literals from -128 to 1023, as they are written in decimal without a plus sign or leading
+     * zeros; the Cel for an int n is at index {@code n + 128}, and the one for 0 is {@link #zeroInt}. The tokenizer
+     * uses these instead of allocating, so they must not be modified.
+     */
+    public static final Cel[] smallInts = new Cel[1152];
+    static {
+        for (int i = 0; i < smallInts.length; i++) {
+            smallInts[i] = (i == 128) ? zeroInt : new Cel(Integer.toString(i - 128), i - 128);
+        }
+    }
+
 
 //    public static final Cel split = new Cel(";", Syntax.SPLIT);
 //    public static final Cel comma = new Cel(",", Syntax.COMMA);
@@ -0,0 +1,23 @@
+package lang.celadon;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class whose methods scripts should be able to call, for the annotation processor in celadon-processor. For
+ * a class {@code Foo}, the processor writes a {@link Slotted} class {@code FooMethods} in the same package, which wraps
+ * a Foo given to its constructor; bind the wrapper in a Manager and scripts can call {@code foo.method argument} on it.
+ * The generated class looks names up with a {@code switch} on Strings and calls each method with a {@code switch} on
+ * its slot, the same as a hand-written Slotted, so no reflection happens at runtime.
+ * <br>
+ * Every public instance method with no parameters or one parameter is exported, as are public instance fields, which
+ * are read with no argument. If any methods or fields in the class are marked with this too, only those are exported;
+ * marking only methods or fields is enough to export their class.
+ * Arguments and results are converted the same way {@link JavaInterop} converts them.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target({ElementType.TYPE, ElementType.METHOD, ElementType.FIELD})
+public @interface CeladonExport {
+}
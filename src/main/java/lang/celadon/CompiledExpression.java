@@ -0,0 +1,15 @@
+package lang.celadon;
+
+/**
+ * Something that can run already-compiled Celadon code against a Manager, appending the results to its
+ * {@link Manager#exchange}. {@link Program}, {@link Tree}, and the classes {@link BytecodeCompiler} generates all
+ * give the same results for the same code; they only differ in how fast they start and how fast they run.
+ */
+public interface CompiledExpression {
+    /**
+     * Runs this, appending the results to manager's {@link Manager#exchange} and leaving them in its
+     * {@link Manager#items}.
+     * @param manager the Manager that provides bindings for symbols and receives the results
+     */
+    void run(Manager manager);
+}
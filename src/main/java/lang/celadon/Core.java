@@ -32,6 +32,114 @@ public class Core {
         return (o instanceof Double) || (o instanceof Float);
     }
 
+    // The standard operators and functions. They have no state, so every Manager shares these same objects, and
+    // anything that compares Procedurals by identity, like Tree, works across Managers.
+
+    public static final Arithmetic plus = new Arithmetic(10, Arithmetic.ADD) {
+        @Override
+        public long applyLong(long left, long right) {
+            return left + right;
+        }
+
+        @Override
+        public double applyDouble(double left, double right) {
+            return left + right;
+        }
+    };
+
+    public static final Arithmetic minus = new Arithmetic(10, Arithmetic.SUBTRACT) {
+        @Override
+        public long applyLong(long left, long right) {
+            return left - right;
+        }
+
+        @Override
+        public double applyDouble(double left, double right) {
+            return left - right;
+        }
+
+        @Override
+        public boolean hasUnary() {
+            return true;
+        }
+
+        @Override
+        public long applyLong(long right) {
+            return -right;
+        }
+
+        @Override
+        public double applyDouble(double right) {
+            return -right;
+        }
+    };
+
+    public static final Arithmetic times = new Arithmetic(11, Arithmetic.MULTIPLY) {
+        @Override
+        public long applyLong(long left, long right) {
+            return left * right;
+        }
+
+        @Override
+        public double applyDouble(double left, double right) {
+            return left * right;
+        }
+    };
+
+    public static final Arithmetic divide = new Arithmetic(11, Arithmetic.DIVIDE) {
+        @Override
+        public long applyLong(long left, long right) {
+            return left / right;
+        }
+
+        @Override
+        public double applyDouble(double left, double right) {
+            return left / right;
+        }
+    };
+
+    public static final Arithmetic modulo = new Arithmetic(11, Arithmetic.REMAINDER) {
+        @Override
+        public long applyLong(long left, long right) {
+            return left % right;
+        }
+
+        @Override
+        public double applyDouble(double left, double right) {
+            return left % right;
+        }
+    };
+
+    public static final Pure sin = new Pure() {
+        @Override
+        public Cel run(Cel left, Cel right) {
+            if(Cel.isFloating(right)) {
+                return Cel.value(Math.sin(Core.asDouble(right.ref)));
+            }
+            return Cel.zeroInt;
+        }
+    };
+
+    public static final Pure cos = new Pure() {
+        @Override
+        public Cel run(Cel left, Cel right) {
+            if(Cel.isFloating(right)) {
+                return Cel.value(Math.cos(Core.asDouble(right.ref)));
+            }
+            return Cel.zeroInt;
+        }
+    };
+
+    public static final Pure tan = new Pure() {
+        @Override
+        public Cel run(Cel left, Cel right) {
+            if(Cel.isFloating(right)) {
+                return Cel.value(Math.tan(Core.asDouble(right.ref)));
+            }
+            return Cel.zeroInt;
+        }
+    };
+
     /*
     public static Procedural plus = new Procedural() {
         @Override
@@ -0,0 +1,98 @@
+package lang.celadon;
+
+/**
+ * Joins chains of the same {@link Variadic} operator in code in reverse Polish notation, so {@code a b c d + + +}
+ * becomes {@code a b c d #4 +}, where {@code #4} is a {@link Count} that tells {@link Manager#evaluate()} and
+ * {@link Tree} to run the next operator once on the last 4 operands. Only an operator whose right operand is the
+ * result of the same operator symbol, run on two operands, joins that operator's chain; this is how chains written
+ * without parentheses come out of shunting, and running them from right to left gives the same result as before.
+ * <br>
+ * This makes the same assumptions as {@link Folder}, and stops at the same places it does, leaving the rest of the
+ * code as it is. The operator stays a symbol, so it is still looked up each time the code runs.
+ */
+final class Flattener {
+    // what is known about an operand: that it is a literal, that it is not a Procedural, or nothing
+    private static final byte CONSTANT = 0, VALUE = 1, ANY = 2;
+
+    /**
+     * The ref of the Cel placed just before an operator that should run on {@link #count} operands.
+     */
+    static final class Count {
+        final int count;
+
+        Count(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public String toString() {
+            return "#" + count;
+        }
+    }
+
+    private Flattener() {
+    }
+
+    /**
+     * Joins chains in code in place, moving the remaining items to the front.
+     * @param manager provides bindings for symbols and Procedurals
+     * @param code the items to flatten, in reverse Polish notation
+     * @param ids the symbol id for each item in code, or -1 for literals, as in {@link Program}
+     * @param length how many items of code to use
+     * @return how many items are left at the start of code (and ids); never more than length
+     */
+    static int flatten(Manager manager, Cel[] code, int[] ids, int length) {
+        final Cel[] values = new Cel[length];
+        final byte[] kinds = new byte[length];
+        // for each operand, the index of the Variadic operator that gave it, or -1
+        final int[] chains = new int[length];
+        // for each operator, how many operands it runs on if that's more than 2, or -1 if it joined a later chain
+        final int[] counts = new int[length];
+        int top = 0, arity, right;
+        Cel resolved;
+        for (int i = 0; i < length; i++) {
+            resolved = ids[i] >= 0 ? manager.resolve(ids[i]) : code[i];
+            if (resolved == null)
+                break;
+            if (!(resolved.ref instanceof Procedural)) {
+                values[top] = resolved;
+                chains[top] = -1;
+                kinds[top++] = ids[i] >= 0 ? VALUE : CONSTANT;
+                continue;
+            }
+            if (top < 1)
+                break;
+            if (top < 2)
+                arity = 1;
+            else if (kinds[top - 2] == CONSTANT)
+                arity = (values[top - 2].ref instanceof Procedural
+                        || Syntax.CLOSE_PARENTHESIS.equals(values[top - 2].ref)) ? 1 : 2;
+            else if (kinds[top - 2] == VALUE)
+                arity = 2;
+            else
+                break;
+            final boolean variadic = resolved.ref instanceof Variadic && ids[i] >= 0;
+            if (variadic && arity == 2 && (right = chains[top - 1]) >= 0 && ids[right] == ids[i]) {
+                counts[i] = Math.max(counts[right], 2) + 1;
+                counts[right] = -1;
+            }
+            top -= arity;
+            values[top] = null;
+            chains[top] = variadic && arity == 2 ? i : -1;
+            kinds[top++] = (resolved.ref instanceof Arithmetic || resolved.ref instanceof Variadic) ? VALUE : ANY;
+        }
+        // a chain of n operands drops n - 2 operators and adds one Count before the last, so n never passes i
+        int n = 0;
+        for (int i = 0; i < length; i++) {
+            if (counts[i] < 0)
+                continue;
+            if (counts[i] > 2) {
+                code[n] = new Cel(new Count(counts[i]));
+                ids[n++] = -1;
+            }
+            code[n] = code[i];
+            ids[n++] = ids[i];
+        }
+        return n;
+    }
+}
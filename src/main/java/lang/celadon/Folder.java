@@ -0,0 +1,113 @@
+package lang.celadon;
+
+/**
+ * Constant folding for code in reverse Polish notation. This steps through the code the same way
+ * {@link Manager#evaluate()} does, but only keeps track of which operands are constants; each {@link Pure} Procedural
+ * that would be run on constants alone is run now, and it and its operands are replaced by the result.
+ * <br>
+ * Folding assumes that symbols bound to Procedurals now will still be bound to the same ones when the code runs, and
+ * that symbols bound to other values will not become Procedurals. It stops, leaving the rest of the code as it is, at
+ * the first unbound symbol, or at the first Procedural where it can't tell if it would be run as unary or binary.
+ * <br>
+ * Algebraic simplification, such as turning {@code x * 1} or {@code x + 0} into {@code x}, is left out on purpose:
+ * {@link Arithmetic} can change the type of its result, making a Long from a Boolean and zero from a value that isn't
+ * a number, so {@code x} alone would not give the same result.
+ */
+final class Folder {
+    // what is known about an operand: its exact value, that it is not a Procedural, or nothing
+    private static final byte CONSTANT = 0, VALUE = 1, ANY = 2;
+
+    private Folder() {
+    }
+
+    /**
+     * Folds code in place, moving the remaining items to the front.
+     * @param manager provides bindings for symbols and Procedurals
+     * @param code the items to fold, in reverse Polish notation
+     * @param ids if non-null, the symbol id for each item in code, or -1 for literals; symbols are looked up by these
+     *            ids, and folded results get -1. If null, items in code are resolved as {@link Manager#evaluate()}
+     *            resolves them, and only items that aren't symbols count as constants.
+     * @param length how many items of code to use
+     * @return how many items are left at the start of code (and ids)
+     */
+    static int fold(Manager manager, Cel[] code, int[] ids, int length) {
+        final Cel[] values = new Cel[length];
+        final byte[] kinds = new byte[length];
+        int top = 0, n = 0, i = 0, arity;
+        Cel item, resolved, result;
+        byte kind;
+        for (; i < length; i++) {
+            item = code[i];
+            if (ids == null) {
+                resolved = manager.resolve(item);
+                kind = Syntax.SYMBOL.equals(item.ref) ? VALUE : CONSTANT;
+            } else if (ids[i] >= 0) {
+                resolved = manager.resolve(ids[i]);
+                kind = VALUE;
+            } else {
+                resolved = item;
+                kind = CONSTANT;
+            }
+            if (resolved == null)
+                break;
+            code[n] = item;
+            if (ids != null)
+                ids[n] = ids[i];
+            n++;
+            if (!(resolved.ref instanceof Procedural)) {
+                values[top] = resolved;
+                kinds[top++] = kind;
+                continue;
+            }
+            // past this point, breaking out must skip the item that was just copied
+            if (top < 1) {
+                i++;
+                break;
+            }
+            if (top < 2)
+                arity = 1;
+            else if (kinds[top - 2] == CONSTANT)
+                arity = (values[top - 2].ref instanceof Procedural
+                        || Syntax.CLOSE_PARENTHESIS.equals(values[top - 2].ref)) ? 1 : 2;
+            else if (kinds[top - 2] == VALUE)
+                arity = 2;
+            else {
+                i++;
+                break;
+            }
+            if (resolved.ref instanceof Pure && kinds[top - 1] == CONSTANT
+                    && (arity == 1 || kinds[top - 2] == CONSTANT)) {
+                try {
+                    result = ((Procedural) resolved.ref).run(arity == 1 ? Cel.empty : values[top - 2],
+                            values[top - 1]);
+                } catch (RuntimeException e) {
+                    // it should fail the same way when it runs, so leave it for then
+                    result = null;
+                }
+                // a result that evaluate() would treat as an operator or symbol can't go back into the code
+                if (result != null && result.ref != null && !(result.ref instanceof Procedural)
+                        && !Syntax.SYMBOL.equals(result.ref)) {
+                    n -= arity + 1;
+                    code[n] = result;
+                    if (ids != null)
+                        ids[n] = -1;
+                    n++;
+                    top -= arity;
+                    values[top] = result;
+                    kinds[top++] = CONSTANT;
+                    continue;
+                }
+            }
+            top -= arity;
+            values[top] = null;
+            kinds[top++] = (resolved.ref instanceof Arithmetic) ? VALUE : ANY;
+        }
+        for (; i < length; i++) {
+            code[n] = code[i];
+            if (ids != null)
+                ids[n] = ids[i];
+            n++;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,97 @@
+package lang.celadon;
+
+/**
+ * The superclass of every class made by {@link BytecodeCompiler}. A generated class only overrides
+ * {@link #tryRun(Manager)}, which loads each symbol's number, checks that it is still the kind of number (long or
+ * double) the code was generated for, and then does all of the arithmetic as plain JVM instructions. If the checks
+ * fail, or the operators have been rebound since, this runs the {@link Tree} it was generated from instead.
+ * <br>
+ * The methods here are protected so generated classes, which are loaded by their own ClassLoader, can call them;
+ * nothing else should need to.
+ */
+public abstract class GeneratedExpression implements CompiledExpression {
+    private Tree tree;
+    private Cel[] constants;
+    private Arithmetic[] arithmetics;
+    private int[] ids;
+    private String[] names;
+
+    protected GeneratedExpression() {
+    }
+
+    final void init(Tree tree, Cel[] constants, Arithmetic[] arithmetics, int[] ids, String[] names) {
+        this.tree = tree;
+        this.constants = constants;
+        this.arithmetics = arithmetics;
+        this.ids = ids;
+        this.names = names;
+    }
+
+    /**
+     * @return the Tree this was generated from, which runs whenever the generated code can't
+     */
+    public final Tree tree() {
+        return tree;
+    }
+
+    @Override
+    public final void run(Manager manager) {
+        if (!tree.fits(manager) || !tryRun(manager))
+            tree.run(manager);
+    }
+
+    /**
+     * Runs the generated code, unless a symbol doesn't hold the kind of number it was generated for.
+     * @param manager the Manager that provides bindings for symbols and receives the results
+     * @return true if this ran, or false if nothing was done and the Tree should run instead
+     */
+    protected abstract boolean tryRun(Manager manager);
+
+    protected final Cel symbol(Manager manager, int index) {
+        return (manager.symbols == tree.program.symbols) ? manager.resolve(ids[index]) : manager.resolve(names[index]);
+    }
+
+    protected final Arithmetic arithmetic(int index) {
+        return arithmetics[index];
+    }
+
+    protected static boolean isLong(Cel c) {
+        return Cel.isNumeric(c) && !Cel.isFloating(c);
+    }
+
+    protected static boolean isDouble(Cel c) {
+        return Cel.isFloating(c);
+    }
+
+    protected static long longValue(Cel c) {
+        return Core.asLong(c.ref);
+    }
+
+    protected static double doubleValue(Cel c) {
+        return Core.asDouble(c.ref);
+    }
+
+    protected final void begin(Manager manager) {
+        manager.items.clear();
+    }
+
+    protected final void push(Manager manager, long value) {
+        manager.items.add(Cel.value(value));
+    }
+
+    protected final void push(Manager manager, double value) {
+        manager.items.add(Cel.value(value));
+    }
+
+    protected final void pushConstant(Manager manager, int index) {
+        manager.items.add(constants[index]);
+    }
+
+    protected final void pushSymbol(Manager manager, int index) {
+        manager.items.add(symbol(manager, index));
+    }
+
+    protected final void end(Manager manager) {
+        manager.exchange.addAll(manager.items);
+    }
+}
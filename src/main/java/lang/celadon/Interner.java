@@ -0,0 +1,137 @@
+package lang.celadon;
+
+/**
+ * A bounded cache of token Cels, keyed by the kind of token and its text, so that a symbol like {@code x} or a literal
+ * like {@code 2.5} that appears many times is only allocated once (title, boxed value, and Cel). The table has a fixed
+ * capacity; each key can live in one of a few neighboring slots, and when those are all taken, one of them is replaced,
+ * so memory use never grows past {@link #capacity} entries with titles of at most {@link #maxLength} chars.
+ * <br>
+ * The Cels this returns are shared by every token with the same text, so they must not be modified. An Interner is
+ * not thread-safe; each {@link Lexer} has its own.
+ */
+public class Interner {
+    /**
+     * How many neighboring slots a key may be stored in.
+     */
+    public static final int PROBES = 4;
+
+    public final int capacity, maxLength;
+    private final int mask;
+    private final Cel[] cels;
+    private final int[] hashes, kinds;
+    private int size;
+    /**
+     * How many lookups found a cached Cel, how many did not, and how many cached Cels have been replaced by newer ones.
+     */
+    public long hits, misses, evictions;
+
+    /**
+     * Makes an Interner with room for 1024 entries, each with a title of up to 64 chars.
+     */
+    public Interner() {
+        this(1024, 64);
+    }
+
+    /**
+     * @param capacity how many Cels this can hold; rounded up to a power of two, at least {@link #PROBES}
+     * @param maxLength the longest token text that will be cached; longer tokens are never cached
+     */
+    public Interner(int capacity, int maxLength) {
+        int c = PROBES;
+        while (c < capacity)
+            c <<= 1;
+        this.capacity = c;
+        this.maxLength = maxLength;
+        mask = c - 1;
+        cels = new Cel[c];
+        hashes = new int[c];
+        kinds = new int[c];
+    }
+
+    private static int hash(int kind, CharSequence text, int start, int end) {
+        int h = kind * 0x9E3779B9;
+        for (int i = start; i < end; i++) {
+            h = (h ^ text.charAt(i)) * 0x01000193;
+        }
+        return h ^ h >>> 15;
+    }
+
+    /**
+     * Looks up the Cel previously stored for a token of the given kind whose title is the given range of text.
+     * @param kind a token kind from {@link Lexer}, such as {@link Lexer#SYMBOL}
+     * @param text the source text
+     * @param start the start of the title in text, inclusive
+     * @param end the end of the title in text, exclusive
+     * @return the cached Cel, or null if there isn't one
+     */
+    public Cel get(int kind, CharSequence text, int start, int end) {
+        final int len = end - start;
+        if (len > maxLength)
+            return null;
+        final int h = hash(kind, text, start, end);
+        OUTER:
+        for (int p = 0, s = h & mask; p < PROBES; p++, s = s + 1 & mask) {
+            Cel c = cels[s];
+            if (c == null)
+                break;
+            if (hashes[s] != h || kinds[s] != kind || c.title.length() != len)
+                continue;
+            for (int i = 0; i < len; i++) {
+                if (c.title.charAt(i) != text.charAt(start + i))
+                    continue OUTER;
+            }
+            ++hits;
+            return c;
+        }
+        ++misses;
+        return null;
+    }
+
+    /**
+     * Stores cel as the canonical Cel for tokens of the given kind with the same text as its title, replacing an
+     * older entry if the slots for that text are full.
+     * @param kind a token kind from {@link Lexer}, such as {@link Lexer#SYMBOL}
+     * @param cel a Cel that will not be modified later
+     * @return cel, for chaining
+     */
+    public Cel put(int kind, Cel cel) {
+        final String title = cel.title;
+        if (title.length() > maxLength)
+            return cel;
+        final int h = hash(kind, title, 0, title.length()), home = h & mask;
+        int slot = -1;
+        for (int p = 0, s = home; p < PROBES; p++, s = s + 1 & mask) {
+            if (cels[s] == null) {
+                slot = s;
+                ++size;
+                break;
+            }
+        }
+        if (slot < 0) {
+            // all slots for this key are taken, so replace one of them, taking turns
+            slot = home + (int) (evictions++ & PROBES - 1) & mask;
+        }
+        cels[slot] = cel;
+        hashes[slot] = h;
+        kinds[slot] = kind;
+        return cel;
+    }
+
+    /**
+     * @return how many Cels are currently cached
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all cached Cels and resets the counts of hits, misses, and evictions.
+     */
+    public void clear() {
+        for (int i = 0; i < capacity; i++) {
+            cels[i] = null;
+        }
+        size = 0;
+        hits = misses = evictions = 0L;
+    }
+}
@@ -0,0 +1,237 @@
+package lang.celadon;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link CallSite.Linker} that lets scripts call the public instance methods of plain Java objects, as
+ * {@code list.add 'x'} or {@code list.size()}, and read public instance fields with no argument, as {@code point.x()}.
+ * Set a Manager's {@link Manager#linker} to {@link #LINKER} to use it.
+ * <br>
+ * Each receiver class, member name, and arity is looked up with reflection once, turned into a {@link MethodHandle},
+ * and kept in a cache for that class; each {@link CallSite} also keeps what it found for the classes it sees. The
+ * handles are adapted to take and return Objects, so a call is one {@link MethodHandle#invokeExact} with no argument
+ * arrays and no {@link Method#invoke(Object, Object...)}. A number is converted to the type of a primitive parameter,
+ * so an Integer can be given where a long is wanted, and the other way around. If a method is overloaded, the first
+ * overload with the most specific parameter type that takes the argument as it is gets called, or failing that, the
+ * first that takes it after converting numbers. Results are wrapped in Cels; null and void give {@link Cel#nothing}.
+ * <br>
+ * Scripts can call any public method on objects bound in a Manager using this, so only bind objects that are safe to
+ * expose that way. Methods on Class and ClassLoader objects, and {@code getClass()}, are never linked.
+ */
+public final class JavaInterop implements CallSite.Linker {
+    /**
+     * The one JavaInterop; it can be shared by any number of Managers and threads.
+     */
+    public static final JavaInterop LINKER = new JavaInterop();
+
+    private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class),
+            CALL = MethodType.methodType(Object.class, Object.class, Object.class);
+
+    // kinds of parameter; OBJECT takes anything its type accepts, and the rest are primitives
+    private static final int OBJECT = 0, BOOLEAN = 1, CHAR = 2, BYTE = 3, SHORT = 4, INT = 5, LONG = 6, FLOAT = 7,
+            DOUBLE = 8;
+
+    // stands in for "no such member" in the cache
+    private static final Object NONE = new Object();
+
+    private final ClassValue<ConcurrentHashMap<String, Object>> links =
+            new ClassValue<ConcurrentHashMap<String, Object>>() {
+                @Override
+                protected ConcurrentHashMap<String, Object> computeValue(Class<?> type) {
+                    return new ConcurrentHashMap<>(16);
+                }
+            };
+
+    private JavaInterop() {
+    }
+
+    @Override
+    public Object link(Class<?> type, String name, int arity) {
+        final ConcurrentHashMap<String, Object> cache = links.get(type);
+        final String key = (char) ('0' + arity) + name;
+        Object link = cache.get(key);
+        if (link == null) {
+            link = find(type, name, arity);
+            cache.putIfAbsent(key, link == null ? NONE : link);
+        }
+        return link == NONE ? null : link;
+    }
+
+    @Override
+    public Cel invoke(Object link, Object receiver, Cel argument) {
+        if (link instanceof Target)
+            return ((Target) link).call(receiver, argument.ref);
+        final Target[] targets = (Target[]) link;
+        final Object value = argument.ref;
+        for (int i = 0; i < targets.length; i++) {
+            if (targets[i].takes(value))
+                return targets[i].call(receiver, value);
+        }
+        for (int i = 0; i < targets.length; i++) {
+            if (targets[i].converts(value))
+                return targets[i].call(receiver, value);
+        }
+        return Cel.nothing;
+    }
+
+    private static Object find(Class<?> type, String name, int arity) {
+        if (Class.class.isAssignableFrom(type) || ClassLoader.class.isAssignableFrom(type) || "getClass".equals(name))
+            return null;
+        final ArrayList<Target> targets = new ArrayList<>(4);
+        for (Method method : type.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers()) || !method.getName().equals(name)
+                    || method.getParameterTypes().length != arity)
+                continue;
+            final MethodHandle handle = handle(type, method);
+            if (handle != null)
+                add(targets, new Target(name, handle, arity == 0 ? null : method.getParameterTypes()[0]));
+        }
+        if (targets.isEmpty() && arity == 0) {
+            try {
+                final Field field = type.getField(name);
+                if (!Modifier.isStatic(field.getModifiers()))
+                    return new Target(name, MethodHandles.publicLookup().unreflectGetter(field).asType(GETTER), null);
+            } catch (NoSuchFieldException | IllegalAccessException | SecurityException ignored) {
+            }
+        }
+        switch (targets.size()) {
+            case 0: return null;
+            case 1: return targets.get(0);
+            default: return targets.toArray(new Target[0]);
+        }
+    }
+
+    // adds target to targets so primitive parameters come first, and then each reference type before its supertypes,
+    // as Java would choose them for a value of that exact type
+    private static void add(ArrayList<Target> targets, Target target) {
+        for (int i = 0; i < targets.size(); i++) {
+            final Target other = targets.get(i);
+            if (other.kind == OBJECT && (target.kind != OBJECT || other.parameter != target.parameter
+                    && other.parameter.isAssignableFrom(target.parameter))) {
+                targets.add(i, target);
+                return;
+            }
+        }
+        targets.add(target);
+    }
+
+    /**
+     * Gets a handle for method, reached through type or, if that can't be done, through the first public class or
+     * interface above type that has it, adapted to take and return Objects; or null if no public type has it.
+     */
+    private static MethodHandle handle(Class<?> type, Method method) {
+        final MethodType methodType = MethodType.methodType(method.getReturnType(), method.getParameterTypes());
+        final ArrayDeque<Class<?>> types = new ArrayDeque<>(8);
+        types.add(type);
+        Class<?> c;
+        while ((c = types.pollFirst()) != null) {
+            if (Modifier.isPublic(c.getModifiers())) {
+                try {
+                    c.getMethod(method.getName(), method.getParameterTypes());
+                    final MethodHandle handle = MethodHandles.publicLookup().findVirtual(c, method.getName(),
+                            methodType);
+                    return handle.asType(methodType.parameterCount() == 0 ? GETTER : CALL);
+                } catch (NoSuchMethodException | IllegalAccessException | SecurityException ignored) {
+                }
+            }
+            if (c.getSuperclass() != null)
+                types.add(c.getSuperclass());
+            for (Class<?> i : c.getInterfaces()) {
+                types.add(i);
+            }
+        }
+        return null;
+    }
+
+    private static int kind(Class<?> parameter) {
+        if (parameter == null || !parameter.isPrimitive())
+            return OBJECT;
+        if (parameter == boolean.class) return BOOLEAN;
+        if (parameter == char.class) return CHAR;
+        if (parameter == byte.class) return BYTE;
+        if (parameter == short.class) return SHORT;
+        if (parameter == int.class) return INT;
+        if (parameter == long.class) return LONG;
+        if (parameter == float.class) return FLOAT;
+        return DOUBLE;
+    }
+
+    /**
+     * One method or field getter, with its handle taking the receiver and, for a method with an argument, that
+     * argument, as Objects.
+     */
+    private static final class Target {
+        final String name;
+        final MethodHandle handle;
+        final Class<?> parameter;
+        final int kind;
+
+        Target(String name, MethodHandle handle, Class<?> parameter) {
+            this.name = name;
+            this.handle = handle;
+            this.parameter = parameter;
+            kind = kind(parameter);
+        }
+
+        // true if value can be passed as it is, or unboxed to exactly this primitive type
+        boolean takes(Object value) {
+            switch (kind) {
+                case OBJECT: return value == null || parameter.isInstance(value);
+                case BOOLEAN: return value instanceof Boolean;
+                case CHAR: return value instanceof Character;
+                case BYTE: return value instanceof Byte;
+                case SHORT: return value instanceof Short;
+                case INT: return value instanceof Integer;
+                case LONG: return value instanceof Long;
+                case FLOAT: return value instanceof Float;
+                default: return value instanceof Double;
+            }
+        }
+
+        // true if value is a number (or Boolean) that can be converted to this primitive type
+        boolean converts(Object value) {
+            return kind != OBJECT && kind != CHAR && Core.isNumeric(value);
+        }
+
+        Cel call(Object receiver, Object value) {
+            final Object result;
+            try {
+                if (parameter == null)
+                    result = (Object) handle.invokeExact(receiver);
+                else
+                    result = (Object) handle.invokeExact(receiver, convert(value));
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException("Calling " + name + " on a " + receiver.getClass().getName()
+                        + " threw " + t, t);
+            }
+            if (result == null)
+                return Cel.nothing;
+            return result instanceof Cel ? (Cel) result : Cel.value(result);
+        }
+
+        private Object convert(Object value) {
+            if (kind == OBJECT || takes(value))
+                return value;
+            switch (kind) {
+                case BOOLEAN: return Core.asLong(value) != 0L;
+                case BYTE: return (byte) Core.asLong(value);
+                case SHORT: return (short) Core.asLong(value);
+                case INT: return (int) Core.asLong(value);
+                case LONG: return Core.asLong(value);
+                case FLOAT: return (float) Core.asDouble(value);
+                case DOUBLE: return Core.asDouble(value);
+                default: return value;
+            }
+        }
+    }
+}
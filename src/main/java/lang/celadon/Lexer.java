@@ -0,0 +1,828 @@
+package lang.celadon;
+
+import squidpony.StringKit;
+
+import java.util.List;
+
+/**
+ * A hand-written, table-driven scanner that reads Celadon source in one pass and produces the same tokens as
+ * {@link Manager#pattern}, without going through a regex engine or looking up capture groups by name. Scanning and
+ * building {@link Cel} values are separate steps: {@link #scan()} only finds the kind and extent of the next token,
+ * and {@link #cel()} turns the current token into a Cel, so callers that only need token boundaries pay nothing for
+ * allocation.
+ * <br>
+ * A Lexer holds the position it has reached in its current text, so it should not be shared between threads; it is
+ * cheap to create one per {@link Manager} or per thread.
+ */
+public class Lexer {
+    /**
+     * Returned by {@link #scan()} when there are no more tokens.
+     */
+    public static final int END = 0,
+            OPEN_PARENTHESIS = 1, OPEN_BRACE = 2, OPEN_BRACKET = 3,
+            CLOSE_PARENTHESIS = 4, CLOSE_BRACE = 5, CLOSE_BRACKET = 6,
+            GAP = 7, NOW = 8, ACCESS = 9,
+            STRING = 10, CHAR = 11, FLOAT = 12, DOUBLE = 13, LONG = 14, INT = 15, SYMBOL = 16,
+    /**
+     * Block comments, as well as any token preceded by {@code ##}; never returned by {@link #scan()}.
+     */
+            REMOVED = 17,
+    /**
+     * An {@code (} followed by {@code )}, which {@link #tokenize(CharSequence, int, int, TokenBuffer)} merges into one
+     * token, like {@link Cel#empty}; never returned by {@link #scan()}.
+     */
+            EMPTY = 18,
+    /**
+     * Returned by {@link #scan()} when {@link #complete} is false and the rest of the text is needed to finish a token;
+     * {@link #position} is left at the start of that token, so it can be scanned again once more text is available.
+     */
+            MORE = -1;
+
+    // character classes, used to pick a branch from the first char of a token
+    private static final byte C_SYMBOL = 0, C_SKIP = 1, C_SEMICOLON = 2, C_HASH = 3, C_BACKTICK = 4, C_QUOTE = 5,
+            C_TILDE = 6, C_SIGN = 7, C_DIGIT = 8, C_NAN = 9, C_INFINITY = 10,
+            C_OPEN_PARENTHESIS = 11, C_OPEN_BRACE = 12, C_OPEN_BRACKET = 13,
+            C_CLOSE_PARENTHESIS = 14, C_CLOSE_BRACE = 15, C_CLOSE_BRACKET = 16,
+            C_GAP = 17, C_NOW = 18, C_ACCESS = 19;
+    // bit flags for properties that several branches need to test
+    private static final byte F_WORD = 1, F_HEX = 2, F_STOP = 4, F_VERTICAL = 8;
+
+    private static final byte[] classes = new byte[128], flags = new byte[128];
+
+    static {
+        for (int c = 0; c < 128; c++) {
+            if (Character.isLetterOrDigit(c) || c == '_')
+                flags[c] |= F_WORD;
+            if ((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F'))
+                flags[c] |= F_HEX;
+        }
+        for (int c = '0'; c <= '9'; c++) {
+            classes[c] = C_DIGIT;
+        }
+        for (char c : " \t\n\u000B\f\r,".toCharArray()) {
+            classes[c] = C_SKIP;
+            flags[c] |= F_STOP;
+        }
+        for (char c : "\n\u000B\f\r".toCharArray()) {
+            flags[c] |= F_VERTICAL;
+        }
+        for (char c : "()[]{}:@.".toCharArray()) {
+            flags[c] |= F_STOP;
+        }
+        classes[';'] = C_SEMICOLON;
+        classes['#'] = C_HASH;
+        classes['`'] = C_BACKTICK;
+        classes['"'] = C_QUOTE;
+        classes['\''] = C_QUOTE;
+        classes['~'] = C_TILDE;
+        classes['+'] = C_SIGN;
+        classes['-'] = C_SIGN;
+        classes['N'] = C_NAN;
+        classes['I'] = C_INFINITY;
+        classes['('] = C_OPEN_PARENTHESIS;
+        classes['{'] = C_OPEN_BRACE;
+        classes['['] = C_OPEN_BRACKET;
+        classes[')'] = C_CLOSE_PARENTHESIS;
+        classes['}'] = C_CLOSE_BRACE;
+        classes[']'] = C_CLOSE_BRACKET;
+        classes[':'] = C_GAP;
+        classes['@'] = C_NOW;
+        classes['.'] = C_ACCESS;
+    }
+
+    /**
+     * The text being scanned; only the section from {@link #origin} to {@link #end} is read.
+     */
+    public CharSequence text;
+    /**
+     * The start of the scanned section; {@code #!} only starts a line comment here, and only if {@link #atStart}.
+     */
+    public int origin;
+    /**
+     * The exclusive end of the scanned section.
+     */
+    public int end;
+    /**
+     * The position where the next call to {@link #scan()} will start looking.
+     */
+    public int position;
+    /**
+     * The kind of the current token, as one of the constants in this class, such as {@link #SYMBOL}.
+     */
+    public int kind;
+    /**
+     * The start (inclusive) and end (exclusive) of the current token in {@link #text}.
+     */
+    public int tokenStart, tokenEnd;
+    /**
+     * For strings and chars, the section between the delimiters; for hex and binary numbers, the digits after the
+     * prefix; for decimal numbers, the sign and digits without any type suffix. For other tokens, this is the same as
+     * the token itself.
+     */
+    public int innerStart, innerEnd;
+    /**
+     * 16 for hex numbers, 2 for binary numbers, 10 otherwise.
+     */
+    public int radix;
+    /**
+     * True if the current token is a number that starts with '-'.
+     */
+    public boolean negative;
+    /**
+     * True if {@link #end} is the end of all input. When this is false, more text may follow, and {@link #scan()}
+     * returns {@link #MORE} rather than end a token early at {@link #end}; see {@link TokenStream}.
+     */
+    public boolean complete = true;
+    /**
+     * True if {@link #origin} is the start of all input, rather than a point partway through a stream.
+     */
+    public boolean atStart = true;
+    /**
+     * Caches the Cels made for symbols and number literals, so repeated tokens share one Cel; may be set to null to
+     * allocate a new Cel for every token, or replaced with a larger or smaller Interner.
+     */
+    public Interner interner = new Interner();
+
+    private final Numbers numbers = new Numbers();
+    private boolean starved, inLineComment;
+
+    public Lexer() {
+        text = "";
+    }
+
+    public Lexer(CharSequence text) {
+        reset(text, 0, text.length());
+    }
+
+    public Lexer(CharSequence text, int start, int end) {
+        reset(text, start, end);
+    }
+
+    /**
+     * Prepares this Lexer to scan the given section of text, forgetting any earlier text.
+     * @param text the source to scan
+     * @param start the first index to scan, inclusive
+     * @param end the last index to scan, exclusive
+     * @return this, for chaining
+     */
+    public Lexer reset(CharSequence text, int start, int end) {
+        this.text = text;
+        origin = position = start;
+        this.end = end;
+        kind = END;
+        tokenStart = tokenEnd = innerStart = innerEnd = start;
+        complete = true;
+        atStart = true;
+        inLineComment = false;
+        return this;
+    }
+
+    /**
+     * Continues scanning in a new section of text, which must start with the text that was not yet consumed when
+     * {@link #scan()} returned {@link #MORE}. Unlike {@link #reset(CharSequence, int, int)}, this remembers whether
+     * scanning stopped inside a line comment; it does not change {@link #atStart}.
+     * @param text the source to scan, continuing from where scanning stopped
+     * @param start the first index to scan, inclusive
+     * @param end the last index to scan, exclusive
+     * @param complete true if end is the end of all input, false if more may follow
+     * @return this, for chaining
+     */
+    public Lexer resume(CharSequence text, int start, int end, boolean complete) {
+        this.text = text;
+        origin = position = start;
+        this.end = end;
+        this.complete = complete;
+        return this;
+    }
+
+    /**
+     * Scans all of the given section of text and appends a Cel for each token to {@code tokens}, the same way
+     * {@link Manager#tokenize(CharSequence, int, int)} does, including merging {@code (} and {@code )} into
+     * {@link Cel#empty}.
+     * @param text the source to scan
+     * @param start the first index to scan, inclusive
+     * @param end the last index to scan, exclusive
+     * @param tokens a List that will have Cels appended to it
+     */
+    public void tokenize(CharSequence text, int start, int end, List<Cel> tokens) {
+        reset(text, start, end);
+        while (scan() != END) {
+            add(tokens);
+        }
+    }
+
+    /**
+     * Appends a Cel for the current token to tokens, or replaces the last Cel with {@link Cel#empty} if it is
+     * {@code (} and the current token is {@code )}.
+     * @param tokens a List of Cels, usually being filled by this Lexer
+     */
+    public void add(List<Cel> tokens) {
+        if (kind == CLOSE_PARENTHESIS && !tokens.isEmpty()
+                && Syntax.OPEN_PARENTHESIS.equals(tokens.get(tokens.size() - 1).ref))
+            tokens.set(tokens.size() - 1, Cel.empty);
+        else
+            tokens.add(cel());
+    }
+
+    /**
+     * Scans all of the given section of text into a TokenBuffer, replacing what it held before. This produces the same
+     * tokens as {@link #tokenize(CharSequence, int, int, List)}, but only stores their kinds, positions, values, and
+     * symbol ids, without creating any Cels; {@code (} followed by {@code )} becomes one token of kind {@link #EMPTY}.
+     * @param text the source to scan
+     * @param start the first index to scan, inclusive
+     * @param end the last index to scan, exclusive
+     * @param tokens a TokenBuffer that will be cleared and then filled
+     */
+    public void tokenize(CharSequence text, int start, int end, TokenBuffer tokens) {
+        reset(text, start, end);
+        tokens.clear(text);
+        while (scan() != END) {
+            add(tokens);
+        }
+    }
+
+    /**
+     * Appends the current token to tokens, which must have the same text as this Lexer, or changes the last token to
+     * {@link #EMPTY} if it is {@code (} and the current token is {@code )}.
+     * @param tokens a TokenBuffer, usually being filled by this Lexer
+     */
+    public void add(TokenBuffer tokens) {
+        final int last = tokens.size - 1;
+        switch (kind) {
+            case CLOSE_PARENTHESIS:
+                if (last >= 0 && tokens.kinds[last] == OPEN_PARENTHESIS) {
+                    tokens.kinds[last] = EMPTY;
+                    tokens.ends[last] = tokenEnd;
+                } else
+                    tokens.add(kind, tokenStart, tokenEnd, 0L, -1);
+                break;
+            case CHAR:
+                tokens.add(kind, tokenStart, tokenEnd, charValue(), -1);
+                break;
+            case FLOAT:
+                tokens.add(kind, tokenStart, innerEnd, Double.doubleToRawLongBits(floatValue()), -1);
+                break;
+            case DOUBLE:
+                tokens.add(kind, tokenStart, innerEnd, Double.doubleToRawLongBits(doubleValue()), -1);
+                break;
+            case LONG:
+                tokens.add(kind, tokenStart, innerEnd, longValue(), -1);
+                break;
+            case INT:
+                tokens.add(kind, tokenStart, innerEnd, intValue(), -1);
+                break;
+            case SYMBOL:
+                tokens.add(kind, tokenStart, tokenEnd, 0L, tokens.symbols.id(text, tokenStart, tokenEnd));
+                break;
+            default:
+                tokens.add(kind, tokenStart, tokenEnd, 0L, -1);
+        }
+    }
+
+    /**
+     * True if the last call to {@link #scan()} reached {@link #end} with nothing left over: it returned {@link #END},
+     * or it returned {@link #MORE} only because more text might follow, not because a token or line comment runs up
+     * to end. When this is true, the text after end can be scanned as a separate section, with the same results as
+     * scanning everything at once; see {@link ParallelTokenizer}.
+     * @return true if scanning can stop at end without cutting into a token or comment
+     */
+    public boolean endsCleanly() {
+        return (kind == END || kind == MORE) && position == end && !inLineComment;
+    }
+
+    /**
+     * The char at index i, or -1 if i is outside the scanned section.
+     */
+    private int at(int i) {
+        if (i < end)
+            return i >= origin ? text.charAt(i) : -1;
+        starved |= !complete;
+        return -1;
+    }
+
+    private static int flagsOf(int c) {
+        if (c < 0)
+            return 0;
+        if (c < 128)
+            return flags[c];
+        if (Character.isWhitespace(c))
+            return (c == '\u0085' || c == '\u2028' || c == '\u2029') ? F_STOP | F_VERTICAL : F_STOP;
+        return Character.isLetterOrDigit(c) ? F_WORD : 0;
+    }
+
+    private static boolean isSpace(int c) {
+        return c < 128 ? classes[c] == C_SKIP && c != ',' : Character.isWhitespace(c);
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isHex(int c) {
+        return c >= 0 && c < 128 && (flags[c] & F_HEX) != 0;
+    }
+
+    /**
+     * Like the regex {@code \b}; true if the chars on either side of the gap before index i differ in being word chars.
+     */
+    private boolean boundary(int i) {
+        return ((flagsOf(at(i - 1)) ^ flagsOf(at(i))) & F_WORD) != 0;
+    }
+
+    /**
+     * Finds the next token, skipping whitespace, commas, and comments, and records it in {@link #kind},
+     * {@link #tokenStart}, {@link #tokenEnd}, and the other fields that describe the current token.
+     * @return the kind of the token found, {@link #END} if the section has been completely scanned, or {@link #MORE}
+     * if {@link #complete} is false and more text is needed
+     */
+    public int scan() {
+        int i = position, c, cls;
+        if (inLineComment) {
+            while (i < end && (flagsOf(text.charAt(i)) & F_VERTICAL) == 0)
+                ++i;
+            if (i == end && !complete) {
+                position = i;
+                return kind = MORE;
+            }
+            inLineComment = false;
+        }
+        while (i < end) {
+            c = text.charAt(i);
+            cls = c < 128 ? classes[c] : Character.isWhitespace(c) ? C_SKIP : C_SYMBOL;
+            if (cls == C_SKIP) {
+                ++i;
+                continue;
+            }
+            starved = false;
+            if (cls == C_SEMICOLON || (cls == C_HASH && i == origin && atStart && at(i + 1) == '!')) {
+                while (++i < end && (flagsOf(text.charAt(i)) & F_VERTICAL) == 0) ;
+                if (i == end && !complete) {
+                    inLineComment = true;
+                    position = i;
+                    return kind = MORE;
+                }
+                continue;
+            }
+            if (starved) {
+                position = i;
+                return kind = MORE;
+            }
+            if (cls == C_HASH && at(i + 1) == '#') {
+                int j = i + 2;
+                while (j < end && isSpace(text.charAt(j)))
+                    ++j;
+                starved |= j == end && !complete;
+                if (j < end && match(j) != END && !starved) {
+                    i = tokenEnd;
+                    continue;
+                }
+            }
+            if (match(i) == REMOVED && !starved) {
+                i = tokenEnd;
+                continue;
+            }
+            if (starved) {
+                position = i;
+                return kind = MORE;
+            }
+            position = tokenEnd;
+            return kind;
+        }
+        position = end;
+        tokenStart = tokenEnd = end;
+        return kind = complete ? END : MORE;
+    }
+
+    /**
+     * Tries each kind of token at index i, in the same order as the alternatives in {@link Manager#pattern}.
+     * @return the kind of the matched token, or END if nothing can start at i
+     */
+    private int match(final int i) {
+        final int c = text.charAt(i);
+        tokenStart = innerStart = i;
+        radix = 10;
+        negative = false;
+        switch (c < 128 ? classes[c] : Character.isWhitespace(c) ? C_SKIP : C_SYMBOL) {
+            case C_SKIP:
+                return kind = END;
+            case C_OPEN_PARENTHESIS:
+                return single(i, OPEN_PARENTHESIS);
+            case C_OPEN_BRACE:
+                return single(i, OPEN_BRACE);
+            case C_OPEN_BRACKET:
+                return single(i, OPEN_BRACKET);
+            case C_CLOSE_PARENTHESIS:
+                return single(i, CLOSE_PARENTHESIS);
+            case C_CLOSE_BRACE:
+                return single(i, CLOSE_BRACE);
+            case C_CLOSE_BRACKET:
+                return single(i, CLOSE_BRACKET);
+            case C_GAP:
+                return single(i, GAP);
+            case C_NOW:
+                return single(i, NOW);
+            case C_ACCESS:
+                return single(i, ACCESS);
+            case C_BACKTICK:
+                if (matchChar(i))
+                    return kind;
+                break;
+            case C_QUOTE:
+                if (matchString(i, c))
+                    return kind;
+                break;
+            case C_TILDE:
+                if (matchBlockComment(i))
+                    return kind;
+                break;
+            case C_SIGN:
+            case C_DIGIT:
+            case C_NAN:
+            case C_INFINITY:
+                if (matchNumber(i))
+                    return kind;
+                break;
+        }
+        int j = i + 1;
+        while (j < end && (flagsOf(text.charAt(j)) & F_STOP) == 0)
+            ++j;
+        starved |= j == end && !complete;
+        tokenEnd = innerEnd = j;
+        radix = 10;
+        negative = false;
+        return kind = SYMBOL;
+    }
+
+    private int single(int i, int k) {
+        tokenEnd = innerEnd = i + 1;
+        return kind = k;
+    }
+
+    private boolean matchChar(int i) {
+        int c = at(i + 1);
+        if (c < 0)
+            return false;
+        if (c != '\\') {
+            if (at(i + 2) != '`')
+                return false;
+            innerEnd = i + 2;
+        } else {
+            c = at(i + 2);
+            if ((c == 'u' || c == 'U') && isHex(at(i + 3)) && isHex(at(i + 4)) && isHex(at(i + 5))
+                    && isHex(at(i + 6)) && at(i + 7) == '`')
+                innerEnd = i + 7;
+            else if (c >= 0 && (flagsOf(c) & F_VERTICAL) == 0 && at(i + 3) == '`')
+                innerEnd = i + 3;
+            else
+                return false;
+        }
+        innerStart = i + 1;
+        tokenEnd = innerEnd + 1;
+        kind = CHAR;
+        return true;
+    }
+
+    private boolean matchString(int i, int quote) {
+        for (int j = i + 1; j < end; j++) {
+            if (text.charAt(j) == quote && text.charAt(j - 1) != '\\') {
+                innerStart = i + 1;
+                innerEnd = j;
+                tokenEnd = j + 1;
+                kind = STRING;
+                return true;
+            }
+        }
+        starved |= !complete;
+        return false;
+    }
+
+    private boolean matchBlockComment(int i) {
+        int j = i;
+        while (at(j) == '~')
+            ++j;
+        if (at(j) != '!')
+            return false;
+        final int tildes = j - i;
+        OUTER:
+        for (++j; j < end; j++) {
+            if (text.charAt(j) == '!') {
+                for (int t = 1; t <= tildes; t++) {
+                    if (at(j + t) != '~')
+                        continue OUTER;
+                }
+                tokenEnd = innerEnd = j + 1 + tildes;
+                kind = REMOVED;
+                return true;
+            }
+        }
+        starved |= !complete;
+        return false;
+    }
+
+    /**
+     * Index just past a valid exponent (like {@code e+12}, with e or p as the marker) starting at i, or -1.
+     * Leading zeros are not allowed in the exponent unless it is exactly 0.
+     */
+    private int exponentEnd(int i, char lower, char upper) {
+        int c = at(i);
+        if (c != lower && c != upper)
+            return -1;
+        c = at(++i);
+        if (c == '+' || c == '-')
+            c = at(++i);
+        if ((c >= '1' && c <= '9') || (c == '0' && !isDigit(at(i + 1)))) {
+            while (isDigit(at(++i))) ;
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Index just past a hex float like {@code 0x1.8p3} starting at i, or -1.
+     */
+    private int hexFloatEnd(int i) {
+        if (at(i) != '0' || (at(i + 1) | 32) != 'x')
+            return -1;
+        i += 2;
+        while (isHex(at(i)))
+            ++i;
+        if (at(i) != '.')
+            return -1;
+        int fraction = ++i;
+        while (isHex(at(i)))
+            ++i;
+        if (i == fraction)
+            return -1;
+        return exponentEnd(i, 'p', 'P');
+    }
+
+    private boolean matches(int i, String word) {
+        final int len = word.length();
+        if (i + len > end) {
+            starved |= !complete;
+            return false;
+        }
+        for (int j = 0; j < len; j++) {
+            if (text.charAt(i + j) != word.charAt(j))
+                return false;
+        }
+        return true;
+    }
+
+    private boolean isSuffix(int i, char lower) {
+        return (at(i) | 32) == lower;
+    }
+
+    private boolean number(int kind, int valueEnd, int tokenEnd) {
+        this.kind = kind;
+        this.tokenEnd = tokenEnd;
+        if (radix == 10) {
+            innerStart = tokenStart;
+            innerEnd = valueEnd;
+        }
+        return true;
+    }
+
+    /**
+     * Tries, in order, the float, double, long, and int alternatives of {@link Manager#pattern} at index i, following
+     * the regex's backtracking where it can change the result. One case where it does: {@code 1.5x} is the double
+     * {@code 1.} followed by the symbol {@code 5x}, because {@code \b} holds between {@code .} and {@code 5}.
+     */
+    private boolean matchNumber(final int i) {
+        int body = i, c = text.charAt(i), e;
+        if (c == '+' || c == '-') {
+            negative = c == '-';
+            c = at(++body);
+        }
+        // named floating-point values, hex floats, and decimal floats with a '.'
+        int named = matches(body, "NaN") ? body + 3 : matches(body, "Infinity") ? body + 8 : -1;
+        int decimal = -1, fraction = -1, greedy = -1, exponent = -1;
+        if (named < 0 && isDigit(c)) {
+            int j = body;
+            while (isDigit(at(j)))
+                ++j;
+            if (at(j) == '.') {
+                decimal = j;
+                fraction = ++j;
+                while (isDigit(at(j)))
+                    ++j;
+                greedy = j;
+                exponent = exponentEnd(j, 'e', 'E');
+            }
+        }
+        int hex = named < 0 && decimal < 0 ? hexFloatEnd(body) : -1;
+        // float, which requires the f suffix
+        if (named >= 0)
+            e = named;
+        else if (hex >= 0)
+            e = hex;
+        else if (exponent >= 0 && isSuffix(exponent, 'f'))
+            e = exponent;
+        else
+            e = greedy;
+        if (e >= 0 && isSuffix(e, 'f') && boundary(e + 1))
+            return number(FLOAT, e, e + 1);
+        // double, with an optional d suffix
+        if (named >= 0 || hex >= 0) {
+            e = named >= 0 ? named : hex;
+            if (isSuffix(e, 'd') && boundary(e + 1))
+                return number(DOUBLE, e, e + 1);
+            if (boundary(e))
+                return number(DOUBLE, e, e);
+        } else if (decimal >= 0) {
+            if (exponent >= 0) {
+                if (isSuffix(exponent, 'd') && boundary(exponent + 1))
+                    return number(DOUBLE, exponent, exponent + 1);
+                if (boundary(exponent))
+                    return number(DOUBLE, exponent, exponent);
+            }
+            if (isSuffix(greedy, 'd') && boundary(greedy + 1))
+                return number(DOUBLE, greedy, greedy + 1);
+            if (boundary(greedy))
+                return number(DOUBLE, greedy, greedy);
+            if (greedy > fraction)
+                return number(DOUBLE, fraction, fraction);
+        }
+        if (!isDigit(c))
+            return false;
+        // long and int, which share the same three forms
+        int j = body, limit;
+        if (c == '0' && (at(body + 1) | 32) == 'x') {
+            radix = 16;
+            j = body + 2;
+            limit = j + 16;
+            while (j < limit && isHex(at(j)))
+                ++j;
+        } else if (c == '0' && (at(body + 1) | 32) == 'b') {
+            radix = 2;
+            j = body + 2;
+            limit = j + 64;
+            while (j < limit && (at(j) == '0' || at(j) == '1'))
+                ++j;
+        } else {
+            while (isDigit(at(j)))
+                ++j;
+        }
+        if (radix != 10) {
+            innerStart = body + 2;
+            innerEnd = j;
+            if (j == innerStart) {
+                radix = 10;
+                return false;
+            }
+        }
+        if (isSuffix(j, 'l') && boundary(j + 1))
+            return number(LONG, j, j + 1);
+        if (boundary(j))
+            return number(INT, j, j);
+        radix = 10;
+        return false;
+    }
+
+    /**
+     * Creates a Cel for the current token, using the same titles and values that {@link Manager#pattern} produces;
+     * for numbers, the title leaves off any type suffix, so {@code 10L} has the title {@code 10}.
+     * Escape sequences that have a constant in Cel, like {@link Cel#newline}, return that constant. This does not
+     * handle the merging of {@code (} and {@code )} into {@link Cel#empty}; that depends on the previous token.
+     * <br>
+     * Decimal int literals from -128 to 1023 use the shared Cels in {@link Cel#smallInts}, and other symbols and
+     * numbers are looked up in {@link #interner} if it isn't null, so a Cel returned here may be shared by many tokens
+     * and must not be modified.
+     * @return a Cel for the current token, or null if there is no current token
+     */
+    public Cel cel() {
+        if (kind < FLOAT || kind > SYMBOL)
+            return create();
+        if (kind == INT && radix == 10 && innerEnd - tokenStart <= 4) {
+            int v = StringKit.intFromDec(text, tokenStart, innerEnd);
+            if (v >= -128 && v < 1024 && innerEnd - tokenStart == Cel.smallInts[v + 128].title.length())
+                return Cel.smallInts[v + 128];
+        }
+        if (interner == null)
+            return create();
+        Cel c = interner.get(kind, text, tokenStart, innerEnd);
+        return c != null ? c : interner.put(kind, create());
+    }
+
+    private Cel create() {
+        switch (kind) {
+            case OPEN_PARENTHESIS:
+                return Cel.openParenthesis;
+            case OPEN_BRACE:
+                return Cel.openBrace;
+            case OPEN_BRACKET:
+                return Cel.openBracket;
+            case CLOSE_PARENTHESIS:
+                return Cel.closeParenthesis;
+            case CLOSE_BRACE:
+                return Cel.closeBrace;
+            case CLOSE_BRACKET:
+                return Cel.closeBracket;
+            case GAP:
+                return Cel.gap;
+            case NOW:
+                return Cel.now;
+            case ACCESS:
+                return Cel.access;
+            case STRING:
+                return new Cel(text.subSequence(tokenStart, tokenEnd).toString(),
+                        text.subSequence(innerStart, innerEnd).toString());
+            case CHAR: {
+                Cel escape = (innerEnd - innerStart == 2) ? escape(text.charAt(innerStart + 1)) : null;
+                return escape != null ? escape : new Cel(text.subSequence(tokenStart, tokenEnd).toString(), charValue());
+            }
+            case FLOAT:
+                return new Cel(text.subSequence(tokenStart, innerEnd).toString(), floatValue());
+            case DOUBLE:
+                return new Cel(text.subSequence(tokenStart, innerEnd).toString(), doubleValue());
+            case LONG:
+                return new Cel(text.subSequence(tokenStart, innerEnd).toString(), longValue());
+            case INT:
+                return new Cel(text.subSequence(tokenStart, innerEnd).toString(), intValue());
+            case SYMBOL:
+                return new Cel(text.subSequence(tokenStart, tokenEnd).toString(), Syntax.SYMBOL);
+        }
+        return null;
+    }
+
+    /**
+     * Gets the shared Cel for a char literal written as a backslash followed by the given char, such as
+     * {@link Cel#newline} for {@code `\n`}.
+     * @param escaped the char after the backslash
+     * @return one of the char constants in Cel, or null if the escape doesn't have one
+     */
+    static Cel escape(char escaped) {
+        switch (escaped) {
+            case '\\': return Cel.backslash;
+            case 'r': return Cel.carriageReturn;
+            case 'n': return Cel.newline;
+            case 't': return Cel.tab;
+            case '"': return Cel.doubleQuote;
+            case '\'': return Cel.singleQuote;
+            case 'b': return Cel.backspace;
+            case 'f': return Cel.formfeed;
+            case '`': return Cel.backtick;
+            case '0': return Cel.nul;
+            default: return null;
+        }
+    }
+
+    /**
+     * The value of the current token if it is a {@link #CHAR}; escapes other than Unicode escapes produce the char
+     * after the backslash, as in {@link Manager#pattern}, so {@code `\n`} is {@code 'n'} here (see {@link #cel()}).
+     */
+    public char charValue() {
+        switch (innerEnd - innerStart) {
+            case 1:
+                return text.charAt(innerStart);
+            case 2:
+                return text.charAt(innerStart + 1);
+            default:
+                return (char) StringKit.intFromHex(text, innerStart + 2, innerStart + 6);
+        }
+    }
+
+    /**
+     * The value of the current token if it is an {@link #INT}.
+     */
+    public int intValue() {
+        if (radix == 16)
+            return negative
+                    ? -StringKit.intFromHex(text, innerStart, innerEnd)
+                    : StringKit.intFromHex(text, innerStart, innerEnd);
+        if (radix == 2)
+            return negative
+                    ? -StringKit.intFromBin(text, innerStart, innerEnd)
+                    : StringKit.intFromBin(text, innerStart, innerEnd);
+        return StringKit.intFromDec(text, tokenStart, innerEnd);
+    }
+
+    /**
+     * The value of the current token if it is a {@link #LONG}.
+     */
+    public long longValue() {
+        if (radix == 16)
+            return negative
+                    ? -StringKit.longFromHex(text, innerStart, innerEnd)
+                    : StringKit.longFromHex(text, innerStart, innerEnd);
+        if (radix == 2)
+            return negative
+                    ? -StringKit.longFromBin(text, innerStart, innerEnd)
+                    : StringKit.longFromBin(text, innerStart, innerEnd);
+        return StringKit.longFromDec(text, tokenStart, innerEnd);
+    }
+
+    /**
+     * The value of the current token if it is a {@link #FLOAT}.
+     */
+    public float floatValue() {
+        return numbers.parseFloat(text, tokenStart, innerEnd);
+    }
+
+    /**
+     * The value of the current token if it is a {@link #DOUBLE}.
+     */
+    public double doubleValue() {
+        return numbers.parseDouble(text, tokenStart, innerEnd);
+    }
+}
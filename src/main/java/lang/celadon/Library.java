@@ -0,0 +1,104 @@
+package lang.celadon;
+
+/**
+ * A frozen set of bindings that any number of {@link Manager}s can share as their base environment. A Manager reads
+ * symbols from its Library when it has no binding of its own for them, and anything it learns goes into the Manager
+ * alone, shadowing the Library; nothing is ever copied from the Library into the Manager, so making a Manager costs the
+ * same however big its Library is. A Library never changes after it is made, so it can be shared between threads.
+ * <br>
+ * {@link #standard} has the standard operators and functions, and is what {@link Manager#Manager()} uses. Other
+ * Libraries can be made by setting up a Manager the way every Manager should start out, then passing it to
+ * {@link #Library(Manager)}.
+ */
+public final class Library {
+    /**
+     * A Library with no bindings.
+     */
+    public static final Library empty = new Library(new String[0], new Object[0]);
+
+    /**
+     * The standard operators {@code + - * / %} and functions {@code sin cos tan}, as in {@link Core}.
+     */
+    public static final Library standard = new Library(
+            new String[]{"+", "-", "*", "/", "%", "sin", "cos", "tan"},
+            new Object[]{Core.plus, Core.minus, Core.times, Core.divide, Core.modulo, Core.sin, Core.cos, Core.tan});
+
+    // each Manager's SymbolTable and OperatorTable use these as parents, so they must not change after construction
+    final SymbolTable symbols;
+    final OperatorTable operators;
+    private final Cel[] bindings;
+
+    /**
+     * Makes a Library binding each name to the value at the same index; if a name appears more than once, the last
+     * value is used. Operators get their own precedence. No value can be {@link Syntax#SYMBOL}, since that would bind
+     * a name to itself.
+     * @param names the names to bind
+     * @param values the values for those names; must be at least as long as names
+     */
+    public Library(String[] names, Object[] values) {
+        symbols = new SymbolTable(names.length);
+        operators = new OperatorTable(names.length);
+        bindings = new Cel[names.length];
+        for (int i = 0; i < names.length; i++) {
+            if (values[i] == Syntax.SYMBOL)
+                throw new IllegalArgumentException("The name " + names[i] + " can't be bound to itself");
+            int id = symbols.id(names[i]);
+            bindings[id] = new Cel(names[i], values[i]);
+            if (values[i] instanceof Operator)
+                operators.add((Operator) values[i]);
+        }
+    }
+
+    /**
+     * Makes a Library from what is bound in manager now, including what it gets from its own Library, and with the
+     * operator precedences manager uses. Later changes to manager don't affect the Library.
+     * @param manager a Manager set up with the bindings every Manager using this Library should start with
+     */
+    public Library(Manager manager) {
+        final Library base = manager.library;
+        final int baseSize = base.symbols.size();
+        symbols = new SymbolTable(baseSize + manager.size());
+        for (int id = 0; id < baseSize; id++) {
+            symbols.id(base.symbols.name(id));
+        }
+        for (String name : manager.keySet()) {
+            symbols.id(name);
+        }
+        bindings = new Cel[symbols.size()];
+        for (int id = 0; id < bindings.length; id++) {
+            bindings[id] = manager.get(symbols.name(id));
+        }
+        operators = new OperatorTable(symbols.size());
+        operators.putAll(manager.operators);
+    }
+
+    /**
+     * @param name a symbol name
+     * @return the Cel bound to name in this Library, or null if it is unbound
+     */
+    public Cel get(String name) {
+        int id = symbols.find(name);
+        return id < 0 ? null : bindings[id];
+    }
+
+    /**
+     * @param id a symbol id from a SymbolTable made on top of this Library's, as each Manager's {@link Manager#symbols}
+     *           is for its Library
+     * @return the Cel bound to that symbol in this Library, or null if it is unbound
+     */
+    public Cel binding(int id) {
+        return id >= 0 && id < bindings.length ? bindings[id] : null;
+    }
+
+    /**
+     * @return how many names this Library binds
+     */
+    public int size() {
+        int n = 0;
+        for (int i = 0; i < bindings.length; i++) {
+            if (bindings[i] != null)
+                n++;
+        }
+        return n;
+    }
+}
@@ -6,8 +6,18 @@ import regexodus.Matcher;
 import regexodus.Pattern;
 import squidpony.StringKit;
 
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.SortedSet;
 
 /**
  * The main class that handles script execution, including how symbols are associated to values, how parameters go to
@@ -28,15 +38,112 @@ public class Manager extends StackMap<String, Cel> {
      * Shunting-yard operator stack.
      */
     public ArrayDeque<Cel> operations = new ArrayDeque<>(128);
+    /**
+     * If true (the default), {@link #evaluate()} applies {@link Arithmetic} operators to primitive numbers without
+     * boxing intermediate results; the results are the same either way.
+     */
+    public boolean primitiveArithmetic = true;
+
+    /**
+     * If true (the default), {@link #compile(CharSequence)} folds constant subexpressions, using the {@link Pure}
+     * Procedurals bound when it is called.
+     */
+    public boolean foldConstants = true;
+
+    /**
+     * If true (the default), {@link #compile(CharSequence)} joins chains of the same {@link Variadic} operator, such as
+     * {@code a + b + c + d}, so {@link #evaluate()} runs each chain as one call.
+     */
+    public boolean flattenChains = true;
+
+    /**
+     * Thresholds and counters for {@link #compileTiered(CharSequence)}; may be shared with other Managers.
+     */
+    public Tiering tiering = new Tiering();
+
+    // true while this Manager is idle in a ManagerPool; only read or written while holding that pool's lock
+    boolean pooled;
+
+    /**
+     * Lets scripts call methods on bound objects that aren't {@link Methodical}, as {@code receiver.method argument};
+     * null (the default) means they can't. {@link JavaInterop#LINKER} calls the public methods of plain Java objects,
+     * so only bind objects that scripts may call any public method on if this is set to that.
+     */
+    public CallSite.Linker linker;
+
+    // the operand stack for evaluate(); each slot holds a Cel, a long, or a double, as its kind says
+    private static final byte CEL_OPERAND = 0, LONG_OPERAND = 1, DOUBLE_OPERAND = 2;
+    private Cel[] operands = new Cel[256];
+    private byte[] operandKinds = new byte[256];
+    private long[] longOperands = new long[256];
+    private double[] doubleOperands = new double[256];
+
+    // where the nodes of a running Tree leave their results, depending on which kind of result they return
+    Cel celResult;
+    long longResult;
+    double doubleResult;
+    // the operands of each Tree.Chain that is running, and the symbols each running Tree resolved before it started,
+    // with the innermost ones last; symbolBase is where the innermost Tree's symbols start
+    Cel[] arguments = new Cel[16];
+    int argumentCount, symbolBase;
 
     /**
      * Direct-from-source-code Cel tokens, before shunting-yard rearrangement.
      */
     public ArrayList<Cel> tokens;
 
+    /**
+     * Makes a Manager that starts with the standard operators and functions from {@link Library#standard}.
+     */
     public Manager() {
+        this(Library.standard);
+    }
+
+    /**
+     * Makes a Manager that starts with the bindings in library, without copying them; see {@link #library}.
+     * @param library the shared bindings this Manager starts with, such as {@link Library#standard}
+     */
+    public Manager(Library library) {
         super();
-        standardLib();
+        this.library = library;
+        symbols = new SymbolTable(library.symbols);
+        operators = new OperatorTable(library.operators);
+    }
+
+    /**
+     * Gets this Manager ready to run more code, as for a new request, while keeping every binding: empties
+     * {@link #exchange}, {@link #items}, {@link #operations}, and {@link #tokens}, and drops anything left on the
+     * operand stack by an {@link #evaluate()} that threw. Each buffer keeps the capacity it has grown to, so a Manager
+     * that is reset and reused allocates much less than a new one. {@link ManagerPool} calls this on each Manager given
+     * back to it.
+     */
+    public void reset()
+    {
+        exchange.clear();
+        items.clear();
+        operations.clear();
+        if(tokens != null)
+            tokens.clear();
+        Arrays.fill(operands, null);
+        Arrays.fill(arguments, null);
+        argumentCount = symbolBase = 0;
+        celResult = null;
+        accessing = false;
+    }
+
+    /**
+     * Puts the public settings that change how code runs back to what a new Manager has: no {@link #linker}, a new
+     * {@link #tiering}, and {@link #primitiveArithmetic}, {@link #foldConstants}, and {@link #flattenChains} all true.
+     * Bindings are not changed. {@link ManagerPool} calls this on each Manager given back to it, so one borrower's
+     * settings, such as a linker that lets scripts call any public method, don't carry over to the next.
+     */
+    public void restoreSettings()
+    {
+        linker = null;
+        tiering = new Tiering();
+        primitiveArithmetic = true;
+        foldConstants = true;
+        flattenChains = true;
     }
 
     public static final Pattern pattern = Pattern.compile(
@@ -108,13 +215,125 @@ public class Manager extends StackMap<String, Cel> {
 //                    "|({=gap}[:])" +
 //                    "|({=contents}[^,\\[\\]\\(\\)\\{\\}\\:\\s]+)"
 //    );
-    public static final Matcher m = pattern.matcher();
+    /**
+     * Matches {@link #pattern} for {@link #tokenizeRegex(CharSequence, int, int)}; each Manager has its own, so
+     * different Managers can tokenize on different threads at the same time.
+     */
+    public final Matcher m = pattern.matcher();
+
+    /**
+     * Scans source code for {@link #tokenize(CharSequence, int, int)}; like {@link #m}, this belongs to one Manager.
+     */
+    public final Lexer lexer = new Lexer();
+
+    /**
+     * The shared, unchanging bindings under this Manager's own. {@link #get(Object)}, {@link #resolve(String)}, and
+     * {@link #binding(int)} look here for any name this Manager doesn't bind itself; learning or putting a name binds it
+     * in this Manager only, shadowing the library, and removing it shows the library's binding again. Methods that
+     * only see this Manager's own entries, such as {@link #containsKey(Object)}, {@link #size()}, and iteration, don't
+     * include the library, and {@link #clear()} leaves it in place.
+     */
+    public final Library library;
+
+    /**
+     * Gives ids to the symbols in any {@link TokenBuffer} this Manager works with, and to every name bound in this
+     * Manager, so bindings can be looked up by id with {@link #binding(int)}. Names from {@link #library} keep the ids
+     * they have there.
+     */
+    public final SymbolTable symbols;
+
+    /**
+     * The operators bound in this Manager and their precedences, used when shunting. Each {@link Operator} is added
+     * with its own precedence when it is first bound; change an entry here to give an operator a different precedence
+     * in this Manager only. Operators from {@link #library} are found in its table, which this one is on top of.
+     */
+    public final OperatorTable operators;
+
+    // this Manager's own current binding for each symbol id, or null; kept in step with the map by track(), which
+    // every method that changes a binding calls, and by clear()
+    private Cel[] bindings = new Cel[64];
+    // the most symbols resolve(int) follows, and the longest chain checkCycle() allows, in case a cycle gets past it
+    private static final int MAX_STEPS = 256;
+
+    // changes whenever any binding does; see version()
+    private int version = 1;
+
+    // for each symbol id bound to another symbol, the id that chain of symbols last ended at, and that id's stamp then;
+    // an entry whose stamp differs from stamps[id] is stale
+    private int[] resolvedIds = new int[64];
+    private int[] resolvedStamps = new int[64];
+    // for each symbol id, a stamp (never 0) that moves on whenever a change could make its chain of symbols end
+    // somewhere else; that is, when its binding changes to or from another symbol, or a binding on its chain does
+    private int[] stamps = filled(64);
+    // for each symbol id, the ids whose cached chains go through it, and how many there are
+    private int[][] dependents = new int[64][];
+    private int[] dependentCounts = new int[64];
+    // how many times resolve(int) has followed a chain instead of using its cache; checked by tests
+    int walks;
+
+    // true when the last token given to shunt(Cel) was ACCESS, which may start a method call
+    private boolean accessing;
+
+    // the operator stack for shunt(TokenBuffer, TokenBuffer), as rows and their precedences
+    private int[] pendingRows = new int[64], pendingPrecedences = new int[64];
 
     public void tokenize(CharSequence text)
     {
         tokenize(text, 0, text.length());
     }
+
+    /**
+     * Reads the given section of text into {@link #tokens} using {@link #lexer}, which scans each char once without
+     * using a regex. This produces the same tokens as {@link #tokenizeRegex(CharSequence, int, int)}, only faster.
+     * @param text the source code to read
+     * @param start the first index to read, inclusive
+     * @param end the last index to read, exclusive
+     */
     public void tokenize(CharSequence text, int start, int end)
+    {
+        int len;
+        if(text == null || (len = text.length()) == 0) {
+            tokens = new ArrayList<>(0);
+            return;
+        }
+        tokens = new ArrayList<>(32 + len >>> 2);
+        lexer.tokenize(text, start, end, tokens);
+    }
+
+    /**
+     * Reads the given section of text into a TokenBuffer using {@link #lexer}, without creating any Cels; the buffer
+     * should use this Manager's {@link #symbols}, as one made by {@link #newBuffer()} does.
+     * @param text the source code to read
+     * @param start the first index to read, inclusive
+     * @param end the last index to read, exclusive
+     * @param tokens a TokenBuffer that will be cleared and then filled
+     */
+    public void tokenize(CharSequence text, int start, int end, TokenBuffer tokens)
+    {
+        lexer.tokenize(text, start, end, tokens);
+    }
+
+    /**
+     * @return a new, empty TokenBuffer that shares this Manager's {@link #symbols}
+     */
+    public TokenBuffer newBuffer()
+    {
+        return new TokenBuffer(symbols);
+    }
+
+    public void tokenizeRegex(CharSequence text)
+    {
+        tokenizeRegex(text, 0, text.length());
+    }
+
+    /**
+     * Reads the given section of text into {@link #tokens} using {@link #pattern}. This is the reference that
+     * {@link #tokenize(CharSequence, int, int)} should match; it is slower, but easier to check against the grammar.
+     * @param text the source code to read
+     * @param start the first index to read, inclusive
+     * @param end the last index to read, exclusive
+     */
+    public void tokenizeRegex(CharSequence text, int start, int end)
     {
         int len;
         if(text == null || (len = text.length()) == 0) {
@@ -132,7 +351,7 @@ public class Manager extends StackMap<String, Cel> {
             if (mr.isCaptured("close")) {
                 if (mr.isCaptured("parenthesis"))
                 {
-                    if(tokens.get(tokens.size() - 1).equals(Cel.openParenthesis))
+                    if(!tokens.isEmpty() && tokens.get(tokens.size() - 1).equals(Cel.openParenthesis))
                         tokens.set(tokens.size() - 1,Cel.empty);
                     else
                         tokens.add(Cel.closeParenthesis);
@@ -261,94 +480,484 @@ public class Manager extends StackMap<String, Cel> {
     {
         if(item == null || item.ref == null)
             return Cel.nothing;
-        if(Syntax.SYMBOL.equals(item.ref)) {
-            Object o;
-            for (int i = 0; i < 256; i++) { // hard-code 256 max indirections to avoid cycles
-                o = get(item.title);
-                if (o == null)
-                    return null;
-                if (o instanceof Cel)
-                    item = ((Cel) o); // move current item to what it references
-                if(!Syntax.SYMBOL.equals(item.ref))
-                    return item;
-            }
-        }
+        if(Syntax.SYMBOL.equals(item.ref))
+            return resolve(item.title);
         return item;
     }
 
+    /**
+     * Looks up what the symbol with the given name refers to, following symbols that refer to other symbols; a chain
+     * of such symbols is only followed again after a binding changes, as with {@link #resolve(int)}.
+     * @param name the name of a symbol
+     * @return the Cel the symbol refers to, or null if it is unbound
+     */
+    public Cel resolve(String name)
+    {
+        final Cel item = get(name);
+        if(item == null || !Syntax.SYMBOL.equals(item.ref))
+            return item;
+        return resolve(symbols.id(name));
+    }
+
+    /**
+     * Runs the shunting-yard algorithm on all of {@link #tokens}, appending the result to {@link #items} in reverse
+     * Polish notation. A symbol right after {@link Syntax#ACCESS} is a method name, not looked up; the two become a
+     * {@link CallSite}, an operator that binds more tightly than any other, taking the receiver on its left and the
+     * argument on its right.
+     */
     public void shunt()
     {
         int len = tokens.size();
         if(len <= 0)
             return;
-        Cel current, topOperator = null;
-        Object item;
-        String title;
         for (int i = 0; i < len; i++) {
-            current = resolve(tokens.get(i));
-            if(current == null)
-                continue;
-            item = current.ref;
-            //title = (current == null) ? null : current.title;
-            if(item != null && Operator.registry.contains(item))
+            shunt(tokens.get(i));
+        }
+        endShunt();
+    }
+
+    /**
+     * Runs one step of the shunting-yard algorithm, for a single token; this lets tokens be handed over as they are
+     * read, as {@link TokenStream#shunt(Manager)} does, instead of tokenizing everything first. Call
+     * {@link #endShunt()} after the last token.
+     * @param token the next token, as produced by the tokenizer
+     */
+    public void shunt(Cel token)
+    {
+        if(accessing)
+        {
+            accessing = false;
+            if(token != null && Syntax.SYMBOL.equals(token.ref))
             {
-                Operator operator = (Operator)item;
-                topOperator = operations.peekFirst();
-                while (topOperator != null && (topOperator.ref instanceof Operator) && ((Operator)topOperator.ref).precedence > operator.precedence) {
+                Cel topOperator = operations.peekFirst();
+                while (topOperator != null && precedence(topOperator.ref) == CallSite.PRECEDENCE) {
                     items.add(topOperator);
                     operations.pollFirst();
                     topOperator = operations.peekFirst();
                 }
+                operations.addFirst(new Cel("." + token.title, new CallSite(token.title)));
+                return;
+            }
+            items.add(Cel.access);
+        }
+        if(token != null && Syntax.ACCESS.equals(token.ref))
+        {
+            accessing = true;
+            return;
+        }
+        Cel current = resolve(token), topOperator;
+        if(current == null)
+            return;
+        Object item = current.ref;
+        final int precedence = operators.precedence(item);
+        if(precedence != OperatorTable.NONE)
+        {
+            topOperator = operations.peekFirst();
+            while (topOperator != null && precedence(topOperator.ref) > precedence) {
+                items.add(topOperator);
+                operations.pollFirst();
+                topOperator = operations.peekFirst();
+            }
 
-                operations.addFirst(current);
+            operations.addFirst(current);
+        }
+        else if(Syntax.OPEN_PARENTHESIS.equals(item))
+        {
+            operations.addFirst(current);
+        }
+        else if(Syntax.CLOSE_PARENTHESIS.equals(item))
+        {
+            topOperator = operations.peekFirst();
+            while (topOperator != null && !Syntax.OPEN_PARENTHESIS.equals(topOperator.ref)) {
+                items.add(topOperator);
+                operations.pollFirst();
+                topOperator = operations.peekFirst();
             }
-            else if(Syntax.OPEN_PARENTHESIS.equals(item))
+            operations.pollFirst();
+        }
+        else
+        {
+            items.add(current);
+        }
+    }
+
+    /**
+     * Finishes the shunting-yard algorithm after the last call to {@link #shunt(Cel)}, moving any operators still
+     * waiting into {@link #items}.
+     */
+    public void endShunt()
+    {
+        if(accessing)
+        {
+            accessing = false;
+            items.add(Cel.access);
+        }
+        items.addAll(operations);
+        operations.clear();
+    }
+
+    /**
+     * Runs the shunting-yard algorithm on a TokenBuffer, the same way {@link #shunt()} does on {@link #tokens}, and
+     * appends the result in reverse Polish notation to out. Symbols are resolved to tell operators apart from other
+     * tokens and to drop unbound symbols, but they stay as symbol tokens in out; no Cels are created.
+     * @param tokens tokens from {@link Lexer#tokenize(CharSequence, int, int, TokenBuffer)}, using {@link #symbols}
+     * @param out a TokenBuffer with the same text and symbols as tokens, usually empty
+     */
+    public void shunt(TokenBuffer tokens, TokenBuffer out)
+    {
+        shunt(tokens, out, false);
+    }
+
+    /**
+     * The shunting-yard algorithm on TokenBuffers; if keepUnbound is true, unbound symbols are kept as operands
+     * instead of dropped, so they can be resolved later, as {@link Program} does.
+     */
+    private void shunt(TokenBuffer tokens, TokenBuffer out, boolean keepUnbound)
+    {
+        int top = 0, kind, precedence;
+        Object ref;
+        Cel current;
+        for (int i = 0; i < tokens.size; i++) {
+            kind = tokens.kinds[i];
+            ref = null;
+            if(kind == Lexer.SYMBOL)
             {
-                operations.addFirst(current);
+                if((current = resolve(tokens.ids[i])) != null)
+                    ref = current.ref;
+                else if(!keepUnbound)
+                    continue;
             }
-            else if(Syntax.CLOSE_PARENTHESIS.equals(item))
+            if(kind == Lexer.ACCESS && i + 1 < tokens.size && tokens.kinds[i + 1] == Lexer.SYMBOL)
             {
-                topOperator = operations.peekFirst();
-                while (topOperator != null && !Syntax.OPEN_PARENTHESIS.equals(topOperator.ref)) {
-                    items.add(topOperator);
-                    operations.pollFirst();
-                    topOperator = operations.peekFirst();
+                while (top > 0 && pendingPrecedences[top - 1] == CallSite.PRECEDENCE) {
+                    emit(tokens, out, pendingRows[--top]);
                 }
-                operations.pollFirst();
+                top = pend(top, i++, CallSite.PRECEDENCE);
+            }
+            else if((precedence = operators.precedence(ref)) != OperatorTable.NONE)
+            {
+                while (top > 0 && pendingPrecedences[top - 1] > precedence) {
+                    emit(tokens, out, pendingRows[--top]);
+                }
+                top = pend(top, i, precedence);
+            }
+            else if(kind == Lexer.OPEN_PARENTHESIS || Syntax.OPEN_PARENTHESIS.equals(ref))
+            {
+                top = pend(top, i, Integer.MIN_VALUE);
+            }
+            else if(kind == Lexer.CLOSE_PARENTHESIS || Syntax.CLOSE_PARENTHESIS.equals(ref))
+            {
+                while (top > 0 && pendingPrecedences[top - 1] != Integer.MIN_VALUE) {
+                    emit(tokens, out, pendingRows[--top]);
+                }
+                if(top > 0)
+                    --top;
             }
             else
             {
-                items.add(current);
+                out.add(tokens, i);
             }
         }
-        items.addAll(operations);
-        operations.clear();
+        while (top > 0) {
+            emit(tokens, out, pendingRows[--top]);
+        }
+    }
+
+    /**
+     * Appends a row from the operator stack of {@link #shunt(TokenBuffer, TokenBuffer)} to out; a method call, which is
+     * pended as its {@link Lexer#ACCESS} row, is appended as that row with the id of the name after it.
+     */
+    private static void emit(TokenBuffer tokens, TokenBuffer out, int row)
+    {
+        if(tokens.kinds[row] == Lexer.ACCESS)
+            out.add(Lexer.ACCESS, tokens.starts[row + 1], tokens.ends[row + 1], 0L, tokens.ids[row + 1]);
+        else
+            out.add(tokens, row);
+    }
+
+    // the precedence of an operator on the stack used by shunt(Cel), which may be a method call
+    private int precedence(Object ref)
+    {
+        return ref instanceof CallSite ? CallSite.PRECEDENCE : operators.precedence(ref);
+    }
+
+    /**
+     * Tokenizes and shunts the given source once, producing a {@link Program} that can be run many times with
+     * {@link Program#run(Manager)}. This does not change {@link #tokens} or {@link #items}. Symbols that are bound
+     * to operators now are treated as operators in the Program; other symbols, even unbound ones, are resolved each
+     * time the Program runs. If {@link #foldConstants} is true, subexpressions made only of literals and
+     * {@link Pure} Procedurals are worked out now, as {@link #fold()} does, and if {@link #flattenChains} is true,
+     * chains of the same {@link Variadic} operator are joined into one call.
+     * @param text the source code to compile
+     * @return a new, immutable Program
+     */
+    public Program compile(CharSequence text)
+    {
+        TokenBuffer tokens = newBuffer(), rpn = newBuffer();
+        lexer.tokenize(text, 0, text.length(), tokens);
+        rpn.clear(text);
+        shunt(tokens, rpn, true);
+        return new Program(rpn, this);
+    }
+
+    /**
+     * Compiles the given source as {@link #compile(CharSequence)} does, then builds a {@link Tree} from it, which runs
+     * the same code as a tree of nodes instead of with {@link #evaluate()}. If the code can't be made into a tree, the
+     * Tree just runs the Program.
+     * @param text the source code to compile
+     * @return a new, immutable Tree
+     */
+    public Tree compileTree(CharSequence text)
+    {
+        return new Tree(compile(text), this);
+    }
+
+    /**
+     * Compiles the given source as {@link #compile(CharSequence)} does, wrapped in a {@link TieredExpression} that
+     * starts out running the Program and moves to faster forms once it has run often enough, as set by
+     * {@link #tiering}. Use this for code that may run many times; results are the same at every tier.
+     * @param text the source code to compile
+     * @return a new TieredExpression
+     */
+    public TieredExpression compileTiered(CharSequence text)
+    {
+        return new TieredExpression(compile(text), tiering);
+    }
+
+    /**
+     * Folds constants in {@link #items}, which should be in reverse Polish notation, as from {@link #shunt()}: each
+     * {@link Pure} Procedural that would be run only on values that aren't symbols is run now, and it and its
+     * operands are replaced in items by the result. Calling {@link #evaluate()} afterwards gives the same results as
+     * without folding, only with less left to do. Procedurals that aren't Pure are never run here.
+     */
+    public void fold()
+    {
+        final int len = items.size();
+        final Cel[] code = items.toArray(new Cel[len]);
+        final int size = Folder.fold(this, code, null, len);
+        if(size < len)
+        {
+            items.clear();
+            for (int i = 0; i < size; i++) {
+                items.add(code[i]);
+            }
+        }
+    }
+
+    /**
+     * Pushes a row onto the operator stack used by {@link #shunt(TokenBuffer, TokenBuffer)}; parentheses are pushed
+     * with a precedence of {@link Integer#MIN_VALUE}, so no operator is ever moved past them.
+     * @return the new size of the stack
+     */
+    private int pend(int top, int row, int precedence)
+    {
+        if(top == pendingRows.length)
+        {
+            pendingRows = Arrays.copyOf(pendingRows, top << 1);
+            pendingPrecedences = Arrays.copyOf(pendingPrecedences, top << 1);
+        }
+        pendingRows[top] = row;
+        pendingPrecedences[top] = precedence;
+        return top + 1;
     }
-    
+
+    /**
+     * Appends a Cel for each token in rpn to {@link #items}, resolving symbols and skipping unbound ones, so that
+     * {@link #evaluate()} can run on output from {@link #shunt(TokenBuffer, TokenBuffer)}. This is where tokens from a
+     * TokenBuffer finally become Cels.
+     * @param rpn tokens in reverse Polish notation, using {@link #symbols}
+     */
+    public void load(TokenBuffer rpn)
+    {
+        Cel item;
+        for (int i = 0; i < rpn.size; i++) {
+            item = (rpn.kinds[i] == Lexer.SYMBOL) ? resolve(rpn.ids[i]) : rpn.cel(i);
+            if(item != null)
+                items.add(item);
+        }
+    }
+
+    /**
+     * Evaluates {@link #items}, which should be in reverse Polish notation, and appends whatever values remain to
+     * {@link #exchange}, in order. Afterwards, items holds only those remaining values. This walks items once, using
+     * an operand stack that is kept between calls, so it takes time linear in the number of items. A Procedural with
+     * fewer than two operands below it, or with a Procedural or close parenthesis two places below it, is run as a
+     * unary operator, with {@link Cel#empty} as its left operand.
+     * <br>
+     * If {@link #primitiveArithmetic} is true, an {@link Arithmetic} operator given numbers is applied to them as
+     * primitive longs or doubles, and its result stays primitive on the operand stack until something that isn't an
+     * Arithmetic needs it or it reaches exchange, so only those results are boxed into Cels.
+     * <br>
+     * An operator after a chain's count, as {@link #compile(CharSequence)} writes for chains of the same
+     * {@link Variadic} operator, runs once on that many operands from the top of the operand stack, with
+     * {@link Variadic#run(Cel[], int, int)}; an Arithmetic runs on them in primitives instead, if primitiveArithmetic
+     * is true, and an operator that isn't Variadic anymore runs on each pair in turn, from the right.
+     */
     public void evaluate()
     {
-        int len = items.size();
-        Cel item, left, right;
+        final int len = items.size();
+        if(operands.length < len)
+        {
+            final int size = Math.max(len, operands.length << 1);
+            operands = new Cel[size];
+            operandKinds = new byte[size];
+            longOperands = new long[size];
+            doubleOperands = new double[size];
+        }
+        final Cel[] stack = operands;
+        final byte[] kinds = operandKinds;
+        final long[] longs = longOperands;
+        final double[] doubles = doubleOperands;
+        int top = 0, a, b, kind, count = 0, chained;
+        Cel current, item, left;
+        Procedural p;
         for (int i = 0; i < len; i++) {
-            item = resolve(items.get(i));
+            current = items.get(i);
+            item = resolve(current);
+            if(item.ref instanceof Flattener.Count)
+            {
+                count = ((Flattener.Count) item.ref).count;
+                continue;
+            }
+            chained = count;
+            count = 0;
             if(item.ref instanceof Procedural)
             {
-                if(i < 2 || (left = resolve(items.get(i - 2))).ref instanceof Procedural || Syntax.CLOSE_PARENTHESIS.equals(left.ref))
+                p = (Procedural) item.ref;
+                b = top - 1;
+                if(chained > 1 && chained <= top)
+                {
+                    top = chain(p, top - chained, top);
+                }
+                else if(top < 2 || (kinds[a = top - 2] == CEL_OPERAND && ((left = resolve(stack[a])).ref instanceof Procedural
+                        || Syntax.CLOSE_PARENTHESIS.equals(left.ref))))
                 {
-                    item = ((Procedural) item.ref).run(Cel.empty, resolve(items.remove(--i)));
-                    items.set(i, item);
-                    --len;
+                    if(primitiveArithmetic && p instanceof Arithmetic && ((Arithmetic) p).hasUnary()
+                            && (kind = numericKind(b)) != CEL_OPERAND)
+                    {
+                        if(kind == DOUBLE_OPERAND)
+                            doubles[b] = ((Arithmetic) p).applyDouble(doubleOperand(b));
+                        else
+                            longs[b] = ((Arithmetic) p).applyLong(longOperand(b));
+                        kinds[b] = (byte) kind;
+                        stack[b] = null;
+                    }
+                    else
+                    {
+                        stack[b] = p.run(Cel.empty, resolve(operand(b)));
+                        kinds[b] = CEL_OPERAND;
+                    }
                 }
                 else
                 {
-                    item = ((Procedural) item.ref).run(left, resolve(items.remove(--i)));
-                    items.remove(--i);
-                    items.set(i, item);
-                    len -= 2;
+                    apply(p, a, b);
+                    stack[--top] = null;
                 }
             }
+            else
+            {
+                kinds[top] = CEL_OPERAND;
+                stack[top++] = current;
+            }
+        }
+        items.clear();
+        for (int i = 0; i < top; i++) {
+            current = operand(i);
+            items.add(current);
+            exchange.add(current);
+            stack[i] = null;
+        }
+    }
+
+    // runs p as a binary operator on the operands in slots a and b, leaving the result in slot a
+    private void apply(Procedural p, int a, int b)
+    {
+        int kind, rightKind;
+        if(primitiveArithmetic && p instanceof Arithmetic && (kind = numericKind(a)) != CEL_OPERAND
+                && (rightKind = numericKind(b)) != CEL_OPERAND)
+        {
+            if(((kind | rightKind) & DOUBLE_OPERAND) != 0)
+            {
+                doubleOperands[a] = ((Arithmetic) p).applyDouble(doubleOperand(a), doubleOperand(b));
+                operandKinds[a] = DOUBLE_OPERAND;
+            }
+            else
+            {
+                longOperands[a] = ((Arithmetic) p).applyLong(longOperand(a), longOperand(b));
+                operandKinds[a] = LONG_OPERAND;
+            }
+            operands[a] = null;
+        }
+        else
+        {
+            operands[a] = (p instanceof CallSite)
+                    ? ((CallSite) p).run(resolve(operand(a)), resolve(operand(b)), linker)
+                    : p.run(resolve(operand(a)), resolve(operand(b)));
+            operandKinds[a] = CEL_OPERAND;
+        }
+    }
+
+    // runs p on the operands in slots from up to end as one chain grouped to the right, leaving the result in slot
+    // from and returning the new size of the operand stack
+    private int chain(Procedural p, int from, int end)
+    {
+        if(p instanceof Variadic && !(primitiveArithmetic && p instanceof Arithmetic))
+        {
+            for (int i = from; i < end; i++) {
+                operands[i] = resolve(operand(i));
+                operandKinds[i] = CEL_OPERAND;
+            }
+            operands[from] = ((Variadic) p).run(operands, from, end - from);
+        }
+        else
+        {
+            for (int i = end - 2; i >= from; i--) {
+                apply(p, i, i + 1);
+            }
+        }
+        for (int i = from + 1; i < end; i++) {
+            operands[i] = null;
+        }
+        return from + 1;
+    }
+
+    // LONG_OPERAND or DOUBLE_OPERAND for a number on the operand stack, or CEL_OPERAND if it isn't a number
+    private int numericKind(int slot)
+    {
+        if(operandKinds[slot] != CEL_OPERAND)
+            return operandKinds[slot];
+        final Cel c = resolve(operands[slot]);
+        if(!Cel.isNumeric(c))
+            return CEL_OPERAND;
+        return Cel.isFloating(c) ? DOUBLE_OPERAND : LONG_OPERAND;
+    }
+
+    private long longOperand(int slot)
+    {
+        if(operandKinds[slot] == LONG_OPERAND)
+            return longOperands[slot];
+        return Core.asLong(resolve(operands[slot]).ref);
+    }
+
+    private double doubleOperand(int slot)
+    {
+        switch (operandKinds[slot])
+        {
+            case LONG_OPERAND: return longOperands[slot];
+            case DOUBLE_OPERAND: return doubleOperands[slot];
+            default: return Core.asDouble(resolve(operands[slot]).ref);
+        }
+    }
+
+    // the operand in the given slot as a Cel, boxing it if it is primitive; Cels are returned unresolved
+    private Cel operand(int slot)
+    {
+        switch (operandKinds[slot])
+        {
+            case LONG_OPERAND: return Cel.value(longOperands[slot]);
+            case DOUBLE_OPERAND: return Cel.value(doubleOperands[slot]);
+            default: return operands[slot];
         }
-        exchange.addAll(items);
     }
 
     public void learn(String name, Object value)
@@ -356,122 +965,640 @@ public class Manager extends StackMap<String, Cel> {
         put(name, new Cel(name, value));
     }
 
-    public void standardLib()
+    /**
+     * Binds the symbol with the given id to value, the same as {@link #learn(String, Object)} with its name.
+     * @param id a symbol id from {@link #symbols}, such as one from {@code symbols.id("x")}
+     * @param value the value to bind
+     */
+    public void learn(int id, Object value)
+    {
+        learn(symbols.name(id), value);
+    }
+
+    /**
+     * Gets the current binding of the symbol with the given id, like {@link #get(Object)} with its name, but without
+     * hashing or comparing any Strings.
+     * @param id a symbol id from {@link #symbols}
+     * @return the Cel bound to that symbol here or in {@link #library}, or null if it is unbound
+     */
+    public Cel binding(int id)
+    {
+        final Cel c = id >= 0 && id < bindings.length ? bindings[id] : null;
+        return c != null ? c : library.binding(id);
+    }
+
+    /**
+     * Gets the current binding for name in this Manager, or in {@link #library} if this Manager doesn't bind it.
+     * @param k a symbol name
+     * @return the Cel bound to k, or null if it is unbound
+     */
+    @Override
+    public Cel get(Object k)
+    {
+        final Cel c = super.get(k);
+        return c != null || !(k instanceof String) ? c : library.get((String) k);
+    }
+
+    /**
+     * Looks up what the symbol with the given id refers to, the same as {@link #resolve(String)} with its name. When
+     * the symbol is bound to another symbol, where the chain ends is kept and reused until a binding on that chain
+     * changes to or from another symbol; changes to other names, or a new value at the end of the chain, don't make
+     * it follow the chain again. Bindings can't form a cycle, since changes that would make one are refused; as a
+     * safety net, no more than 256 symbols are followed, and a symbol is returned if the chain goes further.
+     * @param id a symbol id from {@link #symbols}
+     * @return the Cel the symbol refers to, or null if it is unbound
+     */
+    public Cel resolve(int id)
+    {
+        Cel item = binding(id);
+        if(item == null || !Syntax.SYMBOL.equals(item.ref))
+            return item;
+        if(id < stamps.length && resolvedStamps[id] == stamps[id])
+            return binding(resolvedIds[id]);
+        walks++;
+        reserve(id);
+        int next, steps = MAX_STEPS;
+        do {
+            next = symbols.id(item.title);
+            reserve(next);
+            depend(next, id);
+            item = binding(next);
+        } while (linked(item) && --steps > 0);
+        if(steps > 0)
+        {
+            resolvedIds[id] = next;
+            resolvedStamps[id] = stamps[id];
+        }
+        return item;
+    }
+
+    /**
+     * Gets a number that changes whenever any binding in this Manager changes, through {@link #learn(String, Object)},
+     * {@link #put(String, Cel)}, {@link #remove(Object)}, {@link #clear()}, or the like. Code that has checked the
+     * bindings it uses can skip checking them again while this stays the same, as {@link Tree} does.
+     * @return the current version of this Manager's bindings
+     */
+    public int version()
+    {
+        return version;
+    }
+
+    /**
+     * Throws an IllegalArgumentException if binding name to value would make a chain of symbols that leads back to
+     * name, which could never be resolved, or a chain longer than {@link #resolve(int)} follows. Since every change
+     * is checked here, the existing bindings have no cycles, so following the chain from value always ends.
+     */
+    private void checkCycle(String name, Cel value)
     {
-        if(containsKey("+"))
+        if(name == null || value == null || !Syntax.SYMBOL.equals(value.ref))
             return;
-        learn("+", new Operator(10) {
-            @Override
-            public Cel run(Cel left, Cel right) {
-                if(Cel.isNumeric(left) && Cel.isNumeric(right)) {
-                    if (Cel.isFloating(left) || Cel.isFloating(right)) {
-                        return new Cel(Core.asDouble(left.ref) + Core.asDouble(right.ref));
-                    }
-                    else
-                    {
-                        return new Cel(Core.asLong(left.ref) + Core.asLong(right.ref));
-                    }
-                }
-                return Cel.zeroInt;
-            }
-        });
-        learn("-", new Operator(10) {
-            @Override
-            public Cel run(Cel left, Cel right) {
-                if(Cel.isNumeric(left) && Cel.isNumeric(right)) {
-                    if (Cel.isFloating(left) || Cel.isFloating(right)) {
-                        return new Cel(Core.asDouble(left.ref) - Core.asDouble(right.ref));
-                    }
-                    else
-                    {
-                        return new Cel(Core.asLong(left.ref) - Core.asLong(right.ref));
-                    }
-                }
-                else if(Syntax.EMPTY.equals(left.ref) && Cel.isNumeric(right))
-                {
-                    if(Cel.isFloating(right))
-                        return new Cel(-Core.asDouble(right.ref));
-                    else
-                        return new Cel(-Core.asLong(right.ref));
-                }
-                return Cel.zeroInt;
+        String next = value.title;
+        Cel item;
+        for (int steps = 0; next != null; steps++) {
+            if(next.equals(name))
+                throw new IllegalArgumentException("Binding " + name + " to the symbol " + value.title
+                        + " would make a cycle of symbols");
+            if(steps >= MAX_STEPS)
+                throw new IllegalArgumentException("Binding " + name + " to the symbol " + value.title
+                        + " would make a chain of more than " + MAX_STEPS + " symbols");
+            item = get(next);
+            if(item == null || !Syntax.SYMBOL.equals(item.ref))
+                return;
+            next = item.title;
+        }
+    }
 
+    /**
+     * Updates the binding stored for name's id to whatever the map now has for name.
+     */
+    private void track(String name)
+    {
+        if(name == null)
+            return;
+        changed();
+        final int id = symbols.id(name);
+        reserve(id);
+        final boolean wasLinked = linked(binding(id));
+        final Cel bound = bindings[id] = super.get(name);
+        if(bound != null && bound.ref instanceof Operator)
+            operators.add((Operator) bound.ref);
+        if(wasLinked || linked(binding(id)))
+        {
+            stale(id);
+            final int[] ds = dependents[id];
+            for (int i = dependentCounts[id] - 1; i >= 0; i--) {
+                stale(ds[i]);
             }
-        });
-        learn("*", new Operator(11) {
-            @Override
-            public Cel run(Cel left, Cel right) {
-                if(Cel.isNumeric(left) && Cel.isNumeric(right)) {
-                    if (Cel.isFloating(left) || Cel.isFloating(right)) {
-                        return new Cel(Core.asDouble(left.ref) * Core.asDouble(right.ref));
-                    }
-                    else
-                    {
-                        return new Cel(Core.asLong(left.ref) * Core.asLong(right.ref));
-                    }
-                }
-                return Cel.zeroInt;
-            }
-        });
-        learn("/", new Operator(11) {
-            @Override
-            public Cel run(Cel left, Cel right) {
-                if(Cel.isNumeric(left) && Cel.isNumeric(right)) {
-                    if (Cel.isFloating(left) || Cel.isFloating(right)) {
-                        return new Cel(Core.asDouble(left.ref) / Core.asDouble(right.ref));
-                    }
-                    else
-                    {
-                        return new Cel(Core.asLong(left.ref) / Core.asLong(right.ref));
-                    }
-                }
-                return Cel.zeroInt;
-            }
-        });
-        learn("%", new Operator(11) {
-            @Override
-            public Cel run(Cel left, Cel right) {
-                if(Cel.isNumeric(left) && Cel.isNumeric(right)) {
-                    if (Cel.isFloating(left) || Cel.isFloating(right)) {
-                        return new Cel(Core.asDouble(left.ref) % Core.asDouble(right.ref));
-                    }
-                    else
-                    {
-                        return new Cel(Core.asLong(left.ref) % Core.asLong(right.ref));
-                    }
-                }
-                return Cel.zeroInt;
-            }
-        });
-        learn("sin", new Procedural() {
-            @Override
-            public Cel run(Cel left, Cel right) {
-                if(Cel.isFloating(right)) {
-                    return new Cel(Math.sin(Core.asDouble(right.ref)));
-                }
-                return Cel.zeroInt;
+            dependentCounts[id] = 0;
+        }
+    }
+
+    // moves to a new version; see version()
+    private void changed()
+    {
+        if(++version == 0)
+            version = 1;
+    }
+
+    // makes the cached chain for id stale
+    private void stale(int id)
+    {
+        if(++stamps[id] == 0)
+            stamps[id] = 1;
+    }
+
+    // notes that the cached chain for id goes through on, so a change to on makes it stale
+    private void depend(int on, int id)
+    {
+        int[] ds = dependents[on];
+        final int n = dependentCounts[on];
+        if(ds == null)
+            ds = dependents[on] = new int[4];
+        for (int i = 0; i < n; i++) {
+            if(ds[i] == id)
+                return;
+        }
+        if(n == ds.length)
+            ds = dependents[on] = Arrays.copyOf(ds, n << 1);
+        ds[n] = id;
+        dependentCounts[on] = n + 1;
+    }
+
+    // makes room in the arrays kept for each symbol id for the given id
+    private void reserve(int id)
+    {
+        if(id < bindings.length)
+            return;
+        final int size = Math.max(bindings.length << 1, id + 1);
+        bindings = Arrays.copyOf(bindings, size);
+        resolvedIds = Arrays.copyOf(resolvedIds, size);
+        resolvedStamps = Arrays.copyOf(resolvedStamps, size);
+        final int old = stamps.length;
+        stamps = Arrays.copyOf(stamps, size);
+        Arrays.fill(stamps, old, size, 1);
+        dependents = Arrays.copyOf(dependents, size);
+        dependentCounts = Arrays.copyOf(dependentCounts, size);
+    }
+
+    private static int[] filled(int size)
+    {
+        final int[] a = new int[size];
+        Arrays.fill(a, 1);
+        return a;
+    }
+
+    private static boolean linked(Cel item)
+    {
+        return item != null && Syntax.SYMBOL.equals(item.ref);
+    }
+
+    @Override
+    public Cel put(String k, Cel v)
+    {
+        checkCycle(k, v);
+        Cel old = super.put(k, v);
+        track(k);
+        return old;
+    }
+
+    @Override
+    public Cel set(String k, Cel v)
+    {
+        checkCycle(k, v);
+        Cel old = super.set(k, v);
+        track(k);
+        return old;
+    }
+
+    @Override
+    public Cel putAt(String k, Cel v, int idx)
+    {
+        checkCycle(k, v);
+        Cel old = super.putAt(k, v, idx);
+        track(k);
+        return old;
+    }
+
+    @Override
+    public Cel putAndMoveToFirst(String k, Cel v)
+    {
+        checkCycle(k, v);
+        Cel old = super.putAndMoveToFirst(k, v);
+        track(k);
+        return old;
+    }
+
+    @Override
+    public Cel putAndMoveToLast(String k, Cel v)
+    {
+        checkCycle(k, v);
+        Cel old = super.putAndMoveToLast(k, v);
+        track(k);
+        return old;
+    }
+
+    /**
+     * Removes the most recent binding for k, showing the binding it shadowed, if any. If that older binding would make
+     * a cycle of symbols with the current bindings, the removal is undone and an IllegalArgumentException is thrown.
+     * @param k a symbol name
+     * @return the binding that was removed, or null if there was none
+     */
+    @Override
+    public Cel remove(Object k)
+    {
+        Cel old = super.remove(k);
+        if(k instanceof String)
+            uncovered((String) k, old, -1);
+        return old;
+    }
+
+    /**
+     * Removes the binding at idx in iteration order, which may be one shadowed by a later binding for the same name.
+     * This checks the binding it uncovers the same way {@link #remove(Object)} does.
+     * @param idx an index in iteration order
+     * @return the binding that was removed, or null if idx is out of range
+     */
+    @Override
+    public Cel removeAt(int idx)
+    {
+        if(idx < 0 || idx >= size())
+            return null;
+        final String name = keyAt(idx);
+        final Cel old = super.removeAt(idx);
+        uncovered(name, old, idx);
+        return old;
+    }
+
+    @Override
+    public Cel removeFirst()
+    {
+        if(size() == 0)
+            throw new NoSuchElementException();
+        return removeAt(0);
+    }
+
+    @Override
+    public Cel removeLast()
+    {
+        if(size() == 0)
+            throw new NoSuchElementException();
+        return removeAt(size() - 1);
+    }
+
+    /**
+     * Renames the most recent binding for original to replacement, keeping its value and its place in iteration order.
+     * Like {@link #put(String, Cel)} and {@link #remove(Object)}, this throws an IllegalArgumentException and changes
+     * nothing if the new binding for replacement, or the older binding for original that this uncovers, would make a
+     * cycle of symbols.
+     * @param original the name to rename
+     * @param replacement the new name
+     * @return the Cel that was bound to original and now is bound to replacement, or null if original wasn't bound
+     */
+    @Override
+    public Cel alter(String original, String replacement)
+    {
+        final int idx = position(original);
+        if(idx < 0)
+            return null;
+        final Cel value = getAt(idx);
+        checkCycle(replacement, value);
+        super.removeAt(idx);
+        super.putAt(replacement, value, idx);
+        try {
+            checkCycle(original, get(original));
+        } catch (IllegalArgumentException e) {
+            super.removeAt(idx);
+            super.putAt(original, value, idx);
+            throw e;
+        }
+        track(original);
+        track(replacement);
+        return value;
+    }
+
+    /**
+     * Gets a view of the names bound here, in iteration order. Removing through it, or through its iterator, works
+     * like {@link #remove(Object)} or {@link #removeAt(int)}.
+     * @return a view of the keys
+     */
+    @Override
+    public SortedSet<String> keySet()
+    {
+        return new Keys();
+    }
+
+    /**
+     * Gets a view of the Cels bound here, in iteration order. Removing through its iterator works like
+     * {@link #removeAt(int)}.
+     * @return a view of the values
+     */
+    @Override
+    public Collection<Cel> values()
+    {
+        return new Values();
+    }
+
+    /**
+     * Gets a view of the bindings here, in iteration order. Removing through it works like {@link #removeAt(int)},
+     * and setValue() on one of its entries replaces that binding with the same checks as {@link #put(String, Cel)}.
+     * @return a view of the entries
+     */
+    @Override
+    public SortedSet<Map.Entry<String, Cel>> entrySet()
+    {
+        return new Entries();
+    }
+
+    // finds where in iteration order the most recent binding for name is, or -1 if name isn't bound here
+    private int position(String name)
+    {
+        if(name == null)
+            return -1;
+        final Cel bound = super.get(name);
+        if(bound == null)
+            return -1;
+        for (int i = size() - 1; i >= 0; i--) {
+            if(name.equals(keyAt(i)) && getAt(i) == bound)
+                return i;
+        }
+        return -1;
+    }
+
+    // replaces the binding at idx with value, keeping its name and place, after the same check put() makes
+    private Cel rebind(int idx, Cel value)
+    {
+        final String name = keyAt(idx);
+        checkCycle(name, value);
+        final Cel old = super.removeAt(idx);
+        super.putAt(name, value, idx);
+        track(name);
+        return old;
+    }
+
+    // checks the binding for name that a removal uncovered, putting old back (at idx, or last if idx is -1) and
+    // throwing if that binding would make a cycle of symbols
+    private void uncovered(String name, Cel old, int idx)
+    {
+        if(old != null)
+        {
+            try {
+                checkCycle(name, get(name));
+            } catch (IllegalArgumentException e) {
+                if(idx < 0)
+                    super.put(name, old);
+                else
+                    super.putAt(name, old, idx);
+                throw e;
             }
-        });
-        learn("cos", new Procedural() {
-            @Override
-            public Cel run(Cel left, Cel right) {
-                if(Cel.isFloating(right)) {
-                    return new Cel(Math.cos(Core.asDouble(right.ref)));
+        }
+        track(name);
+    }
+
+    /**
+     * Removes every binding made in this Manager, and any operator precedences set in {@link #operators}; bindings from
+     * {@link #library} are still visible afterwards.
+     */
+    @Override
+    public void clear()
+    {
+        super.clear();
+        Arrays.fill(bindings, null);
+        Arrays.fill(resolvedStamps, 0);
+        Arrays.fill(dependentCounts, 0);
+        operators.clear();
+        changed();
+    }
+
+    /**
+     * Binds the standard operators and functions in this Manager itself, unless {@code +} is already bound here or in
+     * {@link #library}. This is only needed for a Manager made with a Library that lacks them, such as
+     * {@link Library#empty}.
+     */
+    public void standardLib()
+    {
+        if(get("+") != null)
+            return;
+        learn("+", Core.plus);
+        learn("-", Core.minus);
+        learn("*", Core.times);
+        learn("/", Core.divide);
+        learn("%", Core.modulo);
+        learn("sin", Core.sin);
+        learn("cos", Core.cos);
+        learn("tan", Core.tan);
+    }
+
+    // walks through bindings by index, so each removal goes through Manager.removeAt()
+    private abstract class Cursor<T> implements Iterator<T>
+    {
+        private int next, last = -1;
+
+        abstract T at(int idx);
+
+        @Override
+        public boolean hasNext()
+        {
+            return next < size();
+        }
+
+        @Override
+        public T next()
+        {
+            if(next >= size())
+                throw new NoSuchElementException();
+            return at(last = next++);
+        }
+
+        @Override
+        public void remove()
+        {
+            if(last < 0)
+                throw new IllegalStateException();
+            removeAt(last);
+            next = last;
+            last = -1;
+        }
+    }
+
+    // a view by index of keys or entries; every change goes through Manager's own methods
+    private abstract class View<T> extends AbstractSet<T> implements SortedSet<T>
+    {
+        abstract T at(int idx);
+
+        @Override
+        public Iterator<T> iterator()
+        {
+            return new Cursor<T>()
+            {
+                @Override
+                T at(int idx)
+                {
+                    return View.this.at(idx);
                 }
-                return Cel.zeroInt;
-            }
-        });
-        learn("tan", new Procedural() {
-            @Override
-            public Cel run(Cel left, Cel right) {
-                if(Cel.isFloating(right)) {
-                    return new Cel(Math.tan(Core.asDouble(right.ref)));
+            };
+        }
+
+        @Override
+        public int size()
+        {
+            return Manager.this.size();
+        }
+
+        @Override
+        public void clear()
+        {
+            Manager.this.clear();
+        }
+
+        @Override
+        public Comparator<? super T> comparator()
+        {
+            return null;
+        }
+
+        @Override
+        public SortedSet<T> subSet(T from, T to)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SortedSet<T> headSet(T to)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SortedSet<T> tailSet(T from)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public T first()
+        {
+            if(isEmpty())
+                throw new NoSuchElementException();
+            return at(0);
+        }
+
+        @Override
+        public T last()
+        {
+            if(isEmpty())
+                throw new NoSuchElementException();
+            return at(size() - 1);
+        }
+    }
+
+    private final class Keys extends View<String>
+    {
+        @Override
+        String at(int idx)
+        {
+            return keyAt(idx);
+        }
+
+        @Override
+        public boolean contains(Object o)
+        {
+            return containsKey(o);
+        }
+
+        @Override
+        public boolean remove(Object o)
+        {
+            if(!containsKey(o))
+                return false;
+            Manager.this.remove(o);
+            return true;
+        }
+    }
+
+    private final class Entries extends View<Map.Entry<String, Cel>>
+    {
+        @Override
+        Map.Entry<String, Cel> at(int idx)
+        {
+            return new Binding(idx);
+        }
+    }
+
+    private final class Values extends AbstractCollection<Cel>
+    {
+        @Override
+        public Iterator<Cel> iterator()
+        {
+            return new Cursor<Cel>()
+            {
+                @Override
+                Cel at(int idx)
+                {
+                    return getAt(idx);
                 }
-                return Cel.zeroInt;
-            }
-        });
+            };
+        }
 
+        @Override
+        public int size()
+        {
+            return Manager.this.size();
+        }
 
+        @Override
+        public void clear()
+        {
+            Manager.this.clear();
+        }
+    }
 
+    // one binding as an entry of entrySet(); setValue() replaces it in place through rebind()
+    private final class Binding implements Map.Entry<String, Cel>
+    {
+        private final int index;
+
+        Binding(int index)
+        {
+            this.index = index;
+        }
+
+        @Override
+        public String getKey()
+        {
+            return keyAt(index);
+        }
+
+        @Override
+        public Cel getValue()
+        {
+            return getAt(index);
+        }
+
+        @Override
+        public Cel setValue(Cel value)
+        {
+            return rebind(index, value);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if(!(o instanceof Map.Entry))
+                return false;
+            final Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return Objects.equals(getKey(), e.getKey()) && Objects.equals(getValue(), e.getValue());
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hashCode(getKey()) ^ Objects.hashCode(getValue());
+        }
+
+        @Override
+        public String toString()
+        {
+            return getKey() + "=" + getValue();
+        }
     }
 }
@@ -0,0 +1,178 @@
+package lang.celadon;
+
+import java.util.ArrayDeque;
+
+/**
+ * Keeps up to a fixed number of idle {@link Manager}s for code that needs a Manager for a short time, such as for one
+ * request, so each use doesn't have to make a new Manager and its buffers. {@link #borrow()} gives an idle Manager if
+ * there is one, or makes a new one if not; {@link #release(Manager)} calls {@link Manager#reset()} on it and keeps it
+ * for later, unless the pool is already full. By default, released Managers also have their own bindings cleared, so
+ * one user's bindings can't be seen by the next; bindings from the pool's {@link Library} are never affected. The
+ * public settings that change how code runs, such as {@link Manager#linker} and {@link Manager#tiering}, are always
+ * put back to what a new Manager has, with {@link Manager#restoreSettings()}. Clearing doesn't forget the symbol names
+ * a Manager has seen, so when bindings are cleared, a Manager that has seen more than {@link #SYMBOL_LIMIT} names of
+ * its own is dropped instead of kept, rather than growing for as long as the pool lives.
+ * <br>
+ * A ManagerPool can be shared between threads; each Manager it gives out should only be used by one thread until it
+ * is released. Releasing a Manager that is already idle in the pool is counted as a discard and otherwise ignored, so
+ * it can't be given to two borrowers at once. The counts from {@link #hits()}, {@link #misses()}, and the like can be
+ * used to choose a capacity.
+ */
+public class ManagerPool {
+    /**
+     * The most symbol names, beyond its Library's, that a released Manager can have seen and still be kept when
+     * {@link #clearBindings} is true.
+     */
+    public static final int SYMBOL_LIMIT = 4096;
+
+    /**
+     * The Library every Manager from this pool is made with.
+     */
+    public final Library library;
+    /**
+     * The most idle Managers this keeps; Managers released while it is full are dropped.
+     */
+    public final int capacity;
+    /**
+     * If true, {@link #release(Manager)} also calls {@link Manager#clear()}, removing bindings made in the Manager.
+     */
+    public final boolean clearBindings;
+
+    private final ArrayDeque<Manager> idle;
+    private long hits, misses, discards;
+    private int borrowed, highWater;
+
+    /**
+     * Makes a pool of Managers using {@link Library#standard}, which clears bindings on release.
+     * @param capacity the most idle Managers to keep
+     */
+    public ManagerPool(int capacity) {
+        this(Library.standard, capacity, true);
+    }
+
+    /**
+     * @param library the Library each Manager is made with
+     * @param capacity the most idle Managers to keep
+     * @param clearBindings if true, bindings made in a Manager are removed when it is released
+     */
+    public ManagerPool(Library library, int capacity, boolean clearBindings) {
+        if (library == null)
+            throw new NullPointerException("library must not be null");
+        if (capacity < 0)
+            throw new IllegalArgumentException("capacity must not be negative; was " + capacity);
+        this.library = library;
+        this.capacity = capacity;
+        this.clearBindings = clearBindings;
+        idle = new ArrayDeque<>(Math.max(capacity, 1));
+    }
+
+    /**
+     * Gets an idle Manager from the pool, or makes a new one if there are none. Give it back with
+     * {@link #release(Manager)} when done with it.
+     * @return a Manager with empty buffers, using {@link #library}
+     */
+    public Manager borrow() {
+        Manager manager;
+        synchronized (this) {
+            manager = idle.pollFirst();
+            if (manager != null) {
+                manager.pooled = false;
+                hits++;
+            }
+            else
+                misses++;
+            if (++borrowed > highWater)
+                highWater = borrowed;
+        }
+        return manager != null ? manager : new Manager(library);
+    }
+
+    /**
+     * Resets manager, restores its settings, and keeps it for a later {@link #borrow()}, if there is room and it uses
+     * {@link #library}. Releasing a Manager that is already idle here does nothing but count a discard. When
+     * {@link #clearBindings} is true, a Manager that has seen more than {@link #SYMBOL_LIMIT} names of its own is
+     * dropped instead. The caller must not use manager after this.
+     * @param manager a Manager from {@link #borrow()}; if null, this does nothing
+     */
+    public void release(Manager manager) {
+        if (manager == null)
+            return;
+        synchronized (this) {
+            // already idle, so this is a second release; keeping it twice would give it to two borrowers
+            if (manager.pooled) {
+                discards++;
+                return;
+            }
+            manager.pooled = true;
+            if (borrowed > 0)
+                borrowed--;
+        }
+        manager.reset();
+        manager.restoreSettings();
+        if (clearBindings)
+            manager.clear();
+        synchronized (this) {
+            if (idle.size() < capacity && manager.library == library
+                    && !(clearBindings && manager.symbols.size() - library.symbols.size() > SYMBOL_LIMIT))
+                idle.addFirst(manager);
+            else {
+                manager.pooled = false;
+                discards++;
+            }
+        }
+    }
+
+    /**
+     * @return how many times {@link #borrow()} gave out an idle Manager
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * @return how many times {@link #borrow()} had to make a new Manager
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * @return how many released Managers were dropped because the pool was full, because they had seen too many
+     * symbol names, or because they were already idle
+     */
+    public synchronized long discards() {
+        return discards;
+    }
+
+    /**
+     * @return how many Managers are borrowed and not yet released
+     */
+    public synchronized int borrowed() {
+        return borrowed;
+    }
+
+    /**
+     * @return the most Managers that have been borrowed at once; if this is often above {@link #capacity}, a bigger
+     * pool would have fewer misses
+     */
+    public synchronized int highWater() {
+        return highWater;
+    }
+
+    /**
+     * @return how many idle Managers the pool holds now
+     */
+    public synchronized int idle() {
+        return idle.size();
+    }
+
+    /**
+     * Sets the hit, miss, and discard counts to 0, and the high-water mark to the number borrowed now.
+     */
+    public synchronized void resetCounts() {
+        hits = 0L;
+        misses = 0L;
+        discards = 0L;
+        highWater = borrowed;
+    }
+}
@@ -0,0 +1,125 @@
+package lang.celadon;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * A CharSequence view of bytes, usually from a memory-mapped file, that treats each byte as one char (as in ISO-8859-1,
+ * which agrees with UTF-8 on ASCII). {@link #load(File)} maps a file with {@link FileChannel#map} and returns one of
+ * these when the file is pure ASCII, so {@link Manager#tokenize(CharSequence, int, int)} can read it straight from the
+ * OS page cache without decoding it into a String first; only the text of each token is copied onto the heap.
+ * Reading chars does not move the buffer's position, so one MappedText can be read by several threads at once.
+ */
+public final class MappedText implements CharSequence {
+    public static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public final ByteBuffer bytes;
+    public final int offset, length;
+
+    /**
+     * Views all of bytes from its position to its limit.
+     * @param bytes a ByteBuffer, often a {@link MappedByteBuffer}
+     */
+    public MappedText(ByteBuffer bytes) {
+        this(bytes, bytes.position(), bytes.remaining());
+    }
+
+    /**
+     * Views length bytes of the given buffer, starting at the absolute index offset.
+     * @param bytes a ByteBuffer, often a {@link MappedByteBuffer}
+     * @param offset the absolute index in bytes of the first char
+     * @param length how many bytes (and chars) to view
+     */
+    public MappedText(ByteBuffer bytes, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > bytes.limit())
+            throw new IndexOutOfBoundsException("offset " + offset + " and length " + length
+                    + " do not fit in a buffer with limit " + bytes.limit());
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Maps the given file into memory, read-only, and returns its contents as a CharSequence. If the file is all ASCII
+     * (after an optional UTF-8 byte order mark), this returns a MappedText that reads directly from the mapping;
+     * otherwise, it decodes the file as UTF-8 into a String, since multi-byte chars can't be viewed one byte at a time.
+     * The mapping stays valid after this returns, even though the file itself is closed.
+     * @param file a file containing Celadon source in ASCII or UTF-8
+     * @return a CharSequence with the file's contents
+     * @throws IOException if the file can't be opened or mapped
+     */
+    public static CharSequence load(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("File " + file + " is too large to view as a CharSequence (" + size + " bytes)");
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int start = (size >= 3 && buffer.get(0) == (byte) 0xEF && buffer.get(1) == (byte) 0xBB
+                    && buffer.get(2) == (byte) 0xBF) ? 3 : 0;
+            if (isAscii(buffer, start, (int) size))
+                return new MappedText(buffer, start, (int) size - start);
+            buffer.position(start);
+            return UTF_8.decode(buffer).toString();
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Checks whether every byte from start (inclusive) to end (exclusive), using absolute indices, is ASCII.
+     * @param bytes the buffer to check; its position is not changed
+     * @param start the first absolute index to check
+     * @param end the absolute index to stop before
+     * @return true if no byte in the range has its high bit set
+     */
+    public static boolean isAscii(ByteBuffer bytes, int start, int end) {
+        int i = start;
+        for (int limit = end - 7; i < limit; i += 8) {
+            if ((bytes.getLong(i) & 0x8080808080808080L) != 0L)
+                return false;
+        }
+        for (; i < end; i++) {
+            if (bytes.get(i) < 0)
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException("index " + index + " is outside length " + length);
+        return (char) (bytes.get(offset + index) & 0xFF);
+    }
+
+    /**
+     * Copies the given range into a new String; this is what the tokenizer does for each token's text.
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end)
+            throw new IndexOutOfBoundsException("range " + start + " to " + end + " is outside length " + length);
+        char[] chars = new char[end - start];
+        for (int i = 0, j = offset + start; i < chars.length; i++, j++) {
+            chars[i] = (char) (bytes.get(j) & 0xFF);
+        }
+        return new String(chars);
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length).toString();
+    }
+}
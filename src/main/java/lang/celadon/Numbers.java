@@ -0,0 +1,223 @@
+package lang.celadon;
+
+/**
+ * Parses floating-point literals straight from a section of a CharSequence, without copying the digits into a String
+ * and without throwing exceptions. This accepts the forms that {@link Lexer} recognizes as {@link Lexer#DOUBLE} or
+ * {@link Lexer#FLOAT} (without their type suffix): an optional sign, then {@code NaN}, {@code Infinity}, decimal
+ * digits with an optional fraction and {@code e} exponent, or a hex significand with a {@code p} binary exponent.
+ * Integer literals in decimal, hex, and binary are already read from ranges by StringKit.
+ * <br>
+ * A Numbers object holds the pieces of the literal it is currently parsing, so it can be reused for any number of
+ * literals without allocating, but it must not be shared between threads; each {@link Lexer} has its own.
+ * <br>
+ * Results are correctly rounded, the same as {@link Double#parseDouble(String)} and {@link Float#parseFloat(String)}.
+ * Nearly all literals seen in practice have few enough significant digits and a small enough exponent to be computed
+ * exactly with one multiplication or division; the rest (very long or very small numbers, and subnormal results)
+ * fall back to the JDK's parser on a copy of the text, since rounding them correctly needs arbitrary precision.
+ */
+public class Numbers {
+    private static final double[] POWERS = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final float[] FLOAT_POWERS = {
+            1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+    };
+    // largest significands that doubles and floats can hold exactly
+    private static final long DOUBLE_EXACT = 1L << 53, FLOAT_EXACT = 1L << 24;
+
+    // the pieces of the literal being parsed
+    private long significand;
+    private int exponent, digits;
+    private boolean negative, inexact, hex, special;
+    private double specialValue;
+
+    /**
+     * Parses a double from the given section of text, which should be a literal as described in the class docs.
+     * @param text text containing a floating-point literal
+     * @param start the start of the literal, inclusive
+     * @param end the end of the literal, exclusive; any {@code d} or {@code f} suffix should be left out
+     * @return the double closest to the literal's value
+     */
+    public double parseDouble(CharSequence text, int start, int end) {
+        scan(text, start, end);
+        if (special)
+            return specialValue;
+        double v = hex ? hexDouble() : decimalDouble();
+        if (v != v)
+            v = Double.parseDouble(text.subSequence(start, end).toString());
+        return v;
+    }
+
+    /**
+     * Parses a float from the given section of text, which should be a literal as described in the class docs.
+     * @param text text containing a floating-point literal
+     * @param start the start of the literal, inclusive
+     * @param end the end of the literal, exclusive; any {@code d} or {@code f} suffix should be left out
+     * @return the float closest to the literal's value
+     */
+    public float parseFloat(CharSequence text, int start, int end) {
+        scan(text, start, end);
+        if (special)
+            return (float) specialValue;
+        float v = hex ? hexFloat() : decimalFloat();
+        if (v != v)
+            v = Float.parseFloat(text.subSequence(start, end).toString());
+        return v;
+    }
+
+    /**
+     * Reads the sign, significand, and exponent. Up to 18 significant digits (15 for hex) are kept in
+     * {@link #significand}; later digits only set {@link #inexact} if they are non-zero. The value is then
+     * {@code significand * 10^exponent}, or {@code significand * 2^exponent} for hex.
+     */
+    private void scan(CharSequence text, int i, int end) {
+        significand = 0L;
+        exponent = digits = 0;
+        negative = inexact = hex = special = false;
+        char c = i < end ? text.charAt(i) : 0;
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            c = ++i < end ? text.charAt(i) : 0;
+        }
+        if (c == 'N' || c == 'I') {
+            special = true;
+            specialValue = c == 'N' ? Double.NaN : negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+            return;
+        }
+        if (c == '0' && i + 1 < end && (text.charAt(i + 1) | 32) == 'x') {
+            hex = true;
+            i += 2;
+        }
+        final int base = hex ? 16 : 10, limit = hex ? 15 : 18, scale = hex ? 4 : 1;
+        boolean fraction = false;
+        int d;
+        for (; i < end; i++) {
+            c = text.charAt(i);
+            if (c == '.') {
+                fraction = true;
+                continue;
+            }
+            if ((d = digit(c, base)) < 0)
+                break;
+            if (significand == 0L && d == 0) {
+                if (fraction)
+                    exponent -= scale;
+            } else if (digits < limit) {
+                significand = significand * base + d;
+                ++digits;
+                if (fraction)
+                    exponent -= scale;
+            } else {
+                inexact |= d != 0;
+                if (!fraction)
+                    exponent += scale;
+            }
+        }
+        if (i < end) {
+            // c is 'e', 'E', 'p', or 'P'
+            boolean negativeExponent = false;
+            c = ++i < end ? text.charAt(i) : 0;
+            if (c == '-' || c == '+') {
+                negativeExponent = c == '-';
+                ++i;
+            }
+            int e = 0;
+            for (; i < end; i++) {
+                // saturates well past any exponent that could give a finite, non-zero result
+                if (e < 100000)
+                    e = e * 10 + text.charAt(i) - '0';
+            }
+            exponent += negativeExponent ? -e : e;
+        }
+    }
+
+    private static int digit(char c, int base) {
+        if (c >= '0' && c <= '9')
+            return c - '0';
+        if (base == 16) {
+            c |= 32;
+            if (c >= 'a' && c <= 'f')
+                return c - 'a' + 10;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the parsed double, or NaN if it can't be computed exactly here
+     */
+    private double decimalDouble() {
+        if (significand == 0L)
+            return negative ? -0.0 : 0.0;
+        // the value is at least 10^(magnitude - 1) and less than 10^magnitude
+        final int magnitude = digits + exponent;
+        if (magnitude > 310)
+            return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        if (magnitude < -325)
+            return negative ? -0.0 : 0.0;
+        if (inexact || significand > DOUBLE_EXACT)
+            return Double.NaN;
+        double v;
+        if (exponent >= 0 && exponent <= 22)
+            v = significand * POWERS[exponent];
+        else if (exponent < 0 && exponent >= -22)
+            v = significand / POWERS[-exponent];
+        else if (exponent > 22 && exponent <= 22 + 15 && significand * POWERS[exponent - 22] < DOUBLE_EXACT)
+            // the first multiplication is exact, so only the second one rounds
+            v = significand * POWERS[exponent - 22] * POWERS[22];
+        else
+            return Double.NaN;
+        return negative ? -v : v;
+    }
+
+    /**
+     * @return the parsed float, or NaN if it can't be computed exactly here
+     */
+    private float decimalFloat() {
+        if (significand == 0L)
+            return negative ? -0f : 0f;
+        final int magnitude = digits + exponent;
+        if (magnitude > 40)
+            return negative ? Float.NEGATIVE_INFINITY : Float.POSITIVE_INFINITY;
+        if (magnitude < -47)
+            return negative ? -0f : 0f;
+        if (inexact)
+            return Float.NaN;
+        float v;
+        if (significand <= FLOAT_EXACT && exponent >= -10 && exponent <= 10)
+            v = exponent < 0 ? significand / FLOAT_POWERS[-exponent] : significand * FLOAT_POWERS[exponent];
+        else if (exponent >= 0 && exponent <= 22 && significand <= DOUBLE_EXACT
+                && significand * POWERS[exponent] < DOUBLE_EXACT)
+            // an exact integer as a double, so rounding it to float is the only rounding step
+            v = (float) (significand * POWERS[exponent]);
+        else
+            return Float.NaN;
+        return negative ? -v : v;
+    }
+
+    /**
+     * @return the parsed double, or NaN if the result is subnormal and might not round the same way as the JDK
+     */
+    private double hexDouble() {
+        if (significand == 0L)
+            return negative ? -0.0 : 0.0;
+        // significand has at most 60 bits, and when it has 15 digits its lowest bit is far below the rounding position,
+        // so it can stand in for every digit that was dropped
+        double v = Math.scalb((double) (inexact ? significand | 1L : significand), exponent);
+        if (v == 0.0 || Math.getExponent(v) < Double.MIN_EXPONENT)
+            return Double.NaN;
+        return negative ? -v : v;
+    }
+
+    /**
+     * @return the parsed float, or NaN if the result is subnormal and might not round the same way as the JDK
+     */
+    private float hexFloat() {
+        if (significand == 0L)
+            return negative ? -0f : 0f;
+        float v = Math.scalb((float) (inexact ? significand | 1L : significand), exponent);
+        if (v == 0f || Math.getExponent(v) < Float.MIN_EXPONENT)
+            return Float.NaN;
+        return negative ? -v : v;
+    }
+}
@@ -1,35 +1,31 @@
 package lang.celadon;
 
-import squidpony.squidmath.OrderedSet;
-
 /**
+ * A Procedural that goes between its operands, with a precedence used by {@link Manager#shunt()} to decide which
+ * operators run first. Operators are not tracked anywhere globally; each Manager notes the Operators bound in it in
+ * its own {@link OperatorTable}, {@link Manager#operators}, which is where shunting looks up precedence.
  * Created by Tommy Ettinger on 11/16/2017.
  */
 public abstract class Operator implements Procedural {
     public final int precedence;
     public final boolean rightAssociative;
 
-    public static final OrderedSet<Operator> registry = new OrderedSet<>(32);
-
     public Operator()
     {
         precedence = 0;
         rightAssociative = false;
-        registry.add(this);
     }
 
     public Operator(int precedence)
     {
         this.precedence = precedence;
         rightAssociative = false;
-        registry.add(this);
     }
 
     public Operator(int precedence, boolean rightAssociative)
     {
         this.precedence = precedence;
         this.rightAssociative = rightAssociative;
-        registry.add(this);
     }
 
 }
@@ -0,0 +1,161 @@
+package lang.celadon;
+
+/**
+ * The operators known to one {@link Manager}, with the precedence each has there. Operators are found by identity, so
+ * looking one up never calls equals() or hashCode() on it and never allocates. A Manager adds each {@link Operator} to
+ * its table when the Operator is first bound to a symbol, using the Operator's own precedence; {@link #put(Object, int)}
+ * can then change the precedence for that Manager only, or make any other Procedural act as an operator there. Like a
+ * Manager, an OperatorTable is not thread-safe.
+ * <br>
+ * An OperatorTable can have a parent, as each Manager's has its {@link Library}'s; operators not in this table are
+ * looked up in the parent, which is only read, never changed, so many tables can share one.
+ */
+public class OperatorTable {
+    /**
+     * Returned by {@link #precedence(Object)} for anything that isn't in the table.
+     */
+    public static final int NONE = Integer.MIN_VALUE;
+
+    private final OperatorTable parent;
+    private Object[] keys;
+    private int[] precedences;
+    private int size, mask;
+
+    public OperatorTable() {
+        this(16);
+    }
+
+    /**
+     * @param expected how many operators this should be able to hold before it needs to resize
+     */
+    public OperatorTable(int expected) {
+        this(null, expected);
+    }
+
+    /**
+     * @param parent an OperatorTable that won't change any more, or null
+     */
+    public OperatorTable(OperatorTable parent) {
+        this(parent, 16);
+    }
+
+    /**
+     * @param parent an OperatorTable that won't change any more, or null
+     * @param expected how many operators this should be able to hold before it needs to resize
+     */
+    public OperatorTable(OperatorTable parent, int expected) {
+        this.parent = parent;
+        int c = 16;
+        while (c < expected * 2)
+            c <<= 1;
+        keys = new Object[c];
+        precedences = new int[c];
+        mask = c - 1;
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ h >>> 16;
+    }
+
+    private int slot(Object operator) {
+        int s = mix(System.identityHashCode(operator)) & mask;
+        while (keys[s] != null && keys[s] != operator)
+            s = s + 1 & mask;
+        return s;
+    }
+
+    /**
+     * @param operator any Object, usually the ref of a Cel
+     * @return the precedence operator has in this table or its parent, or {@link #NONE} if it isn't an operator here
+     */
+    public int precedence(Object operator) {
+        if (operator == null)
+            return NONE;
+        int s = slot(operator);
+        if (keys[s] != null)
+            return precedences[s];
+        return parent == null ? NONE : parent.precedence(operator);
+    }
+
+    /**
+     * @param operator any Object
+     * @return true if operator is in this table or its parent
+     */
+    public boolean contains(Object operator) {
+        return operator != null && (keys[slot(operator)] != null || parent != null && parent.contains(operator));
+    }
+
+    /**
+     * Adds operator with its own precedence, unless it is already in this table.
+     * @param operator an Operator
+     */
+    public void add(Operator operator) {
+        if (!contains(operator))
+            put(operator, operator.precedence);
+    }
+
+    /**
+     * Adds operator with the given precedence, or changes its precedence if it is already in this table. If operator
+     * is in the parent, this gives it a new precedence in this table only.
+     * @param operator any Procedural, usually an {@link Operator}
+     * @param precedence higher precedence operators run first; should not be {@link #NONE}
+     */
+    public void put(Object operator, int precedence) {
+        int s = slot(operator);
+        if (keys[s] == null) {
+            if (size + 1 > keys.length >>> 1) {
+                grow();
+                s = slot(operator);
+            }
+            keys[s] = operator;
+            size++;
+        }
+        precedences[s] = precedence;
+    }
+
+    /**
+     * @return how many operators are in this table, not counting its parent
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes every operator from this table; its parent, if it has one, is unchanged.
+     */
+    public void clear() {
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = null;
+        }
+        size = 0;
+    }
+
+    /**
+     * Adds every operator in other and its parent to this table, with the precedence other gives it.
+     * @param other another OperatorTable
+     */
+    public void putAll(OperatorTable other) {
+        if (other.parent != null)
+            putAll(other.parent);
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != null)
+                put(other.keys[i], other.precedences[i]);
+        }
+    }
+
+    private void grow() {
+        Object[] oldKeys = keys;
+        int[] oldPrecedences = precedences;
+        keys = new Object[oldKeys.length << 1];
+        precedences = new int[keys.length];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int s = slot(oldKeys[i]);
+                keys[s] = oldKeys[i];
+                precedences[s] = oldPrecedences[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package lang.celadon;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Tokenizes large sources on several threads at once, using a ForkJoinPool. A quick pre-scan with
+ * {@link #splits(CharSequence, int, int, int)} picks split points at line breaks where brackets are balanced and that
+ * are outside strings and comments; each chunk between split points is then scanned by its own {@link Lexer}, and the
+ * chunks' tokens are joined in order.
+ * <br>
+ * The results are always the same as {@link Manager#tokenize(CharSequence, int, int)}. The pre-scan only has to be a
+ * good guess, because each chunk is scanned as if more text follows it, and a chunk that turns out to end partway into
+ * a token or comment (as {@link Lexer#endsCleanly()} reports) is finished by continuing its Lexer into the next chunk,
+ * on the joining thread, instead of trusting the next chunk's tokens.
+ * <br>
+ * This uses java.util.concurrent, so it is not available on GWT.
+ */
+public class ParallelTokenizer {
+    /**
+     * The default smallest number of chars worth giving to a thread of its own.
+     */
+    public static final int DEFAULT_MIN_CHUNK = 1 << 15;
+
+    public final ForkJoinPool pool;
+    /**
+     * Sources shorter than twice this are tokenized on the calling thread; longer ones are split into chunks of at
+     * least about this many chars.
+     */
+    public int minChunk = DEFAULT_MIN_CHUNK;
+
+    /**
+     * Uses a new ForkJoinPool with one thread per available processor.
+     */
+    public ParallelTokenizer() {
+        this(new ForkJoinPool());
+    }
+
+    public ParallelTokenizer(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Finds up to {@code pieces - 1} points to split the given section of text at, roughly evenly spaced. Each split
+     * point is just after a line break that is not inside a string, char literal, or comment, where every bracket,
+     * brace, and parenthesis opened since start has been closed. This only looks at a few kinds of char, so it is
+     * much faster than scanning for tokens, but it can be fooled by unusual code; that only makes the split points
+     * less useful, since {@link #tokenize(CharSequence, int, int)} checks each one.
+     * @param text the source to split
+     * @param start the first index to consider, inclusive
+     * @param end the last index to consider, exclusive
+     * @param pieces how many chunks to aim for
+     * @return the chunk boundaries in order, starting with start and ending with end
+     */
+    public static int[] splits(CharSequence text, int start, int end, int pieces) {
+        int[] bounds = new int[Math.max(pieces, 1) + 1];
+        int count = 0, depth = 0;
+        bounds[count++] = start;
+        final long length = end - start;
+        int target = pieces <= 1 ? end : start + (int) (length / pieces);
+        boolean tokenStart = true;
+        char c;
+        for (int i = start; i < end; i++) {
+            c = text.charAt(i);
+            switch (c) {
+                case '\n':
+                    if (depth == 0 && i >= target && i + 1 < end) {
+                        bounds[count++] = i + 1;
+                        target = count == pieces ? end : start + (int) (length * count / pieces);
+                    }
+                    tokenStart = true;
+                    continue;
+                case ' ': case '\t': case '\r': case ',':
+                    tokenStart = true;
+                    continue;
+                case '(': case '[': case '{':
+                    ++depth;
+                    tokenStart = true;
+                    continue;
+                case ')': case ']': case '}':
+                    if (depth > 0)
+                        --depth;
+                    tokenStart = true;
+                    continue;
+                case ':': case '@': case '.':
+                    tokenStart = true;
+                    continue;
+            }
+            if (!tokenStart)
+                continue;
+            tokenStart = false;
+            switch (c) {
+                case '"': case '\'':
+                    // skip to the matching quote that isn't escaped
+                    for (++i; i < end && (text.charAt(i) != c || text.charAt(i - 1) == '\\'); i++) ;
+                    break;
+                case '`':
+                    if (i + 1 < end && text.charAt(i + 1) == '\\')
+                        ++i;
+                    for (i += 2; i < end && text.charAt(i) != '`'; i++) ;
+                    break;
+                case ';':
+                    for (; i + 1 < end && text.charAt(i + 1) != '\n'; i++) ;
+                    break;
+                case '~': {
+                    int tildes = 0;
+                    while (i + tildes < end && text.charAt(i + tildes) == '~')
+                        ++tildes;
+                    if (i + tildes < end && text.charAt(i + tildes) == '!') {
+                        // skip to '!' followed by the same number of tildes
+                        OUTER:
+                        for (i += tildes + 1; i < end; i++) {
+                            if (text.charAt(i) != '!')
+                                continue;
+                            for (int t = 1; t <= tildes; t++) {
+                                if (i + t >= end || text.charAt(i + t) != '~')
+                                    continue OUTER;
+                            }
+                            i += tildes;
+                            break;
+                        }
+                    }
+                    break;
+                }
+            }
+        }
+        bounds[count++] = end;
+        if (count == bounds.length)
+            return bounds;
+        int[] trimmed = new int[count];
+        System.arraycopy(bounds, 0, trimmed, 0, count);
+        return trimmed;
+    }
+
+    private int pieces(int length) {
+        return Math.max(1, Math.min(pool.getParallelism() * 4, length / Math.max(minChunk, 1)));
+    }
+
+    /**
+     * Tokenizes the given source into the Manager's {@link Manager#tokens}, with the same result as
+     * {@link Manager#tokenize(CharSequence)}.
+     * @param manager the Manager whose tokens will be replaced
+     * @param text the source to tokenize
+     */
+    public void tokenize(Manager manager, CharSequence text) {
+        manager.tokens = tokenize(text, 0, text.length());
+    }
+
+    /**
+     * Tokenizes a section of text into a new list of Cels, with the same result as
+     * {@link Manager#tokenize(CharSequence, int, int)}.
+     * @param text the source to tokenize
+     * @param start the first index to read, inclusive
+     * @param end the last index to read, exclusive
+     * @return a new ArrayList of tokens
+     */
+    public ArrayList<Cel> tokenize(CharSequence text, int start, int end) {
+        Chunk[] chunks = scan(text, start, end, false);
+        int total = 0;
+        for (Chunk c : chunks) {
+            total += c.cels.size();
+        }
+        ArrayList<Cel> tokens = new ArrayList<>(total + 16);
+        for (int i = 0; i < chunks.length; i++) {
+            Chunk c = chunks[i];
+            List<Cel> cels = c.cels;
+            int from = 0;
+            if (!cels.isEmpty() && !tokens.isEmpty() && Syntax.CLOSE_PARENTHESIS.equals(cels.get(0).ref)
+                    && Syntax.OPEN_PARENTHESIS.equals(tokens.get(tokens.size() - 1).ref)) {
+                tokens.set(tokens.size() - 1, Cel.empty);
+                from = 1;
+            }
+            tokens.addAll(cels.subList(from, cels.size()));
+            if (c.clean)
+                continue;
+            Lexer lexer = c.lexer;
+            do {
+                Chunk next = chunks[++i];
+                lexer.atStart = lexer.position == start;
+                lexer.resume(text, lexer.position, next.end, next.last);
+                int k;
+                while ((k = lexer.scan()) != Lexer.END && k != Lexer.MORE) {
+                    lexer.add(tokens);
+                }
+            } while (!chunks[i].last && !lexer.endsCleanly());
+        }
+        return tokens;
+    }
+
+    /**
+     * Tokenizes a section of text into a TokenBuffer, replacing its contents, with the same result as
+     * {@link Lexer#tokenize(CharSequence, int, int, TokenBuffer)}. Each chunk gives ids to its own symbols, and these
+     * are translated to ids in the buffer's {@link TokenBuffer#symbols} as the chunks are joined.
+     * @param text the source to tokenize
+     * @param start the first index to read, inclusive
+     * @param end the last index to read, exclusive
+     * @param tokens a TokenBuffer that will be cleared and then filled
+     */
+    public void tokenize(CharSequence text, int start, int end, TokenBuffer tokens) {
+        Chunk[] chunks = scan(text, start, end, true);
+        tokens.clear(text);
+        for (int i = 0; i < chunks.length; i++) {
+            Chunk c = chunks[i];
+            TokenBuffer buffer = c.buffer;
+            int[] ids = new int[buffer.symbols.size()];
+            for (int s = 0; s < ids.length; s++) {
+                ids[s] = tokens.symbols.id(buffer.symbols.name(s));
+            }
+            int from = 0;
+            if (buffer.size > 0 && tokens.size > 0 && buffer.kinds[0] == Lexer.CLOSE_PARENTHESIS
+                    && tokens.kinds[tokens.size - 1] == Lexer.OPEN_PARENTHESIS) {
+                tokens.kinds[tokens.size - 1] = Lexer.EMPTY;
+                tokens.ends[tokens.size - 1] = buffer.ends[0];
+                from = 1;
+            }
+            for (int r = from; r < buffer.size; r++) {
+                int id = buffer.ids[r];
+                tokens.add(buffer.kinds[r], buffer.starts[r], buffer.ends[r], buffer.payloads[r],
+                        id < 0 ? id : ids[id]);
+            }
+            if (c.clean)
+                continue;
+            Lexer lexer = c.lexer;
+            do {
+                Chunk next = chunks[++i];
+                lexer.atStart = lexer.position == start;
+                lexer.resume(text, lexer.position, next.end, next.last);
+                int k;
+                while ((k = lexer.scan()) != Lexer.END && k != Lexer.MORE) {
+                    lexer.add(tokens);
+                }
+            } while (!chunks[i].last && !lexer.endsCleanly());
+        }
+    }
+
+    private Chunk[] scan(CharSequence text, int start, int end, boolean buffered) {
+        int pieces = pieces(end - start);
+        int[] bounds = pieces > 1 ? splits(text, start, end, pieces) : new int[]{start, end};
+        final Chunk[] chunks = new Chunk[bounds.length - 1];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = new Chunk(text, bounds[i], bounds[i + 1], i == 0, i == chunks.length - 1, buffered);
+        }
+        if (chunks.length == 1)
+            chunks[0].compute();
+        else
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(chunks);
+                }
+            });
+        return chunks;
+    }
+
+    /**
+     * Scans one chunk as if more text follows it (unless it is the last), then records whether it ended cleanly.
+     */
+    private static final class Chunk extends RecursiveAction {
+        final CharSequence text;
+        final int start, end;
+        final boolean first, last;
+        final Lexer lexer = new Lexer();
+        ArrayList<Cel> cels;
+        TokenBuffer buffer;
+        boolean clean;
+
+        Chunk(CharSequence text, int start, int end, boolean first, boolean last, boolean buffered) {
+            this.text = text;
+            this.start = start;
+            this.end = end;
+            this.first = first;
+            this.last = last;
+            if (buffered)
+                buffer = new TokenBuffer(new SymbolTable(), 16 + (end - start >>> 2));
+            else
+                cels = new ArrayList<>(16 + (end - start >>> 2));
+        }
+
+        @Override
+        protected void compute() {
+            lexer.reset(text, start, end);
+            lexer.resume(text, start, end, last);
+            lexer.atStart = first;
+            if (buffer != null)
+                buffer.clear(text);
+            int k;
+            while ((k = lexer.scan()) != Lexer.END && k != Lexer.MORE) {
+                if (buffer != null)
+                    lexer.add(buffer);
+                else
+                    lexer.add(cels);
+            }
+            clean = lexer.endsCleanly();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package lang.celadon;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A script that has already been tokenized and put in reverse Polish notation by {@link Manager#compile(CharSequence)},
+ * so it can be run any number of times with {@link #run(Manager)} without reading the source again. A Program never
+ * changes after it is made, so one Program can be run by several Managers, even on different threads.
+ * <br>
+ * Literals are stored as ready-made Cels. Symbols are stored unresolved and looked up each time the Program runs, so
+ * the same Program can give different results as the values bound in the Manager change; symbols that are unbound
+ * when the Program runs are skipped, as {@link Manager#shunt()} skips them. Which symbols are operators, though, is
+ * decided once, by the Manager that compiled the Program, and that Manager may also have folded constant
+ * subexpressions that use {@link Pure} Procedurals into their results, and joined chains of the same {@link Variadic}
+ * operator into one call each.
+ */
+public class Program implements CompiledExpression {
+    /**
+     * The symbol table that {@link #ids} come from; a Manager that uses this same table can look symbols up by id.
+     */
+    public final SymbolTable symbols;
+    private final Cel[] code;
+    private final int[] ids;
+
+    /**
+     * Copies the tokens in rpn, which should already be in reverse Polish notation, folding constants if compiler's
+     * {@link Manager#foldConstants} is true and joining chains of {@link Variadic} operators if its
+     * {@link Manager#flattenChains} is true.
+     * @param rpn the output of {@link Manager#shunt(TokenBuffer, TokenBuffer)} or similar
+     * @param compiler the Manager whose bindings are used to fold and flatten, or null to keep every token as it is
+     */
+    Program(TokenBuffer rpn, Manager compiler) {
+        symbols = rpn.symbols;
+        Cel[] code = new Cel[rpn.size];
+        int[] ids = new int[rpn.size];
+        for (int i = 0; i < code.length; i++) {
+            code[i] = rpn.cel(i);
+            ids[i] = rpn.kinds[i] == Lexer.SYMBOL ? rpn.ids[i] : -1;
+        }
+        int size = code.length;
+        if (compiler != null && compiler.foldConstants)
+            size = Folder.fold(compiler, code, ids, size);
+        if (compiler != null && compiler.flattenChains)
+            size = Flattener.flatten(compiler, code, ids, size);
+        if (size < code.length) {
+            code = Arrays.copyOf(code, size);
+            ids = Arrays.copyOf(ids, size);
+        }
+        this.code = code;
+        this.ids = ids;
+    }
+
+    /**
+     * @return how many items (literals, symbols, and operators) this holds
+     */
+    public int size() {
+        return code.length;
+    }
+
+    /**
+     * @param index the index of an item, in reverse Polish notation order
+     * @return the Cel stored for that item; for symbols, this is the unresolved symbol, and it must not be modified
+     */
+    public Cel get(int index) {
+        return code[index];
+    }
+
+    /**
+     * Resolves this Program's symbols in the given Manager, puts the results in its {@link Manager#items} (replacing
+     * what was there), and evaluates them, so the results are appended to {@link Manager#exchange}. This does not
+     * change the Program, and does not touch the Manager's {@link Manager#tokens}.
+     * @param manager the Manager that provides bindings for symbols and receives the results
+     */
+    @Override
+    public void run(Manager manager) {
+        ArrayList<Cel> items = manager.items;
+        items.clear();
+        final boolean sameSymbols = manager.symbols == symbols;
+        Cel item;
+        for (int i = 0; i < code.length; i++) {
+            item = code[i];
+            if (ids[i] >= 0) {
+                item = sameSymbols ? manager.resolve(ids[i]) : manager.resolve(item.title);
+                if (item == null)
+                    continue;
+            }
+            items.add(item);
+        }
+        manager.evaluate();
+    }
+
+    /**
+     * @param index the index of an item, in reverse Polish notation order
+     * @return the symbol id of that item in {@link #symbols}, or -1 if it is a literal
+     */
+    int id(int index) {
+        return ids[index];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(code.length * 4);
+        for (int i = 0; i < code.length; i++) {
+            if (i > 0)
+                sb.append(' ');
+            sb.append(code[i]);
+        }
+        return sb.toString();
+    }
+}
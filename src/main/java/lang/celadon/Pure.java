@@ -0,0 +1,10 @@
+package lang.celadon;
+
+/**
+ * A Procedural whose result depends only on its arguments, and that has no side effects, so a call on constants can
+ * be worked out once, ahead of time, by {@link Manager#fold()} or {@link Manager#compile(CharSequence)}. Procedurals
+ * that don't implement this are never folded, so anything that reads or changes state outside its arguments should
+ * be a plain Procedural.
+ */
+public interface Pure extends Procedural {
+}
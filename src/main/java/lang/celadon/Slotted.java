@@ -0,0 +1,23 @@
+package lang.celadon;
+
+/**
+ * A Methodical that can turn a method name into an int slot once, so calls after the first can skip looking the name
+ * up; {@link CallSite} does this for each {@code receiver.method} in a script, keeping the slot for each receiver
+ * class it sees. Every instance of a class must give the same slot for the same name, and the slots should be small
+ * ints, such as the ordinal of an enum constant or a case in a switch.
+ */
+public interface Slotted extends Methodical {
+    /**
+     * @param name a method name
+     * @return the slot for that name, the same for every instance of this class, or -1 if there is no such method
+     */
+    int slot(String name);
+
+    /**
+     * Runs the method in the given slot, the same as {@link #run(Cel, String)} with the matching name.
+     * @param right the argument
+     * @param slot a slot from {@link #slot(String)}, never -1
+     * @return the result
+     */
+    Cel run(Cel right, int slot);
+}
@@ -0,0 +1,167 @@
+package lang.celadon;
+
+/**
+ * Gives each distinct symbol name a small int id, counting up from 0 in the order names are first seen, and maps ids
+ * back to names. Ids can be looked up straight from a section of source text without making a String, unless the name
+ * is new; each name is stored once, however many times it appears. A SymbolTable is not thread-safe; each
+ * {@link Manager} has its own.
+ * <br>
+ * A SymbolTable can be made on top of a parent table, as each Manager's is on top of its {@link Library}'s; names in
+ * the parent keep the parent's ids, and new names get ids counting up from the parent's size. The parent is only read,
+ * never changed, so many tables can share one parent, but it must not get new names after any child is made.
+ */
+public class SymbolTable {
+    private final SymbolTable parent;
+    // how many ids the parent gives out; ids in this table start here
+    private final int offset;
+    private String[] names;
+    private int[] hashes;
+    // each slot holds an id plus 1, or 0 if the slot is empty
+    private int[] slots;
+    private int size, mask;
+
+    public SymbolTable() {
+        this(64);
+    }
+
+    /**
+     * @param expected how many names this should be able to hold before it needs to resize
+     */
+    public SymbolTable(int expected) {
+        this(null, expected);
+    }
+
+    /**
+     * @param parent a SymbolTable that won't get any more names, or null
+     */
+    public SymbolTable(SymbolTable parent) {
+        this(parent, 16);
+    }
+
+    /**
+     * @param parent a SymbolTable that won't get any more names, or null
+     * @param expected how many names this should be able to hold, not counting the parent's, before it needs to resize
+     */
+    public SymbolTable(SymbolTable parent, int expected) {
+        this.parent = parent;
+        offset = parent == null ? 0 : parent.size();
+        int c = 16;
+        while (c < expected * 2)
+            c <<= 1;
+        names = new String[c >>> 1];
+        hashes = new int[c >>> 1];
+        slots = new int[c];
+        mask = c - 1;
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ h >>> 16;
+    }
+
+    /**
+     * Gets the id for the given section of text, adding it as a new name if it hasn't been seen before.
+     * @param text text containing a symbol name
+     * @param start the start of the name in text, inclusive
+     * @param end the end of the name in text, exclusive
+     * @return the id for the name, from 0 to {@link #size()} (exclusive) after this call
+     */
+    public int id(CharSequence text, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + text.charAt(i);
+        }
+        int id = find(h, text, start, end);
+        return id >= 0 ? id : add(h, text.subSequence(start, end).toString());
+    }
+
+    /**
+     * Gets the id for the given name, adding it if it hasn't been seen before.
+     * @param name a symbol name
+     * @return the id for name
+     */
+    public int id(String name) {
+        int h = name.hashCode();
+        int id = find(h, name, 0, name.length());
+        return id >= 0 ? id : add(h, name);
+    }
+
+    /**
+     * Gets the id for the given name without adding it.
+     * @param name a symbol name
+     * @return the id for name, or -1 if it has not been added
+     */
+    public int find(String name) {
+        return find(name.hashCode(), name, 0, name.length());
+    }
+
+    /**
+     * @param id an id returned by {@link #id(String)} or {@link #id(CharSequence, int, int)}
+     * @return the name with that id
+     */
+    public String name(int id) {
+        if (id < offset)
+            return parent.name(id);
+        return names[id - offset];
+    }
+
+    /**
+     * @return how many names have been given ids, including the parent's
+     */
+    public int size() {
+        return offset + size;
+    }
+
+    private int find(int h, CharSequence text, int start, int end) {
+        if (parent != null) {
+            int id = parent.find(h, text, start, end);
+            if (id >= 0)
+                return id;
+        }
+        final int len = end - start;
+        OUTER:
+        for (int s = mix(h) & mask; slots[s] != 0; s = s + 1 & mask) {
+            int id = slots[s] - 1;
+            String name = names[id];
+            if (hashes[id] != h || name.length() != len)
+                continue;
+            for (int i = 0; i < len; i++) {
+                if (name.charAt(i) != text.charAt(start + i))
+                    continue OUTER;
+            }
+            return id + offset;
+        }
+        return -1;
+    }
+
+    private int add(int h, String name) {
+        if (size == names.length)
+            grow();
+        int id = size++;
+        names[id] = name;
+        hashes[id] = h;
+        place(h, id);
+        return id + offset;
+    }
+
+    private void place(int h, int id) {
+        int s = mix(h) & mask;
+        while (slots[s] != 0)
+            s = s + 1 & mask;
+        slots[s] = id + 1;
+    }
+
+    private void grow() {
+        String[] n = new String[names.length << 1];
+        System.arraycopy(names, 0, n, 0, size);
+        names = n;
+        int[] h = new int[n.length];
+        System.arraycopy(hashes, 0, h, 0, size);
+        hashes = h;
+        slots = new int[slots.length << 1];
+        mask = slots.length - 1;
+        for (int i = 0; i < size; i++) {
+            place(hashes[i], i);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package lang.celadon;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a {@link Program}, counting how many times it has run and moving to a faster form when the counts pass the
+ * thresholds in its {@link Tiering}: first a {@link Tree}, then whatever {@link Tiering#compiler} makes. Every form
+ * gives the same results in {@link Manager#exchange}, so callers can't tell when a promotion happens. Promotions are
+ * done by whichever thread runs the expression when it crosses a threshold, using that thread's Manager. If a form
+ * can't be made, which can depend on that Manager's bindings, the expression stays where it is and tries again once
+ * it has run twice as many times as it had when it failed. Like a Program, this can be shared between Managers and
+ * threads.
+ */
+public class TieredExpression implements CompiledExpression {
+    public final Program program;
+    public final Tiering tiering;
+
+    private final AtomicLong invocations = new AtomicLong();
+    private volatile CompiledExpression current;
+    private volatile int tier = Tiering.INTERPRETED;
+    // 0, or the count a promotion failed at times 2; no promotion is tried before this count
+    private volatile long retry;
+    private Tree tree;
+
+    public TieredExpression(Program program, Tiering tiering) {
+        this.program = program;
+        this.tiering = tiering;
+        current = program;
+        tiering.created();
+    }
+
+    @Override
+    public void run(Manager manager) {
+        final long n = invocations.incrementAndGet();
+        if (due(n))
+            promote(manager, n);
+        current.run(manager);
+    }
+
+    private boolean due(long n) {
+        return n >= retry && (tier == Tiering.INTERPRETED ? n >= tiering.treeThreshold
+                : tier == Tiering.TREE && tiering.compiler != null && n >= tiering.compileThreshold);
+    }
+
+    private synchronized void promote(Manager manager, long n) {
+        // another thread may have promoted this, or failed to, while we waited
+        if (!due(n))
+            return;
+        if (tier == Tiering.INTERPRETED) {
+            Tree t = new Tree(program, manager);
+            if (!t.isTree()) {
+                failed(Tiering.INTERPRETED, n);
+                return;
+            }
+            tree = t;
+            current = t;
+            tier = Tiering.TREE;
+            retry = 0L;
+            tiering.promoted(this, Tiering.TREE, true);
+        } else {
+            CompiledExpression c = tiering.compiler.compile(tree, manager);
+            if (c == null || c == tree) {
+                failed(Tiering.TREE, n);
+                return;
+            }
+            current = c;
+            tier = Tiering.COMPILED;
+            retry = 0L;
+            tiering.promoted(this, Tiering.COMPILED, true);
+        }
+    }
+
+    private void failed(int tier, long n) {
+        retry = n > Long.MAX_VALUE >> 1 ? Long.MAX_VALUE : Math.max(n, 1L) << 1;
+        tiering.promoted(this, tier, false);
+    }
+
+    /**
+     * @return how many times this has run
+     */
+    public long invocations() {
+        return invocations.get();
+    }
+
+    /**
+     * @return the tier this is at now, one of {@link Tiering#INTERPRETED}, {@link Tiering#TREE}, or
+     * {@link Tiering#COMPILED}
+     */
+    public int tier() {
+        return tier;
+    }
+
+    /**
+     * @return the form this runs now, which is {@link #program} until it is promoted
+     */
+    public CompiledExpression current() {
+        return current;
+    }
+}
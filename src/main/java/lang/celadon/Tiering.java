@@ -0,0 +1,113 @@
+package lang.celadon;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Settings and counters for {@link TieredExpression}s, which start out running their {@link Program} and move to
+ * faster forms once they have run often enough. A {@link Manager} has one in {@link Manager#tiering}, used by
+ * {@link Manager#compileTiered(CharSequence)}; several Managers can share one to pool their counts.
+ * <br>
+ * After {@link #treeThreshold} runs, an expression builds a {@link Tree}; after {@link #compileThreshold} runs, it
+ * gives that Tree to {@link #compiler}, if one is set. On the JVM, {@link BytecodeCompiler#TIER} can be used there.
+ * The thresholds can be changed at any time; expressions check them each time they run.
+ */
+public class Tiering {
+    /**
+     * The tiers an expression can be at, from slowest to fastest.
+     */
+    public static final int INTERPRETED = 0, TREE = 1, COMPILED = 2;
+
+    /**
+     * Makes the top tier of an expression from its Tree.
+     */
+    public interface Compiler {
+        /**
+         * @param tree the expression's Tree, which is always a tree
+         * @param manager the Manager running the expression when it crossed the threshold
+         * @return a faster form of the same code, or tree itself if it can't do better
+         */
+        CompiledExpression compile(Tree tree, Manager manager);
+    }
+
+    /**
+     * Hears about promotions as they happen, on whatever thread ran the expression that was promoted.
+     */
+    public interface Listener {
+        /**
+         * @param expression the expression that was promoted, or that tried to be
+         * @param tier the tier it moved to, or the tier it stays at if it couldn't move
+         * @param promoted true if it moved to tier, or false if it tried and stays where it is until it has run
+         *                 twice as many times
+         */
+        void promoted(TieredExpression expression, int tier, boolean promoted);
+    }
+
+    /**
+     * How many runs an expression takes before it builds a Tree; 0 or 1 builds one on the first run.
+     */
+    public int treeThreshold = 64;
+    /**
+     * How many runs an expression takes before it is given to {@link #compiler}; should be at least
+     * {@link #treeThreshold}.
+     */
+    public int compileThreshold = 10000;
+    /**
+     * Makes the top tier, or null (the default) to stop at trees.
+     */
+    public Compiler compiler;
+    /**
+     * Told about each promotion, if non-null.
+     */
+    public Listener listener;
+
+    private final AtomicLong expressions = new AtomicLong(), failures = new AtomicLong(),
+            trees = new AtomicLong(), compiled = new AtomicLong();
+
+    /**
+     * @return how many TieredExpressions have been made with this
+     */
+    public long expressions() {
+        return expressions.get();
+    }
+
+    /**
+     * @param tier {@link #TREE} or {@link #COMPILED}
+     * @return how many expressions have been promoted to that tier
+     */
+    public long promotions(int tier) {
+        return tier == TREE ? trees.get() : tier == COMPILED ? compiled.get() : 0L;
+    }
+
+    /**
+     * @return how many times an expression tried to move to a faster tier and couldn't, so it stayed where it was
+     */
+    public long failures() {
+        return failures.get();
+    }
+
+    /**
+     * Sets all of the counters back to 0, without changing any settings.
+     */
+    public void resetCounts() {
+        expressions.set(0L);
+        failures.set(0L);
+        trees.set(0L);
+        compiled.set(0L);
+    }
+
+    void created() {
+        expressions.incrementAndGet();
+    }
+
+    void promoted(TieredExpression expression, int tier, boolean promoted) {
+        if (!promoted)
+            failures.incrementAndGet();
+        else if (tier == TREE)
+            trees.incrementAndGet();
+        else
+            compiled.incrementAndGet();
+        Listener l = listener;
+        if (l != null)
+            l.promoted(expression, tier, promoted);
+    }
+}
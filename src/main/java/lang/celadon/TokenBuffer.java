@@ -0,0 +1,192 @@
+package lang.celadon;
+
+import java.util.List;
+
+/**
+ * A list of tokens stored as parallel primitive arrays instead of as Cels, so a token takes up a few dozen bytes in
+ * five arrays rather than a Cel, a String, and usually a boxed value, each a separate object. Each token (row) has a
+ * kind (a constant from {@link Lexer}, such as {@link Lexer#INT}), the start and end of its title in {@link #text},
+ * a payload holding the value of a number or char literal, and a symbol id from {@link #symbols} if it is a symbol.
+ * <br>
+ * {@link Lexer#tokenize(CharSequence, int, int, TokenBuffer)} fills one of these, {@link Manager#shunt(TokenBuffer,
+ * TokenBuffer)} rearranges one into reverse Polish notation, and {@link Manager#load(TokenBuffer)} turns the result into
+ * Cels, so Cels are only made once the tokens are handed to the evaluator.
+ */
+public class TokenBuffer {
+    /**
+     * The source text that {@link #starts} and {@link #ends} point into.
+     */
+    public CharSequence text = "";
+    /**
+     * Names the symbols in this buffer; shared with other buffers (and a Manager) so ids mean the same thing in each.
+     */
+    public final SymbolTable symbols;
+    /**
+     * How many tokens are stored; only this many items of each array are used.
+     */
+    public int size;
+    /**
+     * The kind of each token, as a constant from {@link Lexer}.
+     */
+    public int[] kinds;
+    /**
+     * The start (inclusive) and end (exclusive) of each token's title in {@link #text}; for numbers, the end leaves
+     * off any type suffix, the same as the title of the Cel {@link Lexer#cel()} would make.
+     */
+    public int[] starts, ends;
+    /**
+     * The symbol id of each {@link Lexer#SYMBOL} token, or -1 for other kinds; shunting also gives an
+     * {@link Lexer#ACCESS} token followed by a method name the id of that name, to mark it as a method call.
+     */
+    public int[] ids;
+    /**
+     * The value of each number or char token: the value itself for {@link Lexer#INT}, {@link Lexer#LONG}, and
+     * {@link Lexer#CHAR}, or the bits from {@link Double#doubleToRawLongBits(double)} for {@link Lexer#FLOAT} and
+     * {@link Lexer#DOUBLE}; 0 for other kinds.
+     */
+    public long[] payloads;
+
+    public TokenBuffer(SymbolTable symbols) {
+        this(symbols, 64);
+    }
+
+    public TokenBuffer(SymbolTable symbols, int capacity) {
+        this.symbols = symbols;
+        capacity = Math.max(capacity, 4);
+        kinds = new int[capacity];
+        starts = new int[capacity];
+        ends = new int[capacity];
+        ids = new int[capacity];
+        payloads = new long[capacity];
+    }
+
+    /**
+     * Removes all tokens, keeping the arrays at their current size, and sets the text new tokens will point into.
+     * @param text the source text for the tokens that will be added
+     */
+    public void clear(CharSequence text) {
+        this.text = text;
+        size = 0;
+    }
+
+    /**
+     * Appends a token.
+     * @return the index of the new token
+     */
+    public int add(int kind, int start, int end, long payload, int id) {
+        if (size == kinds.length)
+            grow();
+        kinds[size] = kind;
+        starts[size] = start;
+        ends[size] = end;
+        payloads[size] = payload;
+        ids[size] = id;
+        return size++;
+    }
+
+    /**
+     * Appends a copy of a token from another buffer with the same {@link #text} and {@link #symbols}.
+     * @param other the buffer to copy from; may be this buffer
+     * @param index the index of the token in other
+     * @return the index of the new token
+     */
+    public int add(TokenBuffer other, int index) {
+        return add(other.kinds[index], other.starts[index], other.ends[index], other.payloads[index],
+                other.ids[index]);
+    }
+
+    private void grow() {
+        int capacity = kinds.length << 1;
+        int[] t = new int[capacity];
+        System.arraycopy(kinds, 0, t, 0, size);
+        kinds = t;
+        t = new int[capacity];
+        System.arraycopy(starts, 0, t, 0, size);
+        starts = t;
+        t = new int[capacity];
+        System.arraycopy(ends, 0, t, 0, size);
+        ends = t;
+        t = new int[capacity];
+        System.arraycopy(ids, 0, t, 0, size);
+        ids = t;
+        long[] p = new long[capacity];
+        System.arraycopy(payloads, 0, p, 0, size);
+        payloads = p;
+    }
+
+    /**
+     * @param index the index of a {@link Lexer#SYMBOL} token
+     * @return the symbol's name, which is shared and not copied
+     */
+    public String name(int index) {
+        return symbols.name(ids[index]);
+    }
+
+    /**
+     * Creates a Cel for the token at the given index, the same as the one {@link Lexer#cel()} would have made for it,
+     * except that this does not use an {@link Interner}. Symbols become unresolved symbol Cels.
+     * @param index the index of a token
+     * @return a new or shared Cel for that token
+     */
+    public Cel cel(int index) {
+        final int start = starts[index], end = ends[index];
+        final long payload = payloads[index];
+        switch (kinds[index]) {
+            case Lexer.OPEN_PARENTHESIS:
+                return Cel.openParenthesis;
+            case Lexer.OPEN_BRACE:
+                return Cel.openBrace;
+            case Lexer.OPEN_BRACKET:
+                return Cel.openBracket;
+            case Lexer.CLOSE_PARENTHESIS:
+                return Cel.closeParenthesis;
+            case Lexer.CLOSE_BRACE:
+                return Cel.closeBrace;
+            case Lexer.CLOSE_BRACKET:
+                return Cel.closeBracket;
+            case Lexer.GAP:
+                return Cel.gap;
+            case Lexer.NOW:
+                return Cel.now;
+            case Lexer.ACCESS:
+                if (ids[index] >= 0) {
+                    final String name = symbols.name(ids[index]);
+                    return new Cel("." + name, new CallSite(name));
+                }
+                return Cel.access;
+            case Lexer.EMPTY:
+                return Cel.empty;
+            case Lexer.STRING:
+                return new Cel(text.subSequence(start, end).toString(),
+                        text.subSequence(start + 1, end - 1).toString());
+            case Lexer.CHAR: {
+                Cel escape = (end - start == 4) ? Lexer.escape(text.charAt(start + 2)) : null;
+                return escape != null ? escape : new Cel(text.subSequence(start, end).toString(), (char) payload);
+            }
+            case Lexer.FLOAT:
+                return new Cel(text.subSequence(start, end).toString(), (float) Double.longBitsToDouble(payload));
+            case Lexer.DOUBLE:
+                return new Cel(text.subSequence(start, end).toString(), Double.longBitsToDouble(payload));
+            case Lexer.LONG:
+                return new Cel(text.subSequence(start, end).toString(), payload);
+            case Lexer.INT:
+                if (payload >= -128 && payload < 1024
+                        && end - start == Cel.smallInts[(int) payload + 128].title.length())
+                    return Cel.smallInts[(int) payload + 128];
+                return new Cel(text.subSequence(start, end).toString(), (int) payload);
+            case Lexer.SYMBOL:
+                return new Cel(symbols.name(ids[index]), Syntax.SYMBOL);
+        }
+        return null;
+    }
+
+    /**
+     * Appends a Cel for each token, from {@link #cel(int)}, to the given List.
+     * @param cels a List that will have Cels appended to it
+     */
+    public void cels(List<Cel> cels) {
+        for (int i = 0; i < size; i++) {
+            cels.add(cel(i));
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package lang.celadon;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Pulls tokens one at a time from a {@link Reader} or a {@link ReadableByteChannel}, reading the source in fixed-size
+ * chunks instead of holding all of it in memory. Tokens can span chunk boundaries; a token that is longer than the
+ * chunk size (such as a long string or block comment) makes the buffer grow to fit it, so memory use is bounded by the
+ * longest single token rather than the size of the input. Line comments are skipped without being buffered at all.
+ * <br>
+ * This produces the same tokens as {@link Manager#tokenize(CharSequence)}, and can hand them straight to a Manager's
+ * shunting-yard stage with {@link #shunt(Manager)}, without building the whole token list first.
+ */
+public class TokenStream {
+    /**
+     * The default number of chars read at a time.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 8192;
+
+    public final Reader reader;
+    public final Lexer lexer = new Lexer();
+    private final Chunk chunk;
+    private int length;
+    private long consumed;
+    private boolean complete;
+    private Cel pending;
+
+    public TokenStream(Reader reader) {
+        this(reader, DEFAULT_CHUNK_SIZE);
+    }
+
+    public TokenStream(Reader reader, int chunkSize) {
+        this.reader = reader;
+        chunk = new Chunk(new char[Math.max(1, chunkSize)]);
+        lexer.resume(chunk, 0, 0, false);
+    }
+
+    /**
+     * Reads bytes from the given channel, decoding them with the given Charset (usually UTF-8).
+     * @param channel a readable channel, such as a FileChannel or a socket
+     * @param charset the Charset to decode the channel's bytes with
+     */
+    public TokenStream(ReadableByteChannel channel, Charset charset) {
+        this(Channels.newReader(channel, charset.newDecoder(), -1), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Scans to the next token, reading more of the source whenever the Lexer needs it.
+     * @return the kind of token found, as a constant from {@link Lexer}, or {@link Lexer#END} at the end of input
+     */
+    private int advance() throws IOException {
+        int k;
+        while ((k = lexer.scan()) == Lexer.MORE)
+            fill();
+        return k;
+    }
+
+    private void fill() throws IOException {
+        int keep = lexer.position, remaining = length - keep;
+        char[] buffer = chunk.chars;
+        if (keep > 0) {
+            System.arraycopy(buffer, keep, buffer, 0, remaining);
+            consumed += keep;
+        } else if (remaining == buffer.length) {
+            char[] next = new char[buffer.length << 1];
+            System.arraycopy(buffer, 0, next, 0, remaining);
+            chunk.chars = buffer = next;
+        }
+        length = remaining;
+        int n = reader.read(buffer, length, buffer.length - length);
+        if (n < 0)
+            complete = true;
+        else
+            length += n;
+        lexer.atStart = consumed == 0;
+        lexer.resume(chunk, 0, length, complete);
+    }
+
+    /**
+     * Gets the next token, merging {@code (} followed by {@code )} into {@link Cel#empty} like
+     * {@link Manager#tokenize(CharSequence)} does.
+     * @return the next token as a Cel, or null if the input has been fully read
+     * @throws IOException if the Reader or channel throws one
+     */
+    public Cel next() throws IOException {
+        int k;
+        if (pending != null) {
+            Cel p = pending;
+            pending = null;
+            if (p != Cel.openParenthesis)
+                return p;
+            k = Lexer.OPEN_PARENTHESIS;
+        } else
+            k = advance();
+        if (k == Lexer.END)
+            return null;
+        if (k != Lexer.OPEN_PARENTHESIS)
+            return lexer.cel();
+        k = advance();
+        if (k == Lexer.CLOSE_PARENTHESIS)
+            return Cel.empty;
+        if (k != Lexer.END)
+            pending = lexer.cel();
+        return Cel.openParenthesis;
+    }
+
+    /**
+     * Passes every remaining token to {@link Manager#shunt(Cel)} as it is read, then calls
+     * {@link Manager#endShunt()}, so the output is in the Manager's {@link Manager#items}, ready to be evaluated.
+     * @param manager the Manager that will receive the tokens
+     * @return the number of tokens read
+     * @throws IOException if the Reader or channel throws one
+     */
+    public int shunt(Manager manager) throws IOException {
+        int count = 0;
+        Cel c;
+        while ((c = next()) != null) {
+            manager.shunt(c);
+            ++count;
+        }
+        manager.endShunt();
+        return count;
+    }
+
+    /**
+     * Closes the Reader or channel this reads from.
+     * @throws IOException if the Reader or channel throws one
+     */
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * A CharSequence view of the buffer, so the Lexer can read it without copying; subSequence() copies into a new
+     * String, because the buffer will be overwritten by the next chunk.
+     */
+    private static final class Chunk implements CharSequence {
+        char[] chars;
+
+        Chunk(char[] chars) {
+            this.chars = chars;
+        }
+
+        @Override
+        public int length() {
+            return chars.length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return chars[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(chars, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars);
+        }
+    }
+}
@@ -0,0 +1,471 @@
+package lang.celadon;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A {@link Program} turned into a tree of small node objects, one for each literal, symbol, and operator, so running
+ * it is a series of plain virtual calls instead of a loop that looks at each item. Arithmetic nodes pass longs and
+ * doubles to each other directly, as {@link Manager#evaluate()} does with {@link Manager#primitiveArithmetic}, and the
+ * results are the same as running the Program. A chain of the same operator that the Program runs as one call becomes
+ * one {@link Chain} node for a {@link Variadic} operator, or a row of Arithmetic nodes, which pass primitives along
+ * without boxing, for an Arithmetic.
+ * <br>
+ * The tree is built with the operators bound when it is made. Before each run, it checks that those symbols are still
+ * bound to the same Procedurals, and that every other symbol it uses is bound to something that isn't a Procedural;
+ * if not, or if the Program couldn't be made into a tree at all, it runs the Program instead. A Program can't be made
+ * into a tree if it uses symbols that were unbound when the tree was built, if it is nested too deeply, or if an
+ * operator's left operand comes from a Procedural that isn't {@link Arithmetic}, since then the operator may be unary
+ * or binary depending on that result. Those checks are skipped when the Manager's {@link Manager#version()} hasn't
+ * changed since they last passed on it. Like a Program, a Tree never changes after it is made, other than remembering
+ * where it last fit (without keeping that Manager reachable), and can be shared.
+ * <br>
+ * Like a Program, a Tree resolves every symbol it uses before it runs anything, so a Procedural that rebinds a symbol
+ * while the code runs doesn't change the value that symbol has in this run.
+ */
+public class Tree implements CompiledExpression {
+    /**
+     * Trees nested deeper than this are not built, so running them can't overflow the stack.
+     */
+    public static final int MAX_DEPTH = 512;
+
+    static final int CEL = 0, LONG = 1, DOUBLE = 2;
+
+    public final Program program;
+    private final Node[] roots;
+    // the symbols checked before each run, and what each operator symbol must still be bound to (null for operands)
+    private final int[] checkIds;
+    private final String[] checkNames;
+    private final Object[] checkRefs;
+    // the Manager this last fit, weakly, and its version then
+    private volatile Fit fit;
+
+    /**
+     * Builds a tree for program, using the bindings in manager to tell operators apart from other symbols.
+     * @param program a Program, usually from {@link Manager#compile(CharSequence)}
+     * @param manager the Manager whose bindings decide which symbols are operators
+     */
+    public Tree(Program program, Manager manager) {
+        this.program = program;
+        final int size = program.size();
+        final Node[] stack = new Node[size];
+        final ArrayList<Integer> ids = new ArrayList<>(16);
+        final ArrayList<Object> refs = new ArrayList<>(16);
+        final boolean sameSymbols = manager.symbols == program.symbols;
+        int top = 0, id, count = 0, chained;
+        Cel item;
+        Node left, right;
+        BUILD:
+        {
+            for (int i = 0; i < size; i++) {
+                item = program.get(i);
+                id = program.id(i);
+                if (item.ref instanceof Flattener.Count) {
+                    count = ((Flattener.Count) item.ref).count;
+                    continue;
+                }
+                chained = count;
+                count = 0;
+                if (id < 0) {
+                    if (item.ref instanceof Procedural)
+                        break BUILD;
+                    stack[top++] = new Literal(item);
+                    continue;
+                }
+                Cel resolved = sameSymbols ? manager.resolve(id) : manager.resolve(item.title);
+                if (resolved == null)
+                    break BUILD;
+                if (!ids.contains(id)) {
+                    ids.add(id);
+                    refs.add(resolved.ref instanceof Procedural ? resolved.ref : null);
+                }
+                if (!(resolved.ref instanceof Procedural)) {
+                    stack[top++] = new Symbol(program.symbols, id, item.title, ids.indexOf(id));
+                    continue;
+                }
+                if (top < 1)
+                    break BUILD;
+                if (chained > 1) {
+                    if (chained > top)
+                        break BUILD;
+                    top -= chained;
+                    stack[top] = chain((Procedural) resolved.ref, Arrays.copyOfRange(stack, top, top + chained));
+                    if (stack[top++].depth > MAX_DEPTH)
+                        break BUILD;
+                    continue;
+                }
+                left = null;
+                if (top >= 2) {
+                    left = stack[top - 2];
+                    if (left instanceof Literal) {
+                        Object ref = ((Literal) left).cel.ref;
+                        if (ref instanceof Procedural || Syntax.CLOSE_PARENTHESIS.equals(ref))
+                            left = null;
+                    } else if (left instanceof Call)
+                        break BUILD;
+                }
+                right = stack[--top];
+                if (left != null)
+                    --top;
+                Procedural p = (Procedural) resolved.ref;
+                if (p instanceof Arithmetic && (left != null || ((Arithmetic) p).hasUnary()))
+                    stack[top] = new Arith((Arithmetic) p, left, right);
+                else
+                    stack[top] = new Call(p, left, right);
+                if (stack[top++].depth > MAX_DEPTH)
+                    break BUILD;
+            }
+            roots = new Node[top];
+            System.arraycopy(stack, 0, roots, 0, top);
+            checkIds = new int[ids.size()];
+            checkNames = new String[ids.size()];
+            checkRefs = refs.toArray();
+            for (int i = 0; i < checkIds.length; i++) {
+                checkIds[i] = ids.get(i);
+                checkNames[i] = program.symbols.name(checkIds[i]);
+            }
+            return;
+        }
+        roots = null;
+        checkIds = null;
+        checkNames = null;
+        checkRefs = null;
+    }
+
+    /**
+     * Makes the node for a chain of p run on args, grouped to the right, as {@link Manager#evaluate()} runs it.
+     */
+    private static Node chain(Procedural p, Node[] args) {
+        if (p instanceof Variadic && !(p instanceof Arithmetic))
+            return new Chain((Variadic) p, args);
+        Node node = args[args.length - 1];
+        for (int i = args.length - 2; i >= 0; i--) {
+            node = (p instanceof Arithmetic) ? new Arith((Arithmetic) p, args[i], node) : new Call(p, args[i], node);
+        }
+        return node;
+    }
+
+    /**
+     * @return true if this was built as a tree; if false, {@link #run(Manager)} always runs {@link #program}
+     */
+    public boolean isTree() {
+        return roots != null;
+    }
+
+    /**
+     * Runs this, appending the results to the Manager's {@link Manager#exchange} and leaving them in its
+     * {@link Manager#items}, the same as {@link Program#run(Manager)} would. If the tree doesn't fit the Manager's
+     * current bindings, this runs {@link #program} instead.
+     * @param manager the Manager that provides bindings for symbols and receives the results
+     */
+    @Override
+    public void run(Manager manager) {
+        if (!fits(manager)) {
+            program.run(manager);
+            return;
+        }
+        // resolve the symbols first, as a Program does, and keep them above any a running Tree or Chain is using
+        final int from = manager.argumentCount, end = from + checkIds.length, base = manager.symbolBase;
+        if (manager.arguments.length < end)
+            manager.arguments = Arrays.copyOf(manager.arguments, Math.max(end, manager.arguments.length << 1));
+        final boolean sameSymbols = manager.symbols == program.symbols;
+        Cel c;
+        for (int i = 0; i < checkIds.length; i++) {
+            if (checkRefs[i] != null)
+                continue;
+            c = sameSymbols ? manager.resolve(checkIds[i]) : manager.resolve(checkNames[i]);
+            if (c == null) {
+                Arrays.fill(manager.arguments, from, end, null);
+                program.run(manager);
+                return;
+            }
+            manager.arguments[from + i] = c;
+        }
+        manager.argumentCount = end;
+        manager.symbolBase = from;
+        try {
+            ArrayList<Cel> items = manager.items;
+            items.clear();
+            for (int i = 0; i < roots.length; i++) {
+                items.add(roots[i].cel(manager, roots[i].eval(manager)));
+            }
+            manager.exchange.addAll(items);
+        } finally {
+            Arrays.fill(manager.arguments, from, end, null);
+            manager.argumentCount = from;
+            manager.symbolBase = base;
+        }
+    }
+
+    /**
+     * @return the roots of the tree, in order, or null if this isn't a tree
+     */
+    Node[] roots() {
+        return roots;
+    }
+
+    /**
+     * Checks that the operators this was built with are still bound to the same Procedurals in manager, and that the
+     * other symbols it uses are bound to something that isn't a Procedural.
+     * @return true if the tree can run on manager
+     */
+    boolean fits(Manager manager) {
+        if (roots == null)
+            return false;
+        final Fit last = fit;
+        final int version = manager.version();
+        if (last != null && last.get() == manager && last.version == version)
+            return true;
+        final boolean sameSymbols = manager.symbols == program.symbols;
+        Cel c;
+        for (int i = 0; i < checkIds.length; i++) {
+            c = sameSymbols ? manager.resolve(checkIds[i]) : manager.resolve(checkNames[i]);
+            if (c == null)
+                return false;
+            if (checkRefs[i] == null) {
+                if (c.ref instanceof Procedural || Syntax.CLOSE_PARENTHESIS.equals(c.ref))
+                    return false;
+            } else if (checkRefs[i] != c.ref)
+                return false;
+        }
+        fit = new Fit(manager, version);
+        return true;
+    }
+
+    private static final class Fit extends WeakReference<Manager> {
+        final int version;
+
+        Fit(Manager manager, int version) {
+            super(manager);
+            this.version = version;
+        }
+    }
+
+    /**
+     * One node of the tree. {@link #eval(Manager)} leaves its result in the Manager's {@link Manager#celResult},
+     * {@link Manager#longResult}, or {@link Manager#doubleResult}, and returns which one it used.
+     */
+    abstract static class Node {
+        final int depth;
+
+        Node(int depth) {
+            this.depth = depth;
+        }
+
+        abstract int eval(Manager m);
+
+        final Cel cel(Manager m, int kind) {
+            switch (kind) {
+                case LONG: return Cel.value(m.longResult);
+                case DOUBLE: return Cel.value(m.doubleResult);
+                default: return m.celResult;
+            }
+        }
+    }
+
+    static final class Literal extends Node {
+        final Cel cel;
+
+        Literal(Cel cel) {
+            super(1);
+            this.cel = cel;
+        }
+
+        @Override
+        int eval(Manager m) {
+            m.celResult = cel;
+            return CEL;
+        }
+    }
+
+    /**
+     * Gives the value its symbol had when the Tree started running, which {@link Tree#run(Manager)} put at slot past
+     * the Manager's {@link Manager#symbolBase}.
+     */
+    static final class Symbol extends Node {
+        final SymbolTable symbols;
+        final int id;
+        final String name;
+        final int slot;
+
+        Symbol(SymbolTable symbols, int id, String name, int slot) {
+            super(1);
+            this.symbols = symbols;
+            this.id = id;
+            this.name = name;
+            this.slot = slot;
+        }
+
+        @Override
+        int eval(Manager m) {
+            m.celResult = m.arguments[m.symbolBase + slot];
+            return CEL;
+        }
+    }
+
+    /**
+     * Runs any Procedural on boxed Cels; left is null for a unary call, which gets {@link Cel#empty} on the left.
+     */
+    static final class Call extends Node {
+        final Procedural procedural;
+        final Node left, right;
+
+        Call(Procedural procedural, Node left, Node right) {
+            super(1 + Math.max(left == null ? 0 : left.depth, right.depth));
+            this.procedural = procedural;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        int eval(Manager m) {
+            Cel l = Cel.empty, r;
+            if (left != null) {
+                l = left.cel(m, left.eval(m));
+                if (left instanceof Call || left instanceof Chain)
+                    l = m.resolve(l);
+            }
+            r = right.cel(m, right.eval(m));
+            if (right instanceof Call || right instanceof Chain)
+                r = m.resolve(r);
+            m.celResult = procedural.run(l, r);
+            return CEL;
+        }
+    }
+
+    /**
+     * Runs an Arithmetic on primitives when both operands are numbers, or on Cels otherwise; left is null for the
+     * unary form.
+     */
+    static final class Arith extends Node {
+        final Arithmetic arithmetic;
+        final Node left, right;
+
+        Arith(Arithmetic arithmetic, Node left, Node right) {
+            super(1 + Math.max(left == null ? 0 : left.depth, right.depth));
+            this.arithmetic = arithmetic;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        int eval(Manager m) {
+            int lk = LONG, rk;
+            long ll = 0L, rl = 0L;
+            double ld = 0.0, rd = 0.0;
+            Cel lc = null, rc = null;
+            if (left != null) {
+                lk = left.eval(m);
+                if (lk == CEL) {
+                    lc = m.celResult;
+                    if (left instanceof Call || left instanceof Chain)
+                        lc = m.resolve(lc);
+                    if (!Cel.isNumeric(lc))
+                        lk = CEL;
+                    else if (Cel.isFloating(lc)) {
+                        lk = DOUBLE;
+                        ld = Core.asDouble(lc.ref);
+                    } else {
+                        lk = LONG;
+                        ll = Core.asLong(lc.ref);
+                    }
+                } else if (lk == LONG)
+                    ll = m.longResult;
+                else
+                    ld = m.doubleResult;
+            }
+            rk = right.eval(m);
+            if (rk == CEL) {
+                rc = m.celResult;
+                if (right instanceof Call || right instanceof Chain)
+                    rc = m.resolve(rc);
+                if (!Cel.isNumeric(rc))
+                    rk = CEL;
+                else if (Cel.isFloating(rc)) {
+                    rk = DOUBLE;
+                    rd = Core.asDouble(rc.ref);
+                } else {
+                    rk = LONG;
+                    rl = Core.asLong(rc.ref);
+                }
+            } else if (rk == LONG)
+                rl = m.longResult;
+            else
+                rd = m.doubleResult;
+
+            if (lk != CEL && rk != CEL) {
+                if (left == null) {
+                    if (rk == DOUBLE) {
+                        m.doubleResult = arithmetic.applyDouble(rd);
+                        return DOUBLE;
+                    }
+                    m.longResult = arithmetic.applyLong(rl);
+                    return LONG;
+                }
+                if (lk == DOUBLE || rk == DOUBLE) {
+                    m.doubleResult = arithmetic.applyDouble(lk == LONG ? ll : ld, rk == LONG ? rl : rd);
+                    return DOUBLE;
+                }
+                m.longResult = arithmetic.applyLong(ll, rl);
+                return LONG;
+            }
+            if (left == null)
+                lc = Cel.empty;
+            else if (lc == null)
+                lc = (lk == LONG) ? Cel.value(ll) : Cel.value(ld);
+            if (rc == null)
+                rc = (rk == LONG) ? Cel.value(rl) : Cel.value(rd);
+            m.celResult = arithmetic.run(lc, rc);
+            return CEL;
+        }
+    }
+
+    /**
+     * Runs a Variadic once on all of its operands, which are put in the Manager's {@link Manager#arguments} above any
+     * that a Chain further out is still using.
+     */
+    static final class Chain extends Node {
+        final Variadic variadic;
+        final Node[] args;
+
+        Chain(Variadic variadic, Node[] args) {
+            super(1 + depth(args));
+            this.variadic = variadic;
+            this.args = args;
+        }
+
+        private static int depth(Node[] args) {
+            int depth = 0;
+            for (int i = 0; i < args.length; i++) {
+                depth = Math.max(depth, args[i].depth);
+            }
+            return depth;
+        }
+
+        @Override
+        int eval(Manager m) {
+            final int from = m.argumentCount, end = from + args.length;
+            if (m.arguments.length < end)
+                m.arguments = Arrays.copyOf(m.arguments, Math.max(end, m.arguments.length << 1));
+            m.argumentCount = end;
+            try {
+                Node arg;
+                Cel c;
+                for (int i = 0; i < args.length; i++) {
+                    arg = args[i];
+                    c = arg.cel(m, arg.eval(m));
+                    if (arg instanceof Call || arg instanceof Chain)
+                        c = m.resolve(c);
+                    // a Chain inside arg may have made a bigger array, so this can't be kept in a local
+                    m.arguments[from + i] = c;
+                }
+                m.celResult = variadic.run(m.arguments, from, args.length);
+            } finally {
+                Arrays.fill(m.arguments, from, end, null);
+                m.argumentCount = from;
+            }
+            return CEL;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package lang.celadon;
+
+/**
+ * A Procedural that can also be run on any number of operands at once. When {@link Manager#compile(CharSequence)} sees
+ * a chain of the same Variadic operator, as in {@code a + b + c + d}, it makes the chain one call to
+ * {@link #run(Cel[], int, int)} on all of its operands, so there are no intermediate results. Shunting groups a chain
+ * written without parentheses to the right, as {@code a + (b + (c + d))}, and only chains grouped that way are joined,
+ * so the operator doesn't need to be associative.
+ * <br>
+ * The results of a Variadic should never be Procedurals, the same as for an {@link Arithmetic}, since the compiler
+ * counts on a chain's result being an operand and not an operator.
+ */
+public interface Variadic extends Procedural {
+    /**
+     * Runs this on count operands in args, starting at from; this must give the same result as running
+     * {@link #run(Cel, Cel)} on the last two operands, then on the one before them and that result, and so on back to
+     * the first. The operands are already resolved. The array may be a Manager's operand stack, so this must not change
+     * it or keep it.
+     * @param args holds the operands; only the part from {@code from} to {@code from + count} is used
+     * @param from the index of the first operand
+     * @param count how many operands there are; at least 2 when called by a Manager
+     * @return the result, as {@link #run(Cel, Cel)} would give it
+     */
+    Cel run(Cel[] args, int from, int count);
+}
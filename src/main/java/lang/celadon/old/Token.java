@@ -94,13 +94,34 @@ public class Token implements Serializable {
             "|({=eval}[:@])" +
             "|({=contents}[^\\s,\\\\:@`\\(\\)\\[\\]\\{\\}\"';#~]+)"
     );
-    public static final Matcher m = pattern.matcher();
-
     public static TList tokenize(CharSequence text)
     {
         return tokenize(text, 0, text.length());
     }
+
+    /**
+     * Tokenizes a section of text with a new Matcher for each call, so this can be called from multiple threads at once.
+     * @param text the source code to read
+     * @param start the first index to read, inclusive
+     * @param end the last index to read, exclusive
+     * @return a TList of the tokens found
+     */
     public static TList tokenize(CharSequence text, int start, int end)
+    {
+        return tokenize(pattern.matcher(), text, start, end);
+    }
+
+    /**
+     * Tokenizes a section of text using the given Matcher, which must have been made by {@link #pattern}. Callers that
+     * tokenize often can keep one Matcher per thread and avoid creating a new one each time; a Matcher must not be
+     * used by more than one thread at a time.
+     * @param m a Matcher from {@link #pattern}, owned by the calling thread
+     * @param text the source code to read
+     * @param start the first index to read, inclusive
+     * @param end the last index to read, exclusive
+     * @return a TList of the tokens found
+     */
+    public static TList tokenize(Matcher m, CharSequence text, int start, int end)
     {
         int len;
         if(text == null || (len = text.length()) == 0) return new TList(0);
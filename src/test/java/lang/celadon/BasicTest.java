@@ -3,6 +3,10 @@ package lang.celadon;
 import org.junit.Test;
 import squidpony.StringKit;
 
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+
 /**
  * Created by Tommy Ettinger on 1/3/2017.
  */
@@ -29,6 +33,50 @@ public class BasicTest {
         System.out.println(StringKit.join(", ", m.exchange));
 
     }
+
+    @Test
+    public void testLazyTitle() {
+        Manager m = new Manager();
+        m.tokenize("(-3 + 7) * 999 / 3 + 5 ");
+        m.shunt();
+        m.evaluate();
+        Cel result = (Cel) m.exchange.peekLast();
+        assertEquals(1337L, result.ref);
+        assertEquals(null, result.title);
+        assertEquals(new Cel(1337L), result);
+        assertEquals("1337", result.toString());
+        assertEquals("1337", result.getTitle());
+        assertEquals("1337", result.title);
+        assertEquals("null", Cel.value(null).getTitle());
+    }
+
+    public static final String[] samples = {
+            "[1, 0x2, 3.141592, alpha, 'hello, world!', 0x1.Ep1, 0xF.0p-2, `!`] (10)",
+            "[1, 0x2, 3.141592, alpha, 'hello, world!', 0x1.Ep1, ##0xF.0p-2, `!`]" +
+                    "\n(10 ~!block comment!~) ; this is also a comment\n null () ( ) :pause @:+",
+            "#!/usr/bin/env celadon\n(-3 + 7) * 999 / 3 + 5 ",
+            "-0x7FFFFFFFFFFFFFFFL 0b101L 0B11 +42 -7l 99999999999 1.5f 2.5e-3F -1e0f 1.0d 1.5e+10D NaN -Infinity NaNf",
+            "1.5x 1. 1.e5 1.5L 0x1g 0b102 5-3 x-3 a.b.c 3.x 0x.8p1 0x1.8p01 1.5e01 1.5e0",
+            "`a` `\\n` `\\t` `\\\\` `\\u0041` `\\u00` `\\q` ``` `\\` \"esc\\\"aped\" '' 'it''s' \"open",
+            "~~!nested ~!inner!~ still comment!~~ ~!!~ ~!unclosed ##  skipped kept ##, ## ##(a b) x;y ;z\n[{}]",
+            "sin cos tan +- -+5 + - * / % == <= @@ ::x .5 -.5 _under_score \u00FCn\u00EFc\u00F6d\u00E9 \uD834\uDD1E x\u00A0y",
+    };
+
+    @Test
+    public void testLexerMatchesRegex() {
+        Manager m = new Manager();
+        for (String sample : samples) {
+            m.tokenizeRegex(sample);
+            ArrayList<Cel> expected = m.tokens;
+            m.tokenize(sample);
+            ArrayList<Cel> actual = m.tokens;
+            assertEquals(sample, expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(sample, expected.get(i).title, actual.get(i).title);
+                assertEquals(sample, expected.get(i).ref, actual.get(i).ref);
+            }
+        }
+    }
 //    @Test
 //    public void testOld()
 //    {
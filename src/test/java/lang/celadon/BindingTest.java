@@ -0,0 +1,265 @@
+package lang.celadon;
+
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static lang.celadon.Scripts.run;
+
+/**
+ * Checks that chains of symbols resolve correctly as bindings change, and that cycles are refused when defined.
+ */
+public class BindingTest {
+
+    private static Cel alias(String target) {
+        return new Cel(target, Syntax.SYMBOL);
+    }
+
+    @Test
+    public void testChains() {
+        Manager m = new Manager();
+        m.learn("x", 1);
+        m.put("y", alias("x"));
+        m.put("z", alias("y"));
+        int z = m.symbols.id("z");
+        assertEquals(1, m.resolve(z).ref);
+        assertSame(m.resolve(z), m.resolve("z"));
+        int version = m.version();
+        assertSame(m.get("x"), m.resolve(z));
+        assertEquals(version, m.version());
+
+        m.learn("x", 2);
+        assertTrue(version != m.version());
+        assertEquals(2, m.resolve(z).ref);
+        m.remove("x");
+        assertEquals(1, m.resolve("z").ref);
+        m.remove("x");
+        assertNull(m.resolve(z));
+        assertNull(m.resolve("y"));
+        m.learn("x", 3);
+        assertEquals(3, m.resolve(z).ref);
+        m.put("y", alias("+"));
+        assertSame(Core.plus, m.resolve(z).ref);
+        m.clear();
+        assertNull(m.resolve(z));
+
+        m.learn("x", 4);
+        m.put("y", alias("x"));
+        assertEquals(12L, run(m, "y * 2 + y"));
+        m.learn("x", 5);
+        assertEquals(15L, run(m, "y * 2 + y"));
+    }
+
+    @Test
+    public void testCacheScope() {
+        Manager m = new Manager();
+        m.learn("x", 1);
+        m.put("y", alias("x"));
+        m.put("z", alias("y"));
+        int z = m.symbols.id("z");
+        assertEquals(1, m.resolve(z).ref);
+        int walks = m.walks;
+        m.learn("unrelated", 5);
+        m.remove("unrelated");
+        m.learn("x", 2);
+        assertEquals(2, m.resolve(z).ref);
+        assertEquals(walks, m.walks);
+
+        m.learn("w", 3);
+        m.put("y", alias("w"));
+        assertEquals(3, m.resolve(z).ref);
+        assertEquals(walks + 1, m.walks);
+        assertEquals(3, m.resolve(z).ref);
+        assertEquals(walks + 1, m.walks);
+        m.put("w", alias("x"));
+        assertEquals(2, m.resolve(z).ref);
+        assertEquals(walks + 2, m.walks);
+    }
+
+    @Test
+    public void testCycles() {
+        Manager m = new Manager();
+        try {
+            m.put("a", alias("a"));
+            fail("a symbol bound to itself should be refused");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertNull(m.get("a"));
+        m.put("a", alias("b"));
+        m.put("b", alias("c"));
+        try {
+            m.set("c", alias("a"));
+            fail("a cycle through three symbols should be refused");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertNull(m.get("c"));
+        m.learn("c", 7);
+        assertEquals(7, m.resolve("a").ref);
+
+        m.put("p", alias("q"));
+        m.learn("p", 8);
+        m.put("q", alias("p"));
+        assertEquals(8, m.resolve("q").ref);
+        try {
+            m.remove("p");
+            fail("showing p's older binding would make a cycle");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(8, m.resolve("p").ref);
+        assertEquals(8, m.resolve("q").ref);
+
+        try {
+            new Library(new String[]{"self"}, new Object[]{Syntax.SYMBOL});
+            fail("a Library can't bind a name to itself");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testOtherMutators() {
+        Manager m = new Manager();
+        m.put("p", alias("q"));
+        m.learn("p", 8);
+        m.put("q", alias("p"));
+        try {
+            m.removeAt(position(m, "p"));
+            fail("removing p's newer binding by index would make a cycle");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(8, m.resolve("q").ref);
+
+        m.learn("r", 1);
+        m.put("s", alias("r"));
+        int s = m.symbols.id("s");
+        assertEquals(1, m.resolve(s).ref);
+        int version = m.version();
+        m.removeAt(m.size() - 2);
+        assertTrue(version != m.version());
+        assertNull(m.resolve(s));
+        assertNull(m.binding(m.symbols.id("r")));
+        m.learn("r", 2);
+        m.removeAt(m.size() - 2);
+        assertNull(m.get("s"));
+        assertNull(m.binding(s));
+        m.removeLast();
+        assertNull(m.binding(m.symbols.id("r")));
+        m.learn("r", 2);
+
+        assertEquals(2, m.resolve("r").ref);
+        assertTrue(m.keySet().remove("r"));
+        assertNull(m.binding(m.symbols.id("r")));
+    }
+
+    @Test
+    public void testRename() {
+        Manager m = new Manager();
+        m.learn("x", 1);
+        m.put("y", alias("x"));
+        int x = m.symbols.id("x"), y = m.symbols.id("y"), z = m.symbols.id("z");
+        assertEquals(1, m.resolve(y).ref);
+        int before = position(m, "x");
+        assertEquals(1, m.alter("x", "z").ref);
+        assertEquals(before, position(m, "z"));
+        assertNull(m.binding(x));
+        assertEquals(1, m.binding(z).ref);
+        assertNull(m.resolve(y));
+        m.put("y", alias("z"));
+        assertEquals(1, m.resolve(y).ref);
+
+        m.put("v", alias("y"));
+        try {
+            m.alter("v", "z");
+            fail("z bound to y, which leads back to z, would be a cycle");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(1, m.resolve("v").ref);
+        assertEquals(1, m.binding(z).ref);
+
+        m.put("p", alias("q"));
+        m.learn("p", 8);
+        m.put("q", alias("p"));
+        try {
+            m.alter("p", "t");
+            fail("showing p's older binding would make a cycle");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(8, m.resolve("q").ref);
+        assertNull(m.binding(m.symbols.id("t")));
+    }
+
+    @Test
+    public void testViews() {
+        Manager m = new Manager();
+        m.learn("x", 1);
+        m.learn("x", 2);
+        m.put("y", alias("x"));
+        int x = m.symbols.id("x"), y = m.symbols.id("y");
+        assertEquals(2, m.resolve(y).ref);
+        Iterator<Map.Entry<String, Cel>> it = m.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Cel> e = it.next();
+            if (e.getValue().ref.equals(2))
+                it.remove();
+        }
+        assertEquals(2, m.size());
+        assertEquals(1, m.binding(x).ref);
+        assertEquals(1, m.resolve(y).ref);
+
+        for (Map.Entry<String, Cel> e : m.entrySet()) {
+            if ("x".equals(e.getKey()))
+                e.setValue(Cel.value(5));
+        }
+        assertEquals(5, m.binding(x).ref);
+        assertEquals(5, m.resolve(y).ref);
+        for (Map.Entry<String, Cel> e : m.entrySet()) {
+            if ("x".equals(e.getKey())) {
+                try {
+                    e.setValue(alias("y"));
+                    fail("x bound to y, which is bound to x, would be a cycle");
+                } catch (IllegalArgumentException expected) {
+                }
+            }
+        }
+        assertEquals(5, m.resolve(y).ref);
+
+        Iterator<Cel> values = m.values().iterator();
+        while (values.hasNext()) {
+            if (values.next().ref.equals(5))
+                values.remove();
+        }
+        assertNull(m.binding(x));
+        assertNull(m.resolve(y));
+        assertEquals(1, m.size());
+    }
+
+    // where in iteration order the binding get() gives for name is
+    private static int position(Manager m, String name) {
+        for (int i = 0; i < m.size(); i++) {
+            if (m.getAt(i) == m.get(name))
+                return i;
+        }
+        return -1;
+    }
+
+    @Test
+    public void testLongChains() {
+        Manager m = new Manager();
+        m.learn("s0", 9);
+        for (int i = 1; i <= 256; i++) {
+            m.put("s" + i, alias("s" + (i - 1)));
+        }
+        assertEquals(9, m.resolve("s256").ref);
+        try {
+            m.put("s257", alias("s256"));
+            fail("a chain longer than resolve() follows should be refused");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertNull(m.get("s257"));
+    }
+}
@@ -0,0 +1,124 @@
+package lang.celadon;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static lang.celadon.Scripts.results;
+
+/**
+ * Checks that code compiled to bytecode gives the same results as the Program it came from, and falls back when it
+ * can't run.
+ */
+public class BytecodeCompilerTest {
+
+    @Test
+    public void testSameResults() {
+        Manager m = new Manager();
+        m.learn("x", 41);
+        m.learn("y", 2.5f);
+        m.learn("yes", true);
+        m.learn("big", 9223372036854775807L);
+        m.learn("max", new Arithmetic(11) {
+            @Override
+            public long applyLong(long left, long right) {
+                return Math.max(left, right);
+            }
+
+            @Override
+            public double applyDouble(double left, double right) {
+                return Math.max(left, right);
+            }
+        });
+        // a basic operation whose unary form isn't negation, so only its binary form can be a single instruction
+        m.learn("plus", new Arithmetic(11, Arithmetic.ADD) {
+            @Override
+            public long applyLong(long left, long right) {
+                return left + right;
+            }
+
+            @Override
+            public double applyDouble(double left, double right) {
+                return left + right;
+            }
+
+            @Override
+            public boolean hasUnary() {
+                return true;
+            }
+
+            @Override
+            public long applyLong(long right) {
+                return Math.abs(right);
+            }
+
+            @Override
+            public double applyDouble(double right) {
+                return Math.abs(right);
+            }
+        });
+        String[] sources = {
+                "- x + 7",
+                "plus (50 - x) plus 1",
+                "plus (y + 1.0)",
+                "-(x * 3) - y",
+                "1 'two' x x * 2",
+                "x * (y + 3) - 4 * 0.5",
+                "7.0 / x * 2 + x % 2.5",
+                "yes + yes * x",
+                "big + x",
+                "x max 50 * y",
+                "x % 7 - x / 7 * 100000 + 1.5 * x * x",
+        };
+        for (String source : sources) {
+            m.foldConstants = false;
+            Program program = m.compile(source);
+            CompiledExpression compiled = BytecodeCompiler.compile(new Tree(program, m), m);
+            assertTrue(source, compiled instanceof GeneratedExpression);
+            program.run(m);
+            String expected = results(m);
+            compiled.run(m);
+            assertEquals(source, expected, results(m));
+            compiled.run(m);
+            assertEquals(source, expected, results(m));
+        }
+    }
+
+    @Test
+    public void testFallback() {
+        Manager m = new Manager();
+        m.learn("x", 3);
+        CompiledExpression compiled = BytecodeCompiler.compile(m, "x * 2 + 1");
+        assertTrue(compiled instanceof GeneratedExpression);
+        compiled.run(m);
+        assertEquals("7 Long, ", results(m));
+        // generated for a long, so a double runs the Tree instead
+        m.learn("x", 0.5);
+        compiled.run(m);
+        assertEquals("2.0 Double, ", results(m));
+        m.learn("x", "text");
+        compiled.run(m);
+        assertEquals("1 Long, ", results(m));
+        m.remove("x");
+        m.remove("x");
+        compiled.run(m);
+        assertEquals("7 Long, ", results(m));
+        try {
+            m.learn("x", 0);
+            BytecodeCompiler.compile(m, "1 / x").run(m);
+            throw new AssertionError("should have divided by zero");
+        } catch (ArithmeticException expected) {
+            assertEquals("", results(m));
+        }
+
+        // not numbers, or not Arithmetic, so there is nothing to generate
+        assertTrue(BytecodeCompiler.compile(m, "'a' + 1") instanceof Tree);
+        m.learn("twice", new Procedural() {
+            @Override
+            public Cel run(Cel left, Cel right) {
+                return Cel.value(Core.asLong(right.ref) * 2);
+            }
+        });
+        assertTrue(BytecodeCompiler.compile(m, "x twice 3") instanceof Tree);
+    }
+}
@@ -0,0 +1,105 @@
+package lang.celadon;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static lang.celadon.Scripts.last;
+import static lang.celadon.Scripts.results;
+import static lang.celadon.Scripts.run;
+
+/**
+ * Checks that {@code receiver.method argument} calls run the right methods, and that CallSites cache slots per class.
+ */
+public class CallSiteTest {
+
+    static class Counter implements Slotted {
+        static int lookups;
+        long total;
+
+        @Override
+        public int slot(String name) {
+            lookups++;
+            switch (name) {
+                case "add": return 0;
+                case "get": return 1;
+                default: return -1;
+            }
+        }
+
+        @Override
+        public Cel run(Cel right, int slot) {
+            switch (slot) {
+                case 0: return Cel.value(total += Core.asLong(right.ref));
+                case 1: return Cel.value(total);
+                default: return Cel.nothing;
+            }
+        }
+
+        @Override
+        public Cel run(Cel right, String name) {
+            int slot = slot(name);
+            return slot < 0 ? Cel.nothing : run(right, slot);
+        }
+    }
+
+    static class Doubler extends Counter {
+        @Override
+        public Cel run(Cel right, int slot) {
+            return slot == 0 ? Cel.value(total += 2 * Core.asLong(right.ref)) : super.run(right, slot);
+        }
+    }
+
+    static class Greeter implements Methodical {
+        @Override
+        public Cel run(Cel right, String name) {
+            return Cel.value(name + " " + right.ref);
+        }
+    }
+
+    @Test
+    public void testCalls() {
+        for (boolean compiled : new boolean[]{false, true}) {
+            Manager m = new Manager();
+            m.learn("c", new Counter());
+            m.learn("d", new Doubler());
+            m.learn("g", new Greeter());
+            assertEquals("5 Long, ", results(m, "c.add 5", compiled));
+            assertEquals("22 Long, ", results(m, "1 + c.add 2 * 3", compiled));
+            assertEquals("14 Long, ", results(m, "c.get() * 2", compiled));
+            assertEquals("8 Long, ", results(m, "1 + c.get() + d.add 0", compiled));
+            assertEquals("8 Long, -1 Long, ", results(m, "(d.add 4) (c.add -8)", compiled));
+            assertEquals("hi there String, ", results(m, "g.hi 'there'", compiled));
+            assertEquals("null null, ", results(m, "c.missing 1", compiled));
+        }
+    }
+
+    @Test
+    public void testCache() {
+        Manager m = new Manager();
+        m.learn("c", new Counter());
+        Program program = m.compile("c.add 1");
+        CallSite site = (CallSite) program.get(program.size() - 1).ref;
+        assertEquals(CallSite.UNINITIALIZED, site.state());
+        Counter.lookups = 0;
+        for (int i = 0; i < 100; i++) {
+            program.run(m);
+        }
+        assertEquals(1, Counter.lookups);
+        assertEquals(CallSite.MONOMORPHIC, site.state());
+        assertEquals(100L, last(m));
+
+        m.learn("c", new Doubler());
+        assertEquals(2L, run(m, program));
+        assertEquals(CallSite.POLYMORPHIC, site.state());
+
+        Counter[] receivers = {new Counter() {}, new Counter() {}, new Counter() {}, new Counter() {}};
+        for (Counter receiver : receivers) {
+            assertEquals(3L, site.call(receiver, Cel.value(3)).ref);
+        }
+        assertEquals(CallSite.MEGAMORPHIC, site.state());
+        assertEquals(6L, site.call(receivers[0], Cel.value(3)).ref);
+        assertEquals("add 1", site.call(new Greeter(), Cel.value(1)).ref);
+        assertSame(Cel.nothing, site.run(Cel.value(1), Cel.value(1)));
+    }
+}
@@ -0,0 +1,211 @@
+package lang.celadon;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static lang.celadon.Scripts.results;
+
+/**
+ * Checks that {@link Manager#evaluate()} gives the same results, in the same order, as the older evaluator that
+ * rewrote {@link Manager#items} in place.
+ */
+public class EvaluateTest {
+
+    /**
+     * The evaluator Manager used before it had an operand stack; removing from the middle of items makes it quadratic.
+     */
+    public static List<Object> inPlace(Manager m, ArrayList<Cel> items) {
+        int len = items.size();
+        Cel item, left;
+        for (int i = 0; i < len; i++) {
+            item = m.resolve(items.get(i));
+            if (item.ref instanceof Procedural) {
+                if (i < 2 || (left = m.resolve(items.get(i - 2))).ref instanceof Procedural
+                        || Syntax.CLOSE_PARENTHESIS.equals(left.ref)) {
+                    item = ((Procedural) item.ref).run(Cel.empty, m.resolve(items.remove(--i)));
+                    items.set(i, item);
+                    --len;
+                } else {
+                    item = ((Procedural) item.ref).run(left, m.resolve(items.remove(--i)));
+                    items.remove(--i);
+                    items.set(i, item);
+                    len -= 2;
+                }
+            }
+        }
+        return new ArrayList<Object>(items);
+    }
+
+    private static void check(Manager m, String source) {
+        m.tokenize(source);
+        m.items.clear();
+        m.shunt();
+        List<Object> expected;
+        try {
+            expected = inPlace(m, new ArrayList<>(m.items));
+        } catch (IndexOutOfBoundsException e) {
+            // a binary operator with nothing at all before it has never been allowed
+            try {
+                m.evaluate();
+            } catch (IndexOutOfBoundsException expectedToo) {
+                return;
+            }
+            throw new AssertionError(source);
+        }
+        m.exchange.clear();
+        m.exchange.add("before");
+        m.evaluate();
+        expected.add(0, "before");
+        assertEquals(source, expected.toString(), new ArrayList<>(m.exchange).toString());
+        assertEquals(source, expected.subList(1, expected.size()).toString(), m.items.toString());
+    }
+
+    @Test
+    public void testSameResults() {
+        Manager m = new Manager();
+        String[] sources = {
+                "- 3 + 7",
+                "-(2 * 3) - -4",
+                "1 2 3",
+                "1 + 2 * 3 - 4 / 5 % 6",
+                "(-3 + 7) * 999 / 3 + 5 ",
+                "((1 + 2) * (3 - (4 + 5))) unbound sin 0.5 (2.5f * 2)",
+                "x + 1",
+        };
+        m.learn("x", 41);
+        for (String source : sources) {
+            check(m, source);
+        }
+        for (String source : ThreadedTokenizeTest.scripts(256)) {
+            check(m, source);
+        }
+    }
+
+    @Test
+    public void testLongExpression() {
+        Manager m = new Manager();
+        StringBuilder sb = new StringBuilder(1 << 16);
+        sb.append('1');
+        for (int i = 0; i < 5000; i++) {
+            sb.append(i % 3 == 0 ? " - " : " + ").append(i % 10);
+        }
+        check(m, sb.toString());
+        // the operand stack is reused, including after growing
+        check(m, "2 * 3");
+        check(m, sb.toString());
+    }
+
+    @Test
+    public void testPrimitiveArithmetic() {
+        Manager m = new Manager();
+        m.learn("x", 41);
+        m.learn("half", 0.5f);
+        m.learn("yes", true);
+        String[] sources = {
+                "- 3 + 7",
+                "-(2 * 3) - -4",
+                "1 2 3",
+                "7 / 2 * 2 + 7 % 2",
+                "7.0 / 2 * 2 + 7 % 2.5",
+                "x + 1 - half * 4",
+                "yes + yes * 3",
+                "-0.0 - 0.0",
+                "1 + 'text' * 2",
+                "(1 + 2) sin 0.5 * 2",
+                "9223372036854775807L + 1",
+        };
+        for (String source : sources) {
+            m.primitiveArithmetic = false;
+            String boxed = results(m, source);
+            m.primitiveArithmetic = true;
+            assertEquals(source, boxed, results(m, source));
+        }
+        assertEquals("41 Integer, ", results(m, "x"));
+        assertEquals("-1.0 Double, ", results(m, "-(x - 40.0)"));
+    }
+
+    @Test
+    public void testCustomArithmetic() {
+        Manager m = new Manager();
+        m.learn("max", new Arithmetic(11) {
+            @Override
+            public long applyLong(long left, long right) {
+                return Math.max(left, right);
+            }
+
+            @Override
+            public double applyDouble(double left, double right) {
+                return Math.max(left, right);
+            }
+        });
+        assertEquals("8 Long, ", results(m, "3 max 5 + 3"));
+        assertEquals("5.5 Double, ", results(m, "3 max 5.5"));
+        assertEquals("0 Integer, ", results(m, "max 3"));
+        m.primitiveArithmetic = false;
+        assertEquals("8 Long, ", results(m, "3 max 5 + 3"));
+    }
+
+    @Test
+    public void testFold() {
+        Manager m = new Manager();
+        m.learn("x", 41);
+        String[] sources = {
+                "(-3 + 7) * 999 / 3 + 5",
+                "- 3 + 7",
+                "-(2 * 3) - -4",
+                "1 2 3",
+                "x * (2 + 3) - 4 * 0.5",
+                "7.0 / 2 * 2 + 7 % 2.5",
+                "1 + 'text' * 2",
+                "9223372036854775807L + 1",
+                "((1 + 2) * (3 - (4 + 5))) unbound sin 0.5 (2.5f * 2)",
+        };
+        for (String source : sources) {
+            String expected = results(m, source);
+            m.exchange.clear();
+            m.tokenize(source);
+            m.items.clear();
+            m.shunt();
+            int before = m.items.size();
+            m.fold();
+            assertEquals(source, true, m.items.size() <= before);
+            m.evaluate();
+            assertEquals(source, expected, results(m));
+        }
+        m.tokenize("(-3 + 7) * 999 / 3 + 5");
+        m.items.clear();
+        m.shunt();
+        m.fold();
+        assertEquals(1, m.items.size());
+        assertEquals(1337L, m.items.get(0).ref);
+    }
+
+    @Test
+    public void testFoldSkipsImpure() {
+        final int[] calls = {0};
+        Manager m = new Manager();
+        m.learn("tick", new Operator(11) {
+            @Override
+            public Cel run(Cel left, Cel right) {
+                return Cel.value(++calls[0]);
+            }
+        });
+        m.tokenize("(1 + 2) tick (3 * 4)");
+        m.items.clear();
+        m.shunt();
+        m.fold();
+        assertEquals("[3, 12, tick]", m.items.toString());
+        assertEquals(0, calls[0]);
+        m.evaluate();
+        assertEquals(1, calls[0]);
+
+        m.tokenize("1 / 0 + 2");
+        m.items.clear();
+        m.shunt();
+        m.fold();
+        assertEquals(5, m.items.size());
+    }
+}
@@ -0,0 +1,64 @@
+package lang.celadon;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the Lexer shares Cels for repeated symbols and literals without changing what they mean, and that an
+ * Interner never holds more than its capacity.
+ */
+public class InternerTest {
+
+    @Test
+    public void testSharedTokens() {
+        Manager m = new Manager();
+        m.tokenize("x 1.5 x 1.5 1.5f 10 10L 007 7 -128 1023 1024 0x10 0x10");
+        assertSame(m.tokens.get(0), m.tokens.get(2));
+        assertSame(m.tokens.get(1), m.tokens.get(3));
+        assertNotSame(m.tokens.get(1), m.tokens.get(4));
+        assertEquals(Float.class, m.tokens.get(4).ref.getClass());
+        assertSame(Cel.smallInts[10 + 128], m.tokens.get(5));
+        assertEquals(Long.class, m.tokens.get(6).ref.getClass());
+        assertEquals("007", m.tokens.get(7).title);
+        assertEquals(7, m.tokens.get(7).ref);
+        assertSame(Cel.smallInts[7 + 128], m.tokens.get(8));
+        assertSame(Cel.smallInts[0], m.tokens.get(9));
+        assertSame(Cel.smallInts[Cel.smallInts.length - 1], m.tokens.get(10));
+        assertEquals(1024, m.tokens.get(11).ref);
+        assertSame(m.tokens.get(12), m.tokens.get(13));
+        assertEquals(16, m.tokens.get(12).ref);
+
+        String expected = ThreadedTokenizeTest.describe(m.tokens);
+        m.lexer.interner = null;
+        m.tokenize("x 1.5 x 1.5 1.5f 10 10L 007 7 -128 1023 1024 0x10 0x10");
+        assertEquals(expected, ThreadedTokenizeTest.describe(m.tokens));
+        assertNotSame(m.tokens.get(0), m.tokens.get(2));
+    }
+
+    @Test
+    public void testBounded() {
+        Interner interner = new Interner(16, 8);
+        Manager m = new Manager();
+        m.lexer.interner = interner;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append(" sym").append(i);
+        }
+        m.tokenize(sb.toString());
+        assertEquals(16, interner.capacity);
+        assertTrue(interner.size() <= interner.capacity);
+        assertEquals(1000, interner.misses);
+        assertTrue(interner.evictions > 0);
+        assertNull(interner.get(Lexer.SYMBOL, "aVeryLongSymbol", 0, 15));
+        m.tokenize("aVeryLongSymbol aVeryLongSymbol");
+        assertNotSame(m.tokens.get(0), m.tokens.get(1));
+        interner.clear();
+        assertEquals(0, interner.size());
+        assertEquals(0L, interner.hits);
+    }
+}
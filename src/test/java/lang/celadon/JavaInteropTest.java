@@ -0,0 +1,106 @@
+package lang.celadon;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static lang.celadon.Scripts.run;
+
+/**
+ * Checks that scripts can call methods on plain Java objects through {@link JavaInterop}.
+ */
+public class JavaInteropTest {
+
+    public static class Point {
+        public long x, y;
+
+        public long add(long amount) {
+            return x += amount;
+        }
+
+        public double scale(double by) {
+            x *= by;
+            y *= by;
+            return Math.hypot(x, y);
+        }
+
+        public void reset() {
+            x = y = 0;
+        }
+    }
+
+    @Test
+    public void testCalls() {
+        Manager m = new Manager();
+        m.linker = JavaInterop.LINKER;
+        ArrayList<Object> list = new ArrayList<>();
+        m.learn("list", list);
+        assertEquals(true, run(m, "list.add 'a'"));
+        assertEquals(true, run(m, "list.add (2 * 3)"));
+        assertEquals(2, run(m, "list.size()"));
+        assertEquals("a", run(m, "list.get 0"));
+        assertEquals(6L, run(m, "list.get (2 - 1)"));
+        assertEquals(7L, run(m, "list.size() + 5"));
+        assertEquals("a", run(m, "list.remove 0"));
+        assertEquals(1, list.size());
+
+        StringBuilder sb = new StringBuilder();
+        m.learn("sb", sb);
+        run(m, "sb.append 'x'");
+        run(m, "sb.append 1.5");
+        run(m, "sb.append (1 + 1)");
+        assertEquals("x1.52", sb.toString());
+        assertEquals(5, run(m, "sb.length()"));
+
+        Point p = new Point();
+        m.learn("p", p);
+        assertEquals(3L, run(m, "p.add 3"));
+        assertEquals(5L, run(m, "p.add 2.5"));
+        p.y = 12;
+        assertEquals(13.0, run(m, "p.scale 1"));
+        assertEquals(12L, run(m, "p.y()"));
+        assertSame(Cel.nothing.ref, run(m, "p.reset()"));
+        assertEquals(0L, p.x);
+
+        List<Object> unmodifiable = Collections.unmodifiableList(list);
+        m.learn("view", unmodifiable);
+        assertEquals(1, run(m, "view.size()"));
+    }
+
+    @Test
+    public void testMissing() {
+        Manager m = new Manager();
+        m.learn("p", new Point());
+        assertSame(Cel.nothing.ref, run(m, "p.add 1"));
+        m.linker = JavaInterop.LINKER;
+        assertSame(Cel.nothing.ref, run(m, "p.subtract 1"));
+        assertSame(Cel.nothing.ref, run(m, "p.getClass()"));
+        m.learn("type", Point.class);
+        assertSame(Cel.nothing.ref, run(m, "type.getName()"));
+        assertEquals(1L, run(m, "p.add 1"));
+    }
+
+    @Test
+    public void testCache() {
+        Program program = new Manager().compile("target.add 1");
+        CallSite site = (CallSite) program.get(program.size() - 1).ref;
+        for (int i = 0; i < 10; i++) {
+            Manager m = new Manager();
+            m.linker = JavaInterop.LINKER;
+            Point p = new Point();
+            m.learn("target", p);
+            program.run(m);
+            assertEquals(1L, p.x);
+        }
+        assertEquals(CallSite.MONOMORPHIC, site.state());
+        Manager m = new Manager();
+        m.linker = JavaInterop.LINKER;
+        m.learn("target", new ArrayList<>());
+        program.run(m);
+        assertEquals(CallSite.POLYMORPHIC, site.state());
+    }
+}
@@ -0,0 +1,66 @@
+package lang.celadon;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static lang.celadon.Scripts.run;
+
+/**
+ * Checks that Managers share their Library without copying it, and that their own bindings only shadow it.
+ */
+public class LibraryTest {
+
+    @Test
+    public void testShared() {
+        Manager a = new Manager(), b = new Manager();
+        assertSame(Library.standard, a.library);
+        assertEquals(0, a.size());
+        assertSame(a.get("+"), b.get("+"));
+        assertSame(Core.plus, a.resolve("+").ref);
+        assertEquals(a.symbols.find("tan"), b.symbols.find("tan"));
+        assertSame(a.get("cos"), a.binding(a.symbols.find("cos")));
+        assertEquals(7L, run(a, "1 + 2 * 3"));
+        assertEquals(8, Library.standard.size());
+    }
+
+    @Test
+    public void testOverlay() {
+        Manager a = new Manager(), b = new Manager();
+        a.learn("x", 4);
+        a.learn("+", Core.minus);
+        assertEquals(-2L, run(a, "x + 6"));
+        assertNull(b.get("x"));
+        assertEquals(7L, run(b, "1 + 6"));
+        a.remove("+");
+        assertEquals(10L, run(a, "x + 6"));
+        a.remove("+");
+        assertSame(Core.plus, a.get("+").ref);
+        a.clear();
+        assertNull(a.get("x"));
+        assertEquals(7L, run(a, "1 + 6"));
+    }
+
+    @Test
+    public void testSnapshot() {
+        Manager setup = new Manager();
+        setup.learn("ten", 10);
+        setup.learn("-", Core.plus);
+        setup.operators.put(Core.plus, Core.times.precedence + 1);
+        Library library = new Library(setup);
+        setup.learn("ten", 11);
+        Manager m = new Manager(library);
+        assertEquals(0, m.size());
+        assertEquals(10, m.get("ten").ref);
+        assertSame(Core.times, m.get("*").ref);
+        assertEquals(24L, run(m, "ten - 2 * 2"));
+        assertEquals(72L, run(m, "ten + 2 * 2 - 4"));
+
+        Manager bare = new Manager(Library.empty);
+        assertNull(bare.get("+"));
+        bare.standardLib();
+        assertEquals(8, bare.size());
+        assertEquals(7L, run(bare, "1 + 2 * 3"));
+    }
+}
@@ -0,0 +1,129 @@
+package lang.celadon;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static lang.celadon.Scripts.evaluate;
+
+/**
+ * Checks that reset Managers keep their bindings and buffers, and that ManagerPool reuses them and counts correctly.
+ */
+public class ManagerPoolTest {
+
+    @Test
+    public void testReset() {
+        Manager m = new Manager();
+        m.learn("x", 5);
+        ArrayList<Cel> items = m.items;
+        m.tokenize("x * (2 + 3) 4");
+        m.shunt();
+        m.evaluate();
+        assertEquals(2, m.exchange.size());
+        m.reset();
+        assertSame(items, m.items);
+        assertTrue(m.items.isEmpty());
+        assertTrue(m.tokens.isEmpty());
+        assertTrue(m.exchange.isEmpty());
+        assertTrue(m.operations.isEmpty());
+        assertEquals(5, m.get("x").ref);
+        m.tokenize("x - 1");
+        m.shunt();
+        assertEquals(4L, evaluate(m));
+        assertEquals(1, m.exchange.size());
+    }
+
+    @Test
+    public void testPool() {
+        ManagerPool pool = new ManagerPool(2);
+        Manager a = pool.borrow(), b = pool.borrow(), c = pool.borrow();
+        assertEquals(0, pool.hits());
+        assertEquals(3, pool.misses());
+        assertEquals(3, pool.highWater());
+        a.learn("x", 1);
+        a.tokenize("x + 1");
+        a.shunt();
+        pool.release(a);
+        pool.release(b);
+        pool.release(c);
+        assertEquals(1, pool.discards());
+        assertEquals(2, pool.idle());
+        assertEquals(0, pool.borrowed());
+
+        Manager d = pool.borrow();
+        assertSame(b, d);
+        Manager e = pool.borrow();
+        assertSame(a, e);
+        assertEquals(2, pool.hits());
+        assertNull(e.get("x"));
+        assertTrue(e.items.isEmpty());
+        assertSame(Core.plus, e.get("+").ref);
+        assertNotSame(pool.borrow(), c);
+        assertEquals(4, pool.misses());
+        assertEquals(3, pool.highWater());
+
+        pool.resetCounts();
+        assertEquals(0, pool.hits());
+        assertEquals(3, pool.highWater());
+        pool.release(new Manager(Library.empty));
+        assertEquals(1, pool.discards());
+
+        ManagerPool keeping = new ManagerPool(Library.standard, 1, false);
+        Manager k = keeping.borrow();
+        k.learn("x", 1);
+        keeping.release(k);
+        assertEquals(1, keeping.borrow().get("x").ref);
+    }
+
+    @Test
+    public void testSymbolLimit() {
+        ManagerPool pool = new ManagerPool(2);
+        Manager m = pool.borrow();
+        for (int i = 0; i < ManagerPool.SYMBOL_LIMIT; i++) {
+            m.symbols.id("name" + i);
+        }
+        pool.release(m);
+        assertEquals(1, pool.idle());
+        assertSame(m, pool.borrow());
+        m.symbols.id("one too many");
+        pool.release(m);
+        assertEquals(0, pool.idle());
+        assertEquals(1, pool.discards());
+
+        ManagerPool keeping = new ManagerPool(Library.standard, 2, false);
+        keeping.release(m);
+        assertEquals(1, keeping.idle());
+    }
+
+    @Test
+    public void testRelease() {
+        ManagerPool pool = new ManagerPool(4);
+        Manager m = pool.borrow();
+        m.linker = JavaInterop.LINKER;
+        m.foldConstants = false;
+        m.flattenChains = false;
+        m.primitiveArithmetic = false;
+        Tiering tiering = m.tiering;
+        tiering.treeThreshold = 1;
+        pool.release(m);
+        assertNull(m.linker);
+        assertTrue(m.foldConstants);
+        assertTrue(m.flattenChains);
+        assertTrue(m.primitiveArithmetic);
+        assertNotSame(tiering, m.tiering);
+        assertEquals(new Tiering().treeThreshold, m.tiering.treeThreshold);
+
+        pool.release(m);
+        assertEquals(1, pool.idle());
+        assertEquals(1, pool.discards());
+        assertSame(m, pool.borrow());
+        assertNotSame(m, pool.borrow());
+        pool.release(m);
+        assertEquals(1, pool.idle());
+    }
+}
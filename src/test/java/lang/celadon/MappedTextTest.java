@@ -0,0 +1,42 @@
+package lang.celadon;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that files loaded with MappedText hold the same text and tokenize the same as the Strings written to them.
+ */
+public class MappedTextTest {
+    public static File write(byte[] contents) throws Exception {
+        File file = File.createTempFile("celadon", ".cel");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        Manager m = new Manager();
+        for (String source : BasicTest.samples) {
+            m.tokenize(source);
+            String expected = ThreadedTokenizeTest.describe(m.tokens);
+            CharSequence loaded = MappedText.load(write(source.getBytes("UTF-8")));
+            assertEquals(source, loaded.toString());
+            m.tokenize(loaded, 0, loaded.length());
+            assertEquals(expected, ThreadedTokenizeTest.describe(m.tokens));
+        }
+        CharSequence ascii = MappedText.load(write(new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF, '4', '2'}));
+        assertTrue(ascii instanceof MappedText);
+        assertEquals("42", ascii.toString());
+    }
+}
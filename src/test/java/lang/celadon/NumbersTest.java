@@ -0,0 +1,54 @@
+package lang.celadon;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that Numbers parses floating-point literals to exactly the same values as the JDK.
+ */
+public class NumbersTest {
+    public static final String[] literals = {
+            "0.0", "-0.0", "1.", "1.5", "-1.5", "+1.5", "00012.5000", "0.1", "0.30000000000000004", "1.e5", "1.5e+10",
+            "1.5e01", "1.5e-3", "1e23", "8.41e21", "123456789012345678901234567890.", "9007199254740993.0",
+            "1.7976931348623157e308", "1.7976931348623158e308", "1.7976931348623159e308", "1e400", "1e-400",
+            "4.9e-324", "2.4703282292062327e-324", "2.4703282292062328e-324", "2.2250738585072011e-308",
+            "3.4028235e38", "3.4028236e38", "1.4e-45", "7.0e-46", "NaN", "-NaN", "Infinity", "-Infinity",
+            "0x.8p1", "0x1.8p01", "0x1.Ep1", "0xF.0p-2", "-0x1.fffffffffffffp1023", "0x1p-1074", "0x1p-1075",
+            "0x1.00000000000008p0", "0x1.000000000000081p0", "0x1.000001p0", "0x123456789abcdef.0123456789p-4",
+    };
+
+    private static void check(Numbers numbers, String literal) {
+        assertEquals(literal, Double.doubleToLongBits(Double.parseDouble(literal)),
+                Double.doubleToLongBits(numbers.parseDouble(literal, 0, literal.length())));
+        assertEquals(literal, Float.floatToIntBits(Float.parseFloat(literal)),
+                Float.floatToIntBits(numbers.parseFloat(literal, 0, literal.length())));
+    }
+
+    @Test
+    public void testLiterals() {
+        Numbers numbers = new Numbers();
+        for (String literal : literals) {
+            check(numbers, literal);
+        }
+        // a range in the middle of other text
+        assertEquals(2.5, numbers.parseDouble("[2.5f]", 1, 4), 0.0);
+    }
+
+    @Test
+    public void testRandom() {
+        Numbers numbers = new Numbers();
+        Random random = new Random(1234567L);
+        for (int i = 0; i < 100000; i++) {
+            double d = Double.longBitsToDouble(random.nextLong());
+            if (d != d)
+                continue;
+            check(numbers, Double.toString(d));
+            check(numbers, Float.toString((float) d));
+            check(numbers, Double.toString(random.nextDouble() * Math.pow(10.0, random.nextInt(40) - 20)));
+            check(numbers, Double.toHexString(d));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package lang.celadon;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static lang.celadon.Scripts.evaluate;
+import static lang.celadon.Scripts.run;
+
+/**
+ * Checks that operator precedence belongs to each Manager, and that Managers share the standard operators.
+ */
+public class OperatorTableTest {
+
+    @Test
+    public void testTable() {
+        OperatorTable table = new OperatorTable(2);
+        assertEquals(OperatorTable.NONE, table.precedence(Core.plus));
+        assertEquals(OperatorTable.NONE, table.precedence(null));
+        table.add(Core.plus);
+        table.add(Core.times);
+        assertEquals(Core.plus.precedence, table.precedence(Core.plus));
+        table.put(Core.plus, 99);
+        table.add(Core.plus);
+        assertEquals(99, table.precedence(Core.plus));
+        for (int i = 0; i < 100; i++) {
+            table.put(new Object(), i);
+        }
+        assertEquals(102, table.size());
+        assertEquals(99, table.precedence(Core.plus));
+        assertEquals(Core.times.precedence, table.precedence(Core.times));
+        assertFalse(table.contains(Core.minus));
+        table.clear();
+        assertEquals(0, table.size());
+        assertFalse(table.contains(Core.plus));
+    }
+
+    @Test
+    public void testShared() {
+        Manager a = new Manager(), b = new Manager();
+        assertSame(a.resolve("+").ref, b.resolve("+").ref);
+        assertSame(Core.sin, b.resolve("sin").ref);
+        for (int i = 0; i < 10000; i++) {
+            new Manager();
+        }
+        assertEquals(0, a.operators.size());
+        assertEquals(0, b.operators.size());
+        assertTrue(a.operators.contains(Core.modulo));
+        assertFalse(a.operators.contains(Core.sin));
+    }
+
+    @Test
+    public void testOverride() {
+        Manager a = new Manager(), b = new Manager();
+        b.operators.put(Core.plus, Core.times.precedence + 1);
+        assertEquals(7L, run(a, "1 + 2 * 3"));
+        assertEquals(9L, run(b, "1 + 2 * 3"));
+        b.tokenize("1 + 2 * 3");
+        b.items.clear();
+        b.shunt();
+        assertEquals(9L, evaluate(b));
+        assertEquals(7L, run(new Manager(), "1 + 2 * 3"));
+        b.clear();
+        assertEquals(0, b.operators.size());
+    }
+}
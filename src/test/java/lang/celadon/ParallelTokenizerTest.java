@@ -0,0 +1,84 @@
+package lang.celadon;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that ParallelTokenizer gives the same tokens as tokenizing on one thread, including when split points land
+ * inside strings, comments, and other places where a chunk can't be scanned on its own.
+ */
+public class ParallelTokenizerTest {
+
+    public static String source() {
+        StringBuilder sb = new StringBuilder("#!/usr/bin/env celadon\n");
+        String[] scripts = ThreadedTokenizeTest.scripts(400);
+        for (int i = 0; i < scripts.length; i++) {
+            sb.append(scripts[i]).append('\n');
+            switch (i % 7) {
+                case 0: sb.append("'a string\nwith ( line breaks\n' (\n)\n"); break;
+                case 1: sb.append("~~!a block\ncomment ~!\n!~ [\n!~~ ##\n\ndropped kept\n"); break;
+                case 2: sb.append("[1, 2,\n3] (\n(4 + 5)\n) ; comment with ' and \"\n"); break;
+                case 3: sb.append("a\"b\nc;d\n`(` `\\n`\n`[`\n"); break;
+                case 4: sb.append("(\n"); break;
+                case 5: sb.append(")\n} ]\n"); break;
+            }
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testSameTokens() {
+        String source = source();
+        Manager m = new Manager();
+        m.tokenize(source);
+        String expected = ThreadedTokenizeTest.describe(m.tokens);
+        TokenBuffer serial = m.newBuffer();
+        m.tokenize(source, 0, source.length(), serial);
+        ArrayList<Cel> serialCels = new ArrayList<>(serial.size);
+        serial.cels(serialCels);
+
+        ParallelTokenizer parallel = new ParallelTokenizer(new ForkJoinPool(4));
+        int[] minChunks = {1, 7, 64, 1000, 1 << 20};
+        for (int minChunk : minChunks) {
+            parallel.minChunk = minChunk;
+            assertEquals("minChunk " + minChunk, expected,
+                    ThreadedTokenizeTest.describe(parallel.tokenize(source, 0, source.length())));
+            TokenBuffer buffer = new Manager().newBuffer();
+            parallel.tokenize(source, 0, source.length(), buffer);
+            ArrayList<Cel> cels = new ArrayList<>(buffer.size);
+            buffer.cels(cels);
+            assertEquals("minChunk " + minChunk, ThreadedTokenizeTest.describe(serialCels),
+                    ThreadedTokenizeTest.describe(cels));
+        }
+        for (String sample : BasicTest.samples) {
+            m.tokenize(sample);
+            parallel.minChunk = 1;
+            parallel.tokenize(m, sample + "\n" + sample);
+            ArrayList<Cel> once = new ArrayList<>(m.tokens);
+            m.tokenize(sample + "\n" + sample);
+            assertEquals(sample, ThreadedTokenizeTest.describe(m.tokens), ThreadedTokenizeTest.describe(once));
+        }
+        parallel.pool.shutdown();
+    }
+
+    @Test
+    public void testSplits() {
+        String source = "(a\nb)\n[c\n'd\ne'\n]\nf\n~!g\nh!~\n";
+        int[] splits = ParallelTokenizer.splits(source, 0, source.length(), 100);
+        assertEquals(0, splits[0]);
+        assertEquals(source.length(), splits[splits.length - 1]);
+        for (int i = 1; i < splits.length - 1; i++) {
+            assertEquals('\n', source.charAt(splits[i] - 1));
+            assertTrue(splits[i] > splits[i - 1]);
+        }
+        assertEquals(5, splits.length);
+        assertEquals(source.indexOf("[c"), splits[1]);
+        assertEquals(source.indexOf("f"), splits[2]);
+        assertEquals(source.indexOf("~!g"), splits[3]);
+    }
+}
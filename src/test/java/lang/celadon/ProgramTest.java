@@ -0,0 +1,176 @@
+package lang.celadon;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static lang.celadon.Scripts.results;
+
+/**
+ * Checks that a compiled Program gives the same results as tokenizing, shunting, and evaluating, every time it runs.
+ */
+public class ProgramTest {
+
+    @Test
+    public void testRunRepeatedly() {
+        String source = "(-3 + 7) * 999 / 3 + 5 ";
+        Manager m = new Manager();
+        m.tokenize(source);
+        m.shunt();
+        m.evaluate();
+        String expected = new ArrayList<>(m.exchange).toString();
+
+        Program program = m.compile(source);
+        String compiled = program.toString();
+        for (int i = 0; i < 5; i++) {
+            m.exchange.clear();
+            program.run(m);
+            assertEquals(expected, new ArrayList<>(m.exchange).toString());
+            assertEquals(compiled, program.toString());
+        }
+        Manager other = new Manager();
+        program.run(other);
+        assertEquals(expected, new ArrayList<>(other.exchange).toString());
+    }
+
+    @Test
+    public void testInputs() {
+        Manager m = new Manager();
+        Program program = m.compile("x * 2 + y");
+        assertEquals(5, program.size());
+        int x = m.symbols.id("x");
+        m.learn(x, 3);
+        m.learn("y", 4);
+        program.run(m);
+        assertEquals(10L, ((Cel) m.exchange.pollLast()).ref);
+        m.learn(x, 5);
+        program.run(m);
+        assertEquals(14L, ((Cel) m.exchange.pollLast()).ref);
+        m.remove("x");
+        program.run(m);
+        assertEquals(10L, ((Cel) m.exchange.pollLast()).ref);
+
+        Manager other = new Manager();
+        other.learn("x", 0.5);
+        other.learn("y", 1);
+        program.run(other);
+        assertEquals(2.0, ((Cel) other.exchange.pollLast()).ref);
+    }
+
+    @Test
+    public void testFolding() {
+        Manager m = new Manager();
+        Program program = m.compile("(-3 + 7) * 999 / 3 + 5");
+        assertEquals(1, program.size());
+        assertEquals("1337", program.toString());
+        // folding stops at a symbol that is unbound, since it might be skipped when the Program runs
+        assertEquals(9, m.compile("x * (2 + 3) - 1.5 * 2").size());
+        m.learn("x", 2);
+        program = m.compile("x * (2 + 3) - 1.5 * 2");
+        assertEquals("x 5 * 3.0 -", program.toString());
+        program.run(m);
+        assertEquals(7.0, ((Cel) m.exchange.pollLast()).ref);
+        m.foldConstants = false;
+        assertEquals(9, m.compile("x * (2 + 3) - 1.5 * 2").size());
+    }
+
+    @Test
+    public void testTree() {
+        Procedural twice = new Procedural() {
+            @Override
+            public Cel run(Cel left, Cel right) {
+                return Cel.value(Core.asLong(right.ref) * 2);
+            }
+        };
+        Manager m = new Manager(), other = new Manager();
+        for (Manager mgr : new Manager[]{m, other}) {
+            mgr.learn("x", 41);
+            mgr.learn("y", 2.5f);
+            mgr.learn("yes", true);
+            mgr.learn("twice", twice);
+        }
+        other.put("+", m.get("+"));
+        other.put("-", m.get("-"));
+        other.put("*", m.get("*"));
+        other.put("/", m.get("/"));
+        other.put("%", m.get("%"));
+        String[] sources = {
+                "(-3 + 7) * 999 / 3 + 5",
+                "- x + 7",
+                "-(x * 3) - y",
+                "1 2 x",
+                "x * (y + 3) - 4 * 0.5",
+                "7.0 / x * 2 + x % 2.5",
+                "yes + yes * x",
+                "x + 'text' * 2",
+                "() - x",
+                "x twice 3",
+                "9223372036854775807L + x",
+        };
+        for (String source : sources) {
+            Program program = m.compile(source);
+            Tree tree = new Tree(program, m);
+            assertEquals(source, true, tree.isTree());
+            program.run(m);
+            String expected = results(m);
+            tree.run(m);
+            assertEquals(source, expected, results(m));
+            tree.run(other);
+            assertEquals(source, expected, results(other));
+        }
+    }
+
+    @Test
+    public void testTreeResolvesFirst() {
+        final Manager m = new Manager();
+        m.learn("y", 5);
+        // rebinds y while the code runs, after y has been resolved for this run
+        m.learn("bump", new Procedural() {
+            @Override
+            public Cel run(Cel left, Cel right) {
+                m.learn("y", Core.asLong(m.get("y").ref) + 100);
+                return right;
+            }
+        });
+        Program program = m.compile("(0 bump 1) + y");
+        Tree tree = new Tree(program, m);
+        assertEquals(true, tree.isTree());
+        program.run(m);
+        assertEquals("0 Integer, 6 Long, ", results(m));
+        m.learn("y", 5);
+        tree.run(m);
+        assertEquals("0 Integer, 6 Long, ", results(m));
+        assertEquals(105L, Core.asLong(m.get("y").ref));
+    }
+
+    @Test
+    public void testTreeFallback() {
+        Manager m = new Manager();
+        assertEquals(false, m.compileTree("2 + x").isTree());
+        m.learn("x", 1);
+        Tree tree = m.compileTree("2 + x");
+        assertEquals(true, tree.isTree());
+        tree.run(m);
+        assertEquals("3 Long, ", results(m));
+        // once x is an operator or + is something else, the tree no longer fits, and the Program runs instead
+        m.learn("x", m.get("*").ref);
+        tree.program.run(m);
+        String expected = results(m);
+        tree.run(m);
+        assertEquals(expected, results(m));
+        m.remove("x");
+        m.learn("+", m.get("-").ref);
+        tree.run(m);
+        assertEquals("1 Long, ", results(m));
+
+        StringBuilder sb = new StringBuilder("1");
+        for (int i = 0; i < Tree.MAX_DEPTH * 2; i++) {
+            sb.append(" * 1");
+        }
+        tree = m.compileTree(sb.append(" * x"));
+        assertEquals(false, tree.isTree());
+        tree.run(m);
+        assertEquals("1 Long, ", results(m));
+    }
+}
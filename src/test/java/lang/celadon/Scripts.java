@@ -0,0 +1,91 @@
+package lang.celadon;
+
+/**
+ * Helpers for tests that run some code in a Manager and check the results it yielded.
+ */
+final class Scripts {
+    private Scripts() {
+    }
+
+    /**
+     * Compiles source with m and runs it, with m's exchange emptied first.
+     * @return the ref of the last Cel the code yielded
+     */
+    static Object run(Manager m, String source) {
+        return run(m, m.compile(source));
+    }
+
+    /**
+     * Runs expression with m, with m's exchange emptied first.
+     * @return the ref of the last Cel the expression yielded
+     */
+    static Object run(Manager m, CompiledExpression expression) {
+        m.exchange.clear();
+        expression.run(m);
+        return last(m);
+    }
+
+    /**
+     * Evaluates the code m has already shunted, with m's exchange emptied first.
+     * @return the ref of the last Cel the code yielded
+     */
+    static Object evaluate(Manager m) {
+        m.exchange.clear();
+        m.evaluate();
+        return last(m);
+    }
+
+    /**
+     * Tokenizes, shunts, and evaluates source with m, without making a Program, with m's exchange emptied first.
+     * @return what {@link #results(Manager)} gives for everything the code yielded
+     */
+    static String results(Manager m, String source) {
+        m.exchange.clear();
+        m.tokenize(source);
+        m.items.clear();
+        m.shunt();
+        m.evaluate();
+        return results(m);
+    }
+
+    /**
+     * Runs source with m either compiled into a Program or straight through the evaluator, with m's exchange emptied first.
+     * @return what {@link #results(Manager)} gives for everything the code yielded
+     */
+    static String results(Manager m, String source, boolean compiled) {
+        if (!compiled)
+            return results(m, source);
+        m.exchange.clear();
+        m.compile(source).run(m);
+        return results(m);
+    }
+
+    /**
+     * Describes every Cel in m's exchange, then empties it.
+     * @return each ref in the exchange and its simple class name, as in {@code "7 Long, 'a' String, "}
+     */
+    static String results(Manager m) {
+        String s = describe(m.exchange);
+        m.exchange.clear();
+        return s;
+    }
+
+    /**
+     * @return each ref in exchange, which should hold only Cels, and its simple class name
+     */
+    static String describe(Iterable<Object> exchange) {
+        StringBuilder sb = new StringBuilder();
+        for (Object o : exchange) {
+            Object ref = ((Cel) o).ref;
+            sb.append(ref).append(' ').append(ref == null ? "null" : ref.getClass().getSimpleName()).append(", ");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the ref of the last Cel in m's exchange
+     */
+    static Object last(Manager m) {
+        return ((Cel) m.exchange.peekLast()).ref;
+    }
+}
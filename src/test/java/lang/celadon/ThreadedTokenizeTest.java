@@ -0,0 +1,91 @@
+package lang.celadon;
+
+import lang.celadon.old.Token;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tokenizes thousands of scripts on several threads at once, each thread with its own Manager, and checks that every
+ * token stream matches what a single thread produces.
+ */
+public class ThreadedTokenizeTest {
+
+    public static String describe(List<Cel> tokens) {
+        StringBuilder sb = new StringBuilder(tokens.size() * 12);
+        for (Cel c : tokens) {
+            sb.append(c.title).append(" = ").append(c.ref == null ? "null" : c.ref.getClass().getSimpleName())
+                    .append(' ').append(c.ref).append('\n');
+        }
+        return sb.toString();
+    }
+
+    public static String[] scripts(int count) {
+        String[] scripts = new String[count];
+        for (int i = 0; i < count; i++) {
+            scripts[i] = BasicTest.samples[i % BasicTest.samples.length] + "\n(" + i + " + " + (i * 0.5) + ") * 0x"
+                    + Integer.toHexString(i) + " ; row " + i + "\n['name" + i + "' " + (i * 1000L) + "L `"
+                    + (char) ('a' + i % 26) + "` ~!skipped " + i + "!~ sym" + (i & 63) + "]";
+        }
+        return scripts;
+    }
+
+    @Test
+    public void testParallelTokenize() throws Exception {
+        final int count = 4096, threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        final String[] scripts = scripts(count);
+        final String[] expected = new String[count], expectedOld = new String[count];
+        Manager serial = new Manager();
+        for (int i = 0; i < count; i++) {
+            serial.tokenize(scripts[i]);
+            expected[i] = describe(serial.tokens);
+            expectedOld[i] = Token.tokenize(scripts[i]).toString();
+        }
+        // Managers are made here so the workers only tokenize
+        final Manager[] managers = new Manager[threads];
+        for (int t = 0; t < threads; t++) {
+            managers[t] = new Manager();
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> results = new ArrayList<>(threads);
+            for (int t = 0; t < threads; t++) {
+                final int offset = t;
+                results.add(pool.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        Manager manager = managers[offset];
+                        int mismatches = 0;
+                        for (int n = 0; n < 4; n++) {
+                            for (int i = offset; i < count; i += threads) {
+                                manager.tokenize(scripts[i]);
+                                if (!expected[i].equals(describe(manager.tokens)))
+                                    ++mismatches;
+                                manager.tokenizeRegex(scripts[i]);
+                                if (!expected[i].equals(describe(manager.tokens)))
+                                    ++mismatches;
+                                if (!expectedOld[i].equals(Token.tokenize(scripts[i]).toString()))
+                                    ++mismatches;
+                            }
+                        }
+                        return mismatches;
+                    }
+                }));
+            }
+            int total = 0;
+            for (Future<Integer> f : results) {
+                total += f.get();
+            }
+            assertEquals(0, total);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
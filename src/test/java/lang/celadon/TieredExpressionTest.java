@@ -0,0 +1,124 @@
+package lang.celadon;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static lang.celadon.Scripts.run;
+
+/**
+ * Checks that TieredExpressions move through the tiers at the right counts without changing their results.
+ */
+public class TieredExpressionTest {
+
+    @Test
+    public void testPromotion() {
+        Manager m = new Manager();
+        m.tiering.treeThreshold = 3;
+        m.tiering.compileThreshold = 5;
+        m.tiering.compiler = BytecodeCompiler.TIER;
+        final ArrayList<String> events = new ArrayList<>();
+        m.tiering.listener = new Tiering.Listener() {
+            @Override
+            public void promoted(TieredExpression expression, int tier, boolean promoted) {
+                events.add(expression.invocations() + ":" + tier + ":" + promoted);
+            }
+        };
+        m.learn("x", 20);
+        TieredExpression expression = m.compileTiered("x * 3 - x / 3.0");
+        int[] tiers = new int[8];
+        for (int i = 0; i < tiers.length; i++) {
+            Object result = run(m, expression);
+            tiers[i] = expression.tier();
+            assertEquals(1, m.exchange.size());
+            assertEquals(20 * 3 - 20 / 3.0, result);
+        }
+        assertEquals("[0, 0, 1, 1, 2, 2, 2, 2]", Arrays.toString(tiers));
+        assertTrue(expression.current() instanceof GeneratedExpression);
+        assertEquals(8, expression.invocations());
+        assertEquals("[3:1:true, 5:2:true]", events.toString());
+        assertEquals(1, m.tiering.expressions());
+        assertEquals(1, m.tiering.promotions(Tiering.TREE));
+        assertEquals(1, m.tiering.promotions(Tiering.COMPILED));
+        assertEquals(0, m.tiering.failures());
+        // still transparent after the types change under the compiled tier
+        m.learn("x", 1.5);
+        assertEquals(1.5 * 3 - 1.5 / 3.0, run(m, expression));
+    }
+
+    @Test
+    public void testNoPromotion() {
+        Manager m = new Manager();
+        m.tiering.treeThreshold = 2;
+        m.tiering.compileThreshold = 3;
+        // without a compiler, trees are as far as it goes
+        TieredExpression expression = m.compileTiered("(1 + 2) 'text'");
+        for (int i = 0; i < 5; i++) {
+            expression.run(m);
+        }
+        assertEquals(Tiering.TREE, expression.tier());
+        assertEquals("[3, 'text', 3, 'text', 3, 'text', 3, 'text', 3, 'text']", new ArrayList<>(m.exchange).toString());
+
+        // x is unbound, so it can't be a tree
+        TieredExpression unbound = m.compileTiered("x + 1");
+        for (int i = 0; i < 5; i++) {
+            unbound.run(m);
+        }
+        assertEquals(Tiering.INTERPRETED, unbound.tier());
+        // it failed at 2 runs, then again at 4
+        assertEquals(2, m.tiering.failures());
+
+        // a compiler that can't do better leaves it at trees
+        m.tiering.compiler = BytecodeCompiler.TIER;
+        m.exchange.clear();
+        TieredExpression text = m.compileTiered("'a' + 1");
+        for (int i = 0; i < 5; i++) {
+            text.run(m);
+        }
+        assertEquals(Tiering.TREE, text.tier());
+        assertEquals(3, m.tiering.failures());
+        assertEquals(3, m.tiering.expressions());
+        m.tiering.resetCounts();
+        assertEquals(0, m.tiering.expressions());
+    }
+
+    @Test
+    public void testRetry() {
+        Manager unbound = new Manager(), bound = new Manager();
+        bound.learn("x", 5);
+        Tiering tiering = unbound.tiering;
+        tiering.treeThreshold = 2;
+        tiering.compileThreshold = 6;
+        final int[] compiles = new int[1];
+        tiering.compiler = new Tiering.Compiler() {
+            @Override
+            public CompiledExpression compile(Tree tree, Manager manager) {
+                return compiles[0]++ == 0 ? null : BytecodeCompiler.TIER.compile(tree, manager);
+            }
+        };
+        final ArrayList<String> events = new ArrayList<>();
+        tiering.listener = new Tiering.Listener() {
+            @Override
+            public void promoted(TieredExpression expression, int tier, boolean promoted) {
+                events.add(expression.invocations() + ":" + tier + ":" + promoted);
+            }
+        };
+        TieredExpression expression = unbound.compileTiered("x + 1");
+        // x isn't bound in the first Manager, so no Tree can be made yet
+        expression.run(unbound);
+        expression.run(unbound);
+        assertEquals(Tiering.INTERPRETED, expression.tier());
+        int[] tiers = new int[12];
+        for (int i = 0; i < tiers.length; i++) {
+            assertEquals(6L, run(bound, expression));
+            tiers[i] = expression.tier();
+        }
+        assertEquals("[0, 1, 1, 1, 1, 1, 1, 1, 1, 2, 2, 2]", Arrays.toString(tiers));
+        assertEquals("[2:0:false, 4:1:true, 6:1:false, 12:2:true]", events.toString());
+        assertEquals(2, compiles[0]);
+        assertEquals(2, tiering.failures());
+    }
+}
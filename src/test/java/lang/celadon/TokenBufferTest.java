@@ -0,0 +1,114 @@
+package lang.celadon;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static lang.celadon.Scripts.evaluate;
+
+/**
+ * Checks that tokenizing and shunting into TokenBuffers gives the same Cels as doing the same with Lists of Cels.
+ */
+public class TokenBufferTest {
+
+    @Test
+    public void testSameTokens() {
+        Manager m = new Manager();
+        TokenBuffer buffer = m.newBuffer();
+        for (String source : ThreadedTokenizeTest.scripts(256)) {
+            m.tokenize(source);
+            m.tokenize(source, 0, source.length(), buffer);
+            ArrayList<Cel> cels = new ArrayList<>(buffer.size);
+            buffer.cels(cels);
+            assertEquals(source, ThreadedTokenizeTest.describe(m.tokens), ThreadedTokenizeTest.describe(cels));
+        }
+    }
+
+    @Test
+    public void testSameShunt() {
+        String[] sources = {
+                "(-3 + 7) * 999 / 3 + 5 ",
+                "1 + 2 * 3 - 4 / 5 % 6",
+                "((1 + 2) * (3 - (4 + 5))) unbound sin 0.5 (2.5f * 2)",
+                "- 3 + ( ) 7 ) ( ( 2 * [x]",
+        };
+        Manager m = new Manager();
+        TokenBuffer tokens = m.newBuffer(), rpn = m.newBuffer();
+        for (String source : sources) {
+            m.tokenize(source);
+            m.items.clear();
+            m.shunt();
+            String expected = ThreadedTokenizeTest.describe(m.items);
+            m.evaluate();
+            String expectedResult = new ArrayList<>(m.exchange).toString();
+            m.exchange.clear();
+
+            m.tokenize(source, 0, source.length(), tokens);
+            rpn.clear(tokens.text);
+            m.shunt(tokens, rpn);
+            m.items.clear();
+            m.load(rpn);
+            assertEquals(source, expected, ThreadedTokenizeTest.describe(m.items));
+            m.evaluate();
+            assertEquals(source, expectedResult, new ArrayList<>(m.exchange).toString());
+            m.exchange.clear();
+        }
+    }
+
+    @Test
+    public void testSymbolIds() {
+        Manager m = new Manager();
+        // the standard library's names already have ids
+        final int known = m.symbols.size();
+        TokenBuffer buffer = m.newBuffer();
+        m.tokenize("alpha beta alpha + beta", 0, 23, buffer);
+        assertEquals(5, buffer.size);
+        assertEquals(buffer.ids[0], buffer.ids[2]);
+        assertEquals(buffer.ids[1], buffer.ids[4]);
+        assertEquals("alpha", buffer.name(2));
+        assertEquals(known + 2, m.symbols.size());
+        assertEquals(buffer.ids[3], m.symbols.find("+"));
+        assertEquals(-1, m.symbols.find("gamma"));
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append(" s").append(i);
+        }
+        m.tokenize(sb, 0, sb.length(), buffer);
+        assertEquals(known + 1002, m.symbols.size());
+        assertEquals("s999", buffer.name(999));
+        assertEquals(buffer.ids[999], m.symbols.id("s999"));
+    }
+
+    @Test
+    public void testBindingsById() {
+        Manager m = new Manager();
+        int x = m.symbols.id("x"), y = m.symbols.id("y");
+        assertEquals(null, m.binding(x));
+        m.learn(x, 10);
+        assertEquals(10, m.binding(x).ref);
+        assertEquals(m.get("x"), m.binding(x));
+        m.learn("x", 20);
+        assertEquals(20, m.binding(x).ref);
+        m.remove("x");
+        assertEquals(10, m.binding(x).ref);
+        m.put("y", new Cel("x", Syntax.SYMBOL));
+        assertEquals(10, m.resolve(y).ref);
+        m.set("x", new Cel("x", 30));
+        assertEquals(30, m.resolve(y).ref);
+        assertEquals(m.resolve("y"), m.resolve(y));
+        assertEquals(m.symbols.find("+"), m.symbols.id("+"));
+        assertEquals(m.get("+"), m.binding(m.symbols.find("+")));
+
+        TokenBuffer tokens = m.newBuffer(), rpn = m.newBuffer();
+        m.tokenize("y * 2 + x", 0, 9, tokens);
+        m.shunt(tokens, rpn);
+        m.items.clear();
+        m.load(rpn);
+        assertEquals(90L, evaluate(m));
+
+        m.clear();
+        assertEquals(null, m.binding(x));
+        assertEquals(null, m.resolve(y));
+    }
+}
@@ -0,0 +1,65 @@
+package lang.celadon;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that TokenStream produces the same tokens as Manager.tokenize, even with chunks so small that most tokens
+ * span a chunk boundary.
+ */
+public class TokenStreamTest {
+
+    public static ArrayList<Cel> drain(TokenStream stream) throws Exception {
+        ArrayList<Cel> tokens = new ArrayList<>();
+        Cel c;
+        while ((c = stream.next()) != null) {
+            tokens.add(c);
+        }
+        return tokens;
+    }
+
+    @Test
+    public void testChunkBoundaries() throws Exception {
+        StringBuilder sb = new StringBuilder("'a long string that is much longer than any chunk, \\' even with an escape'");
+        sb.append(" ~~!a block comment ~!that!~ spans many chunks!~~ ( ) ((\n)) ; a long line comment");
+        for (int i = 0; i < 40; i++) {
+            sb.append(" words");
+        }
+        sb.append("\n0x1.8p1 1.5e+10 1.5x");
+        String[] sources = new String[BasicTest.samples.length + 1];
+        System.arraycopy(BasicTest.samples, 0, sources, 0, BasicTest.samples.length);
+        sources[BasicTest.samples.length] = sb.toString();
+        Manager m = new Manager();
+        for (String source : sources) {
+            m.tokenize(source);
+            String expected = ThreadedTokenizeTest.describe(m.tokens);
+            for (int chunk = 1; chunk <= 40; chunk++) {
+                assertEquals(source, expected,
+                        ThreadedTokenizeTest.describe(drain(new TokenStream(new StringReader(source), chunk))));
+            }
+            assertEquals(source, expected, ThreadedTokenizeTest.describe(drain(new TokenStream(
+                    Channels.newChannel(new ByteArrayInputStream(source.getBytes("UTF-8"))),
+                    Charset.forName("UTF-8")))));
+        }
+    }
+
+    @Test
+    public void testShunt() throws Exception {
+        String source = "(-3 + 7) * 999 / 3 + 5 ";
+        Manager m = new Manager();
+        m.tokenize(source);
+        m.shunt();
+        m.evaluate();
+        Manager streamed = new Manager();
+        new TokenStream(new StringReader(source), 4).shunt(streamed);
+        streamed.evaluate();
+        assertEquals(new ArrayList<>(m.exchange).toString(), new ArrayList<>(streamed.exchange).toString());
+    }
+}
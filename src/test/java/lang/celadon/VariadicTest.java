@@ -0,0 +1,153 @@
+package lang.celadon;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static lang.celadon.Scripts.run;
+
+/**
+ * Checks that chains of the same {@link Variadic} operator are joined into one call, and give the same results as
+ * running each operator on its own.
+ */
+public class VariadicTest {
+
+    /**
+     * Subtraction that isn't associative, so grouping mistakes show up; counts how it is called.
+     */
+    static class Minus extends Operator implements Variadic {
+        int pairs, chains;
+
+        Minus() {
+            super(10);
+        }
+
+        @Override
+        public Cel run(Cel left, Cel right) {
+            pairs++;
+            return Cel.value(Core.asLong(left.ref) - Core.asLong(right.ref));
+        }
+
+        @Override
+        public Cel run(Cel[] args, int from, int count) {
+            chains++;
+            long result = Core.asLong(args[from + count - 1].ref);
+            for (int i = from + count - 2; i >= from; i--) {
+                result = Core.asLong(args[i].ref) - result;
+            }
+            return Cel.value(result);
+        }
+    }
+
+    static class Join extends Operator {
+        Join() {
+            super(10);
+        }
+
+        @Override
+        public Cel run(Cel left, Cel right) {
+            return Cel.value("(" + left.ref + " " + right.ref + ")");
+        }
+    }
+
+    @Test
+    public void testFlatten() {
+        Manager m = new Manager();
+        m.learn("a", 1);
+        m.learn("b", 2.5);
+        m.learn("c", 3);
+        m.learn("d", 4);
+        Program flat = m.compile("a + b + c * 2 + d");
+        assertEquals("a b c 2 * d #4 +", flat.toString());
+        m.flattenChains = false;
+        Program plain = m.compile("a + b + c * 2 + d");
+        assertEquals("a b c 2 * d + + +", plain.toString());
+        assertEquals(13.5, run(m, flat));
+        assertEquals(13.5, run(m, plain));
+        m.primitiveArithmetic = false;
+        assertEquals(13.5, run(m, flat));
+        assertEquals(13.5, run(m, new Tree(flat, m)));
+        m.learn("b", 2);
+        assertEquals(13L, run(m, flat));
+        assertEquals(13L, run(m, new Tree(flat, m)));
+
+        m.flattenChains = true;
+        assertEquals("a b + c +", m.compile("(a + b) + c").toString());
+        assertEquals("a b c d + #3 -", m.compile("a - b - c + d").toString());
+        assertEquals("a b c #3 + -", m.compile("- a + b + c").toString());
+        // e is unbound, so nothing from there on is joined
+        assertEquals("a b e c d + + + +", m.compile("a + b + e + c + d").toString());
+    }
+
+    @Test
+    public void testVariadic() {
+        Manager m = new Manager();
+        Minus minus = new Minus();
+        m.learn("-", minus);
+        m.learn("x", 10);
+        Program program = m.compile("x - 4 - 3 - 2");
+        assertEquals(7L, run(m, program));
+        assertEquals(1, minus.chains);
+        assertEquals(0, minus.pairs);
+        Tree tree = new Tree(program, m);
+        assertTrue(tree.isTree());
+        assertEquals(7L, run(m, tree));
+        assertEquals(2, minus.chains);
+        assertEquals(7L, run(m, m.compileTree("x - (4 - 3 - 2)")));
+        assertEquals(3, minus.chains);
+        assertEquals(3L, run(m, m.compileTree("x - 4 - (3 - 2 - 1) - 5")));
+        assertEquals(5, minus.chains);
+        assertEquals(0, minus.pairs);
+
+        m.flattenChains = false;
+        assertEquals(7L, run(m, m.compile("x - 4 - 3 - 2")));
+        assertEquals(5, minus.chains);
+        assertEquals(3, minus.pairs);
+
+        // rebound to an operator that isn't Variadic, so each pair runs in turn
+        m.learn("-", new Join());
+        assertEquals("(10 (4 (3 2)))", run(m, program));
+        assertEquals("(10 (4 (3 2)))", run(m, tree));
+        assertFalse(tree.fits(m));
+    }
+
+    // runs p on each pair in turn, from the right, as a chain would run without Variadic
+    private static Object nested(Procedural p, Cel[] args, int from, int count) {
+        try {
+            Cel result = args[from + count - 1];
+            for (int i = from + count - 2; i >= from; i--) {
+                result = p.run(args[i], result);
+            }
+            return result.ref;
+        } catch (ArithmeticException e) {
+            return e.getClass();
+        }
+    }
+
+    private static Object chained(Variadic v, Cel[] args, int from, int count) {
+        try {
+            return v.run(args, from, count).ref;
+        } catch (ArithmeticException e) {
+            return e.getClass();
+        }
+    }
+
+    @Test
+    public void testArithmetic() {
+        Cel[] args = {Cel.value(100), Cel.value(7L), Cel.value(2.5), Cel.value(3), Cel.value("no"), Cel.value(2),
+                Cel.value(true), Cel.value(-0.0)};
+        Arithmetic[] arithmetics = {Core.plus, Core.minus, Core.times, Core.divide, Core.modulo};
+        for (Arithmetic a : arithmetics) {
+            for (int from = 0; from < args.length; from++) {
+                assertSame(args[from], a.run(args, from, 1));
+                for (int count = 2; from + count <= args.length; count++) {
+                    assertEquals(nested(a, args, from, count), chained(a, args, from, count));
+                }
+            }
+        }
+        assertEquals(92.5, Core.minus.run(args, 0, 4).ref);
+        assertEquals(52.5, Core.times.run(args, 1, 3).ref);
+    }
+}